@@ -0,0 +1,134 @@
+package daniel.uclm.esi.gramola.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caché en memoria acotada por tamaño (LRU) y por tiempo de vida (TTL).
+ * Lleva contadores de aciertos, fallos y desalojos para poder dimensionarla.
+ */
+public class ExpiringLruCache<K, V> {
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+	// Se incrementa en cada invalidación para descartar cargas que compitan con una escritura
+	private long version;
+
+	private static final class Entry<V> {
+		final V value;
+		final long expiresAt;
+
+		Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	public ExpiringLruCache(int maxSize, Duration ttl) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize debe ser mayor que 0");
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = ttl.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				if (size() > ExpiringLruCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Devuelve el valor cacheado o lo carga con {@code loader}. Si el loader devuelve null
+	 * no se guarda nada (no se cachean ausencias).
+	 */
+	public V get(K key, Function<K, V> loader) {
+		long versionAtLoad;
+		synchronized (this) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expiresAt - System.nanoTime() > 0) {
+					hits++;
+					return entry.value;
+				}
+				entries.remove(key);
+				expirations++;
+			}
+			misses++;
+			versionAtLoad = version;
+		}
+
+		// La carga se hace fuera del cerrojo para no serializar las consultas a la BD
+		V value = loader.apply(key);
+		if (value != null) {
+			put(key, value, versionAtLoad);
+		}
+		return value;
+	}
+
+	private synchronized void put(K key, V value, long versionAtLoad) {
+		if (versionAtLoad == version) {
+			entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+		}
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+	}
+
+	public synchronized V getIfPresent(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (entry.expiresAt - System.nanoTime() <= 0) {
+			entries.remove(key);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	public synchronized void invalidate(K key) {
+		version++;
+		entries.remove(key);
+	}
+
+	public synchronized void invalidateAll() {
+		version++;
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized Map<String, Object> stats() {
+		long requests = hits + misses;
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", entries.size());
+		stats.put("maxSize", maxSize);
+		stats.put("ttlSeconds", Duration.ofNanos(ttlNanos).toSeconds());
+		stats.put("hits", hits);
+		stats.put("misses", misses);
+		stats.put("hitRatio", requests == 0 ? 0.0 : (double) hits / requests);
+		stats.put("evictions", evictions);
+		stats.put("expirations", expirations);
+		return stats;
+	}
+}
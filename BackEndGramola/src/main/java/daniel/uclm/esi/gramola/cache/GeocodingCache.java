@@ -0,0 +1,140 @@
+package daniel.uclm.esi.gramola.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.GeocodeCacheDao;
+import daniel.uclm.esi.gramola.models.GeocodeCacheEntry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Caché de dos niveles para la geocodificación: LRU en memoria delante de la tabla
+ * {@link GeocodeCacheEntry}. Las entradas más antiguas que {@code fresh-days} se consideran
+ * caducadas: se intentan refrescar, pero se siguen sirviendo si el servicio externo falla.
+ */
+@Component
+public class GeocodingCache {
+
+	public record Coordinates(double latitud, double longitud, LocalDateTime resolvedAt) {
+	}
+
+	@Autowired
+	private GeocodeCacheDao dao;
+
+	@Value("${app.geocoding.cache.max-size:5000}")
+	private int maxSize;
+
+	@Value("${app.geocoding.cache.ttl-minutes:60}")
+	private long ttlMinutes;
+
+	@Value("${app.geocoding.cache.fresh-days:90}")
+	private long freshDays;
+
+	private ExpiringLruCache<String, Coordinates> memory;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong databaseHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong staleRefreshes = new AtomicLong();
+	private final AtomicLong staleServed = new AtomicLong();
+
+	@PostConstruct
+	void init() {
+		this.memory = new ExpiringLruCache<>(maxSize, Duration.ofMinutes(ttlMinutes));
+	}
+
+	/**
+	 * Clave de caché de una dirección: sin tildes, en minúsculas, con los signos de puntuación
+	 * (comas incluidas) convertidos en espacios y estos colapsados. Así "C/ Mayor, 1" y
+	 * "c/ mayor 1" coinciden. "España" se escribe siempre "spain", como en la consulta a Photon y en
+	 * el nomenclátor; las claves guardadas antes con "espana" dejan de usarse y la dirección se
+	 * vuelve a resolver una vez.
+	 */
+	public static String normalizar(String direccion) {
+		String sinTildes = Normalizer.normalize(direccion, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+		return sinTildes.toLowerCase(Locale.ROOT)
+			.replaceAll("[^\\p{Alnum}]+", " ")
+			.replaceAll("\\bespana\\b", "spain")
+			.trim();
+	}
+
+	static String hash(String normalizada) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(sha.digest(normalizada.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Busca en memoria y después en BD. Devuelve null si la dirección nunca se ha resuelto. */
+	public Coordinates lookup(String normalizada) {
+		String key = hash(normalizada);
+		Coordinates cached = memory.getIfPresent(key);
+		if (cached != null) {
+			memoryHits.incrementAndGet();
+			return cached;
+		}
+		GeocodeCacheEntry entry = dao.findById(key).orElse(null);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		databaseHits.incrementAndGet();
+		Coordinates coordinates = new Coordinates(entry.getLatitud(), entry.getLongitud(), entry.getResolvedAt());
+		memory.put(key, coordinates);
+		return coordinates;
+	}
+
+	public boolean isStale(Coordinates coordinates) {
+		return coordinates.resolvedAt() == null
+			|| coordinates.resolvedAt().isBefore(LocalDateTime.now().minusDays(freshDays));
+	}
+
+	public void store(String normalizada, double latitud, double longitud, boolean refresh) {
+		String key = hash(normalizada);
+		GeocodeCacheEntry entry = dao.save(new GeocodeCacheEntry(key, normalizada, latitud, longitud));
+		memory.put(key, new Coordinates(latitud, longitud, entry.getResolvedAt()));
+		if (refresh) {
+			staleRefreshes.incrementAndGet();
+		}
+	}
+
+	/** Anota que se ha devuelto un valor caducado porque no se pudo refrescar. */
+	public void recordStaleServed() {
+		staleServed.incrementAndGet();
+	}
+
+	/** Vacía el nivel en memoria; la BD se conserva. */
+	public void clearMemory() {
+		memory.invalidateAll();
+	}
+
+	public Map<String, Object> stats() {
+		long hits = memoryHits.get() + databaseHits.get();
+		long requests = hits + misses.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("memoryHits", memoryHits.get());
+		stats.put("databaseHits", databaseHits.get());
+		stats.put("misses", misses.get());
+		stats.put("hitRatio", requests == 0 ? 0.0 : (double) hits / requests);
+		stats.put("staleRefreshes", staleRefreshes.get());
+		stats.put("staleServed", staleServed.get());
+		stats.put("freshDays", freshDays);
+		stats.put("memory", memory.stats());
+		return stats;
+	}
+}
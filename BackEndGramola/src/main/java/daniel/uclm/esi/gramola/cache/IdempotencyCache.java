@@ -0,0 +1,138 @@
+package daniel.uclm.esi.gramola.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Respuestas recientes de los endpoints de pago indexadas por la cabecera
+ * {@code Idempotency-Key} del cliente. Un reintento con la misma clave recibe la respuesta
+ * original sin repetir el cobro, y si llega mientras la primera petición sigue en curso
+ * espera a su resultado en lugar de ejecutarse en paralelo. Los errores no se guardan: el
+ * cliente puede reintentar con la misma clave.
+ *
+ * Cada respuesta guarda la huella de la petición que la produjo (el bar y los datos del pago):
+ * la misma clave con otra huella, por reutilización o colisión, recibe un 422 en lugar de la
+ * transacción de otro bar.
+ */
+@Component
+public class IdempotencyCache {
+
+	// Límite de Stripe para las claves de idempotencia
+	static final int MAX_KEY_LENGTH = 255;
+
+	@Value("${app.payments.idempotency.max-size:10000}")
+	private int maxSize;
+
+	@Value("${app.payments.idempotency.ttl-minutes:10}")
+	private long ttlMinutes;
+
+	private record Entry(String fingerprint, Object response) {
+	}
+
+	private record Running(String fingerprint, CompletableFuture<Object> result) {
+	}
+
+	private ExpiringLruCache<String, Entry> responses;
+	private final Map<String, Running> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong replayed = new AtomicLong();
+	private final AtomicLong joined = new AtomicLong();
+	private final AtomicLong mismatched = new AtomicLong();
+
+	@PostConstruct
+	void init() {
+		this.responses = new ExpiringLruCache<>(maxSize, Duration.ofMinutes(ttlMinutes));
+	}
+
+	/**
+	 * Ejecuta {@code action} una sola vez por {@code scope} y clave. Sin clave se ejecuta siempre.
+	 */
+	public <T> T execute(String scope, String key, Callable<T> action) throws Exception {
+		return execute(scope, key, null, action);
+	}
+
+	/**
+	 * Como {@link #execute(String, String, Callable)}, pero un reintento solo recibe la respuesta
+	 * guardada si su {@code fingerprint} coincide con el de la petición original; si no, 422.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String scope, String key, String fingerprint, Callable<T> action) throws Exception {
+		if (key == null || key.isBlank()) {
+			return action.call();
+		}
+		if (key.length() > MAX_KEY_LENGTH) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key demasiado larga");
+		}
+		String cacheKey = scope + ":" + key;
+		Entry cached = responses.getIfPresent(cacheKey);
+		if (cached != null) {
+			checkFingerprint(cached.fingerprint(), fingerprint);
+			replayed.incrementAndGet();
+			return (T) cached.response();
+		}
+
+		Running mine = new Running(fingerprint, new CompletableFuture<>());
+		Running running = inFlight.putIfAbsent(cacheKey, mine);
+		if (running != null) {
+			checkFingerprint(running.fingerprint(), fingerprint);
+			joined.incrementAndGet();
+			try {
+				return (T) running.result().get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception cause ? cause : e;
+			}
+		}
+		try {
+			// Puede haber terminado otra petición entre la consulta y el registro
+			cached = responses.getIfPresent(cacheKey);
+			if (cached != null) {
+				checkFingerprint(cached.fingerprint(), fingerprint);
+				replayed.incrementAndGet();
+				mine.result().complete(cached.response());
+				return (T) cached.response();
+			}
+			T result = action.call();
+			if (result != null) {
+				responses.put(cacheKey, new Entry(fingerprint, result));
+			}
+			mine.result().complete(result);
+			return result;
+		} catch (Exception e) {
+			mine.result().completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(cacheKey, mine);
+		}
+	}
+
+	private void checkFingerprint(String original, String fingerprint) {
+		if (!Objects.equals(original, fingerprint)) {
+			mismatched.incrementAndGet();
+			throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+					"La Idempotency-Key ya se usó con otra petición");
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>(responses.stats());
+		stats.put("inFlight", inFlight.size());
+		stats.put("replayed", replayed.get());
+		stats.put("joined", joined.get());
+		stats.put("mismatched", mismatched.get());
+		return stats;
+	}
+}
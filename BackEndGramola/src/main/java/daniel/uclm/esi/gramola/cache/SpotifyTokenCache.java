@@ -0,0 +1,66 @@
+package daniel.uclm.esi.gramola.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.crypto.TokenCipher;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.SpotifyCredentials;
+import daniel.uclm.esi.gramola.models.SpotifyTokens;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Caché de vida corta con los tokens de Spotify ya descifrados, indexada por email.
+ * Cualquier escritura de los tokens debe llamar a {@link #invalidate(String)}.
+ */
+@Component
+public class SpotifyTokenCache {
+
+	@Autowired
+	private UserDao userDao;
+
+	@Value("${app.cache.spotify.max-size:500}")
+	private int maxSize;
+
+	@Value("${app.cache.spotify.ttl-seconds:30}")
+	private long ttlSeconds;
+
+	private ExpiringLruCache<String, SpotifyCredentials> cache;
+
+	@PostConstruct
+	void init() {
+		this.cache = new ExpiringLruCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+	}
+
+	public Optional<SpotifyCredentials> get(String email) {
+		if (email == null) return Optional.empty();
+		return Optional.ofNullable(cache.get(email, this::load));
+	}
+
+	public void invalidate(String email) {
+		if (email != null) {
+			cache.invalidate(email);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		return cache.stats();
+	}
+
+	private SpotifyCredentials load(String email) {
+		Optional<SpotifyTokens> optTokens = userDao.findSpotifyTokensByEmail(email);
+		if (optTokens.isEmpty()) return null;
+		try {
+			return new SpotifyCredentials(
+				TokenCipher.decrypt(optTokens.get().getSpotifyAccessToken()),
+				TokenCipher.decrypt(optTokens.get().getSpotifyPrivateToken()));
+		} catch (Exception e) {
+			throw new IllegalStateException("No se pudieron descifrar los tokens de Spotify", e);
+		}
+	}
+}
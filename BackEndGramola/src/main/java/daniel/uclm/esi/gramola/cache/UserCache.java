@@ -0,0 +1,53 @@
+package daniel.uclm.esi.gramola.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.UserProfile;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Caché de lectura delante de {@link UserDao}, indexada por email.
+ * Guarda solo la proyección {@link UserProfile}, nunca la firma ni los tokens.
+ * Cualquier escritura sobre un usuario debe llamar a {@link #invalidate(String)}.
+ */
+@Component
+public class UserCache {
+
+	@Autowired
+	private UserDao userDao;
+
+	@Value("${app.cache.user.max-size:1000}")
+	private int maxSize;
+
+	@Value("${app.cache.user.ttl-seconds:60}")
+	private long ttlSeconds;
+
+	private ExpiringLruCache<String, UserProfile> cache;
+
+	@PostConstruct
+	void init() {
+		this.cache = new ExpiringLruCache<>(maxSize, Duration.ofSeconds(ttlSeconds));
+	}
+
+	public Optional<UserProfile> get(String email) {
+		if (email == null) return Optional.empty();
+		return Optional.ofNullable(cache.get(email, key -> userDao.findProfileByEmail(key).orElse(null)));
+	}
+
+	public void invalidate(String email) {
+		if (email != null) {
+			cache.invalidate(email);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		return cache.stats();
+	}
+}
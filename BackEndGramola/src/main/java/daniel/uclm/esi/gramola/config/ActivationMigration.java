@@ -0,0 +1,31 @@
+package daniel.uclm.esi.gramola.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.UserDao;
+
+/**
+ * Migración de datos al arrancar: rellena User.activatedAt a partir del token de creación
+ * para las cuentas activadas antes de que existiera la columna. Es idempotente.
+ */
+@Component
+public class ActivationMigration implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(ActivationMigration.class);
+
+	@Autowired
+	private UserDao userDao;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int migrated = userDao.backfillActivatedAt();
+		if (migrated > 0) {
+			logger.info("activated_at rellenado para {} usuarios", migrated);
+		}
+	}
+}
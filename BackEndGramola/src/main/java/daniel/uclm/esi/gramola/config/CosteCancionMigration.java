@@ -0,0 +1,40 @@
+package daniel.uclm.esi.gramola.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.services.UserService;
+
+/**
+ * Migración de datos al arrancar: el editor de perfil guardaba {@code costeCancion} en céntimos
+ * y ahora se guarda y se cobra en euros. Los valores por encima de
+ * {@link UserService#MAX_COSTE_CANCION} que en céntimos sí caben se dividen entre 100; los que
+ * siguen fuera de rango se avisan en el log y {@code PaymentService} se niega a cobrarlos. Es
+ * idempotente.
+ */
+@Component
+public class CosteCancionMigration implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(CosteCancionMigration.class);
+
+	@Autowired
+	private UserDao userDao;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int migrated = userDao.convertCosteCancionFromCents(UserService.MAX_COSTE_CANCION);
+		if (migrated > 0) {
+			logger.info("coste_cancion pasado de céntimos a euros para {} usuarios", migrated);
+		}
+		long invalid = userDao.countByCosteCancionGreaterThan(UserService.MAX_COSTE_CANCION);
+		if (invalid > 0) {
+			logger.warn("{} usuarios tienen un coste por canción mayor de {} euros: hay que revisarlo",
+					invalid, UserService.MAX_COSTE_CANCION);
+		}
+	}
+}
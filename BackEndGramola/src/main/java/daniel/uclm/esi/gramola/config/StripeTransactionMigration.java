@@ -0,0 +1,121 @@
+package daniel.uclm.esi.gramola.config;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.services.PaymentService;
+
+/**
+ * Migración de datos al arrancar: extrae id, estado, importe, moneda y fecha del PaymentIntent
+ * guardado en {@code data} para las transacciones anteriores a esas columnas, y les asigna un
+ * {@link PaymentKind} (ver {@link #inferKind}) y, si ya estaban confirmadas, {@code confirmedAt}
+ * (ver {@link #wasConfirmed}). Las que no tienen fecha legible toman la de confirmación o, si
+ * tampoco la hay, el 1/1/1970, para que el historial pueda paginarlas. Avanza por id en lotes,
+ * así que las filas que no se pueden leer se saltan en vez de repetirse. Es idempotente.
+ * <p>
+ * Se ejecuta antes que las demás tareas de arranque: la reconstrucción de
+ * {@code RevenueRollupService} solo cuenta los pagos con {@code confirmedAt}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StripeTransactionMigration implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(StripeTransactionMigration.class);
+
+	private static final int BATCH_SIZE = 500;
+
+	// Fecha de las transacciones antiguas cuyo PaymentIntent no se puede leer: al final del historial
+	public static final LocalDateTime FECHA_DESCONOCIDA = LocalDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault());
+
+	@Autowired
+	private StripeTransactionDao dao;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int migrated = 0;
+		int confirmed = 0;
+		long subscriptionCents = paymentService.getCosteSuscripcionCentimos();
+		String lastId = "";
+		List<StripeTransaction> batch;
+		do {
+			batch = dao.findByKindIsNullAndIdGreaterThanOrderById(lastId, PageRequest.of(0, BATCH_SIZE));
+			for (StripeTransaction transaction : batch) {
+				lastId = transaction.getId();
+				if (transaction.getPaymentIntentId() == null) {
+					extract(transaction);
+				}
+				transaction.setKind(inferKind(transaction, subscriptionCents));
+				if (transaction.getConfirmedAt() == null && wasConfirmed(transaction)) {
+					// La hora real de la confirmación no se guardaba: se toma la del PaymentIntent
+					transaction.setConfirmedAt(transaction.getCreatedAt() != null ? transaction.getCreatedAt() : FECHA_DESCONOCIDA);
+					confirmed++;
+				}
+				if (transaction.getCreatedAt() == null) {
+					transaction.setCreatedAt(transaction.getConfirmedAt() != null ? transaction.getConfirmedAt() : FECHA_DESCONOCIDA);
+				}
+				migrated++;
+			}
+			dao.saveAll(batch);
+		} while (batch.size() == BATCH_SIZE);
+		if (migrated > 0) {
+			logger.info("Columnas de PaymentIntent y tipo rellenados para {} transacciones ({} confirmadas)",
+					migrated, confirmed);
+		}
+	}
+
+	/**
+	 * Tipo de una transacción anterior a la columna. La confirmación de una canción guardaba su
+	 * trackUri, y una suscripción no tenía email hasta confirmarse (el de una canción se guardaba
+	 * al crearla). Las demás, canciones confirmadas sin trackUri o sin confirmar, se distinguen
+	 * por el importe: una canción que costase justo lo que la suscripción se tomaría por esta.
+	 */
+	static PaymentKind inferKind(StripeTransaction transaction, long subscriptionCents) {
+		if (transaction.getTrackUri() != null) return PaymentKind.SONG;
+		if (transaction.getEmail() == null) return PaymentKind.SUBSCRIPTION;
+		return Long.valueOf(subscriptionCents).equals(transaction.getAmount()) ? PaymentKind.SUBSCRIPTION : PaymentKind.SONG;
+	}
+
+	/**
+	 * Si una transacción anterior a {@code confirmedAt} se había confirmado: la confirmación de una
+	 * suscripción le ponía el email y la de una canción el trackUri. Una canción confirmada sin
+	 * trackUri no deja rastro y queda como no confirmada.
+	 */
+	static boolean wasConfirmed(StripeTransaction transaction) {
+		return transaction.getKind() == PaymentKind.SUBSCRIPTION ? transaction.getEmail() != null
+				: transaction.getTrackUri() != null;
+	}
+
+	private static void extract(StripeTransaction transaction) {
+		if (transaction.getData() == null) return;
+		try {
+			JSONObject intent = new JSONObject(transaction.getData());
+			transaction.setData(intent);
+			if (intent.has("created")) {
+				transaction.setCreatedAt(LocalDateTime.ofInstant(
+						Instant.ofEpochSecond(intent.getLong("created")), ZoneId.systemDefault()));
+			}
+		} catch (JSONException e) {
+			logger.warn("No se pudo leer el PaymentIntent de la transacción {}: {}", transaction.getId(), e.getMessage());
+		}
+	}
+}
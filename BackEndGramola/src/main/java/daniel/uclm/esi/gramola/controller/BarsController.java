@@ -0,0 +1,45 @@
+package daniel.uclm.esi.gramola.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.geo.BarSpatialIndex;
+import daniel.uclm.esi.gramola.geo.NearbyBar;
+
+@CrossOrigin(origins = { "http://localhost:4200", "http://127.0.0.1:4200" })
+@RestController
+@RequestMapping("/bars")
+public class BarsController {
+
+	private static final int MAX_K = 50;
+	private static final double MAX_RADIO_METROS = 200_000;
+
+	@Autowired
+	private BarSpatialIndex spatialIndex;
+
+	/**
+	 * Bares de Gramola más cercanos a la posición del móvil, del más cercano al más lejano.
+	 */
+	@GetMapping("/nearby")
+	public List<NearbyBar> nearby(@RequestParam double latitud, @RequestParam double longitud,
+			@RequestParam(defaultValue = "10") int k, @RequestParam(defaultValue = "25000") double radio) {
+		if (latitud < -90 || latitud > 90 || longitud < -180 || longitud > 180) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Coordenadas fuera de rango");
+		}
+		if (k < 1 || k > MAX_K) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "k debe estar entre 1 y " + MAX_K);
+		}
+		if (radio <= 0 || radio > MAX_RADIO_METROS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El radio debe estar entre 0 y " + (int) MAX_RADIO_METROS + " metros");
+		}
+		return spatialIndex.nearest(latitud, longitud, k, radio);
+	}
+}
@@ -1,7 +1,10 @@
 package daniel.uclm.esi.gramola.controller;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -12,11 +15,14 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import daniel.uclm.esi.gramola.cache.IdempotencyCache;
 import daniel.uclm.esi.gramola.models.StripeTransaction;
 import daniel.uclm.esi.gramola.services.PaymentService;
+import daniel.uclm.esi.gramola.services.StripeWebhookService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 
 @RestController
 @RequestMapping("payments")
@@ -24,10 +30,25 @@ import org.springframework.web.bind.annotation.RequestBody;
 public class PaymentsController {
 	@Autowired
 	private PaymentService service;
+	@Autowired
+	private StripeWebhookService webhookService;
+	@Autowired
+	private IdempotencyCache idempotency;
+
+	// Cabecera con la que el cliente marca los reintentos de una misma operación
+	static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+	// Lo que identifica una petición para IdempotencyCache: la misma clave con otra huella es un 422
+	private static String huella(Object... partes) {
+		return Arrays.stream(partes).map(String::valueOf).collect(Collectors.joining("|"));
+	}
+
 	@GetMapping("/prepay")
-	public StripeTransaction prepay(HttpSession session) {
+	public StripeTransaction prepay(HttpSession session,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 		try {
-			StripeTransaction transactionDetails = this.service.prepay();
+			StripeTransaction transactionDetails = this.idempotency.execute("prepay", idempotencyKey,
+					() -> this.service.prepay(idempotencyKey));
 			session.setAttribute("transactionDetails", transactionDetails);
 			return transactionDetails;
 		} catch (Exception e) {
@@ -48,44 +69,92 @@ public class PaymentsController {
 	}
 
 	@PostMapping("/confirm-subscription")
-	public Map<String, String> confirmSubscription(@RequestBody Map<String, Object> paymentData) {
+	public Map<String, String> confirmSubscription(@RequestBody Map<String, Object> paymentData,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 		try {
 			String email = (String) paymentData.get("email");
 			String paymentIntentId = (String) paymentData.get("paymentIntentId");
 			Double amount = ((Number) paymentData.get("amount")).doubleValue();
 			String transactionId = (String) paymentData.get("transactionId");
 			
-			this.service.confirmSubscription(email, paymentIntentId, amount, transactionId);
-			return Map.of("message", "Suscripción activada correctamente");
+			return this.idempotency.execute("confirm-subscription", idempotencyKey,
+					huella(email, paymentIntentId, transactionId, amount), () -> {
+				this.service.confirmSubscription(email, paymentIntentId, amount, transactionId);
+				return Map.of("message", "Suscripción activada correctamente");
+			});
+		} catch (ResponseStatusException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
 		}
 	}
 
 	@PostMapping("/prepay-song")
-	public Map<String, Object> prepaySong(@RequestBody Map<String, Object> paymentData) {
+	public Map<String, Object> prepaySong(@RequestBody Map<String, Object> paymentData,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 		try {
 			String email = (String) paymentData.get("email");
 			Double amount = ((Number) paymentData.get("amount")).doubleValue();
 			
-			StripeTransaction transaction = this.service.prepaySong(email, amount);
-			
-			// Extraer el client_secret del JSON de datos
-			org.json.JSONObject data = new org.json.JSONObject(transaction.getData());
-			String clientSecret = data.getString("client_secret");
-			
-			return Map.of(
-				"transactionId", transaction.getId(),
-				"clientSecret", clientSecret,
-				"amount", amount
-			);
+			return this.idempotency.execute("prepay-song", idempotencyKey, huella(email, amount), () -> {
+				PaymentService.SongPurchase purchase = this.service.prepaySong(email, amount, idempotencyKey);
+				
+				return Map.<String, Object>of(
+					"transactionId", purchase.transaction().getId(),
+					"clientSecret", purchase.clientSecret(),
+					"paymentIntentId", purchase.paymentIntentId(),
+					"amount", amount
+				);
+			});
+		} catch (ResponseStatusException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
 		}
 	}
 
+	/**
+	 * Compra de una canción en un solo viaje: proximidad, precio del bar y PaymentIntent.
+	 * Cuerpo: {"email", "latitud", "longitud", "trackUri"}
+	 */
+	@PostMapping("/purchase-song")
+	public Map<String, Object> purchaseSong(@RequestBody Map<String, Object> purchaseData,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+		if (!(purchaseData.get("email") instanceof String email)
+				|| !(purchaseData.get("latitud") instanceof Number latitud)
+				|| !(purchaseData.get("longitud") instanceof Number longitud)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Email, latitud y longitud son requeridos");
+		}
+		try {
+			return this.idempotency.execute("purchase-song", idempotencyKey,
+					huella(email, purchaseData.get("trackUri")), () -> {
+				PaymentService.SongPurchase purchase = this.service.purchaseSong(email, latitud.doubleValue(),
+						longitud.doubleValue(), (String) purchaseData.get("trackUri"), idempotencyKey);
+
+				Map<String, Object> response = new LinkedHashMap<>();
+				response.put("transactionId", purchase.transaction().getId());
+				response.put("paymentIntentId", purchase.paymentIntentId());
+				response.put("clientSecret", purchase.clientSecret());
+				response.put("amount", purchase.amountCents() / 100.0);
+				return response;
+			});
+		} catch (ResponseStatusException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, e.getMessage());
+		}
+	}
+
+	/** Eventos de Stripe; la firma se comprueba sobre el cuerpo sin transformar. */
+	@PostMapping("/webhook")
+	public void webhook(@RequestBody String payload,
+			@RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+		this.webhookService.handle(payload, signature);
+	}
+
 	@PostMapping("/confirm-song")
-	public ResponseEntity<?> confirmSongPayment(@RequestBody Map<String, Object> confirmData) {
+	public ResponseEntity<?> confirmSongPayment(@RequestBody Map<String, Object> confirmData,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 		try {
 			String email = (String) confirmData.get("email");
 			String paymentIntentId = (String) confirmData.get("paymentIntentId");
@@ -93,13 +162,19 @@ public class PaymentsController {
 			String transactionId = (String) confirmData.get("transactionId");
 			String trackUri = (String) confirmData.get("trackUri");
 
-			this.service.confirmSongPayment(email, paymentIntentId, amount, transactionId, trackUri);
-			
-			Map<String, String> response = new HashMap<>();
-			response.put("status", "success");
-			response.put("message", "Pago confirmado correctamente");
+			Map<String, String> response = this.idempotency.execute("confirm-song", idempotencyKey,
+					huella(email, paymentIntentId, transactionId, amount, trackUri), () -> {
+				this.service.confirmSongPayment(email, paymentIntentId, amount, transactionId, trackUri);
+				
+				Map<String, String> body = new HashMap<>();
+				body.put("status", "success");
+				body.put("message", "Pago confirmado correctamente");
+				return body;
+			});
 			
 			return ResponseEntity.ok(response);
+		} catch (ResponseStatusException e) {
+			throw e;
 		} catch (Exception e) {
 			return ResponseEntity.badRequest()
 				.body(Map.of("error", e.getMessage()));
@@ -0,0 +1,58 @@
+package daniel.uclm.esi.gramola.controller;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.models.RevenueRollup;
+import daniel.uclm.esi.gramola.models.RollupGranularity;
+import daniel.uclm.esi.gramola.models.TrackRevenue;
+import daniel.uclm.esi.gramola.services.RevenueRollupService;
+
+@RestController
+@RequestMapping("payments/revenue")
+@CrossOrigin(origins = { "http://localhost:4200", "http://127.0.0.1:4200" }, allowCredentials = "true")
+public class RevenueController {
+
+	@Autowired
+	private RevenueRollupService rollupService;
+
+	/**
+	 * Ingresos del bar por hora o por día entre dos fechas (incluidas). Solo aparecen los
+	 * intervalos con algún pago; los importes van en céntimos.
+	 */
+	@GetMapping("/{email}")
+	public List<RevenueRollup> revenue(@PathVariable String email,
+			@RequestParam(defaultValue = "DAY") String granularity,
+			@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+		return rollupService.revenue(email, parseGranularity(granularity), from, to);
+	}
+
+	/** Canciones más pagadas en el bar entre dos fechas (incluidas). */
+	@GetMapping("/{email}/top-tracks")
+	public List<TrackRevenue> topTracks(@PathVariable String email,
+			@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			@RequestParam(defaultValue = "10") int limit) {
+		return rollupService.topTracks(email, from, to, limit);
+	}
+
+	private static RollupGranularity parseGranularity(String granularity) {
+		try {
+			return RollupGranularity.valueOf(granularity.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "granularity debe ser HOUR o DAY");
+		}
+	}
+}
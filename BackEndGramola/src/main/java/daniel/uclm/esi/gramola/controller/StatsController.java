@@ -0,0 +1,187 @@
+package daniel.uclm.esi.gramola.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+import daniel.uclm.esi.gramola.cache.IdempotencyCache;
+import daniel.uclm.esi.gramola.cache.SpotifyTokenCache;
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.geo.BarSpatialIndex;
+import daniel.uclm.esi.gramola.geo.GeofenceRegistry;
+import daniel.uclm.esi.gramola.geocoding.GazetteerGeocoder;
+import daniel.uclm.esi.gramola.http.OutboundHttpClient;
+import daniel.uclm.esi.gramola.services.BarGeocodingWorker;
+import daniel.uclm.esi.gramola.services.EmailOutboxService;
+import daniel.uclm.esi.gramola.services.PasswordHasher;
+import daniel.uclm.esi.gramola.services.PaymentService;
+import daniel.uclm.esi.gramola.services.RenewalReminderJob;
+import daniel.uclm.esi.gramola.services.RevenueRollupService;
+import daniel.uclm.esi.gramola.services.SmtpTransportPool;
+import daniel.uclm.esi.gramola.services.StripeReconciliationJob;
+import daniel.uclm.esi.gramola.services.StripeWebhookService;
+import daniel.uclm.esi.gramola.services.SubscriptionExpiryNotifier;
+import daniel.uclm.esi.gramola.services.TokenReencryptionJob;
+
+@CrossOrigin(origins = { "http://localhost:4200", "http://127.0.0.1:4200" })
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private SpotifyTokenCache spotifyTokenCache;
+
+	@Autowired
+	private PasswordHasher passwordHasher;
+
+	@Autowired
+	private TokenReencryptionJob tokenReencryptionJob;
+
+	@Autowired
+	private EmailOutboxService emailOutboxService;
+
+	@Autowired
+	private SmtpTransportPool smtpTransportPool;
+
+	@Autowired
+	private GeocodingCache geocodingCache;
+
+	@Autowired
+	private BarGeocodingWorker barGeocodingWorker;
+
+	@Autowired
+	private OutboundHttpClient outboundHttpClient;
+
+	@Autowired
+	private GazetteerGeocoder gazetteerGeocoder;
+
+	@Autowired
+	private BarSpatialIndex barSpatialIndex;
+
+	@Autowired
+	private GeofenceRegistry geofenceRegistry;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Autowired
+	private StripeWebhookService stripeWebhookService;
+
+	@Autowired
+	private IdempotencyCache idempotencyCache;
+
+	@Autowired
+	private RevenueRollupService revenueRollupService;
+
+	@Autowired
+	private SubscriptionExpiryNotifier subscriptionExpiryNotifier;
+
+	@Autowired
+	private RenewalReminderJob renewalReminderJob;
+
+	@Autowired
+	private StripeReconciliationJob stripeReconciliationJob;
+
+	@GetMapping("/user-cache")
+	public Map<String, Object> getUserCacheStats() {
+		return userCache.stats();
+	}
+
+	@GetMapping("/spotify-token-cache")
+	public Map<String, Object> getSpotifyTokenCacheStats() {
+		return spotifyTokenCache.stats();
+	}
+
+	@GetMapping("/password-hasher")
+	public Map<String, Object> getPasswordHasherStats() {
+		return passwordHasher.stats();
+	}
+
+	@GetMapping("/token-reencryption")
+	public Map<String, Object> getTokenReencryptionStats() {
+		return tokenReencryptionJob.stats();
+	}
+
+	@GetMapping("/email-outbox")
+	public Map<String, Object> getEmailOutboxStats() {
+		return emailOutboxService.stats();
+	}
+
+	@GetMapping("/smtp-pool")
+	public Map<String, Object> getSmtpPoolStats() {
+		return smtpTransportPool.stats();
+	}
+
+	@GetMapping("/geocoding-cache")
+	public Map<String, Object> getGeocodingCacheStats() {
+		return geocodingCache.stats();
+	}
+
+	@GetMapping("/bar-geocoding")
+	public Map<String, Object> getBarGeocodingStats() {
+		return barGeocodingWorker.stats();
+	}
+
+	@GetMapping("/outbound-http")
+	public Map<String, Object> getOutboundHttpStats() {
+		return outboundHttpClient.stats();
+	}
+
+	@GetMapping("/gazetteer")
+	public Map<String, Object> getGazetteerStats() {
+		return gazetteerGeocoder.stats();
+	}
+
+	@GetMapping("/bar-spatial-index")
+	public Map<String, Object> getBarSpatialIndexStats() {
+		return barSpatialIndex.stats();
+	}
+
+	@GetMapping("/geofences")
+	public Map<String, Object> getGeofenceStats() {
+		return geofenceRegistry.stats();
+	}
+
+	@GetMapping("/payments")
+	public Map<String, Object> getPaymentStats() {
+		return paymentService.stats();
+	}
+
+	@GetMapping("/stripe-webhook")
+	public Map<String, Object> getStripeWebhookStats() {
+		return stripeWebhookService.stats();
+	}
+
+	@GetMapping("/idempotency")
+	public Map<String, Object> getIdempotencyStats() {
+		return idempotencyCache.stats();
+	}
+
+	@GetMapping("/revenue-rollups")
+	public Map<String, Object> getRevenueRollupStats() {
+		return revenueRollupService.stats();
+	}
+
+	@GetMapping("/subscriptions")
+	public Map<String, Object> getSubscriptionStats() {
+		return subscriptionExpiryNotifier.stats();
+	}
+
+	@GetMapping("/renewal-reminders")
+	public Map<String, Object> getRenewalReminderStats() {
+		return renewalReminderJob.stats();
+	}
+
+	@GetMapping("/stripe-reconciliation")
+	public Map<String, Object> getStripeReconciliationStats() {
+		return stripeReconciliationJob.stats();
+	}
+}
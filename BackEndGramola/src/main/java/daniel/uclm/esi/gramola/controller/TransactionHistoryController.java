@@ -0,0 +1,84 @@
+package daniel.uclm.esi.gramola.controller;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.services.TransactionHistoryService;
+
+@RestController
+@RequestMapping("payments/history")
+@CrossOrigin(origins = { "http://localhost:4200", "http://127.0.0.1:4200" }, allowCredentials = "true")
+public class TransactionHistoryController {
+
+	@Autowired
+	private TransactionHistoryService historyService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Una página del historial. Para la siguiente se pasa el {@code nextCursor} recibido;
+	 * si es null no hay más.
+	 */
+	@GetMapping("/{email}")
+	public TransactionHistoryService.HistoryPage history(@PathVariable String email,
+			@RequestParam(required = false) String kind, @RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "50") int limit) {
+		return historyService.page(email, parseKind(kind), cursor, limit);
+	}
+
+	/** Historial completo como NDJSON (un pago por línea), escrito a medida que se lee. */
+	@GetMapping("/{email}/export")
+	public ResponseEntity<StreamingResponseBody> export(@PathVariable String email,
+			@RequestParam(required = false) String kind) {
+		PaymentKind paymentKind = parseKind(kind);
+		StreamingResponseBody body = out -> {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			try {
+				historyService.export(email, paymentKind, row -> {
+					try {
+						writer.write(objectMapper.writeValueAsString(row));
+						writer.write('\n');
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			writer.flush();
+		};
+		return ResponseEntity.ok()
+			.contentType(MediaType.APPLICATION_NDJSON)
+			.header("Content-Disposition", "attachment; filename=\"pagos.ndjson\"")
+			.body(body);
+	}
+
+	private static PaymentKind parseKind(String kind) {
+		if (kind == null || kind.isBlank()) return null;
+		try {
+			return PaymentKind.valueOf(kind.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "kind debe ser SUBSCRIPTION o SONG");
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package daniel.uclm.esi.gramola.controller;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +20,8 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.view.RedirectView;
 
+import daniel.uclm.esi.gramola.geo.Geofence;
+import daniel.uclm.esi.gramola.models.SpotifyCredentials;
 import daniel.uclm.esi.gramola.services.UserService;
 
 @CrossOrigin(origins = { "http://localhost:4200", "http://127.0.0.1:4200" })
@@ -24,6 +29,8 @@ import daniel.uclm.esi.gramola.services.UserService;
 @RequestMapping("/users")
 public class UserController {
 
+	private static final int MAX_MUESTRAS = 1000;
+
 	@Autowired
 	private UserService userService;
 
@@ -111,6 +118,20 @@ public class UserController {
 		}
 	}
 
+	@GetMapping("/{email}/spotify")
+	public Map<String, String> getSpotifyCredentials(@PathVariable String email) {
+		try {
+			SpotifyCredentials credentials = userService.getSpotifyCredentials(email);
+			return Map.of(
+				"accessToken", credentials.accessToken(),
+				"privateToken", credentials.privateToken()
+			);
+		} catch (Exception e) {
+			if (e instanceof ResponseStatusException) throw (ResponseStatusException) e;
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+		}
+	}
+
 	@GetMapping("/{email}/subscription/active")
 	public boolean hasActiveSubscription(@PathVariable String email) {
 		try {
@@ -136,8 +157,8 @@ public class UserController {
 		try {
 			String ubicacionBar = barData.get("ubicacionBar");
 			String nombreBar = barData.get("nombreBar");
-			userService.setBarData(email, ubicacionBar, nombreBar);
-			return Map.of("message", "Datos del bar actualizados correctamente");
+			String geocodingStatus = userService.setBarData(email, ubicacionBar, nombreBar);
+			return Map.of("message", "Datos del bar actualizados correctamente", "geocodingStatus", geocodingStatus);
 		} catch (Exception e) {
 			if (e instanceof ResponseStatusException) throw (ResponseStatusException) e;
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
@@ -150,7 +171,8 @@ public class UserController {
 			Map<String, Object> userData = userService.getUserData(email);
 			return Map.of(
 				"ubicacionBar", userData.get("ubicacionBar") != null ? userData.get("ubicacionBar") : "",
-				"nombreBar", userData.get("nombreBar") != null ? userData.get("nombreBar") : ""
+				"nombreBar", userData.get("nombreBar") != null ? userData.get("nombreBar") : "",
+				"geocodingStatus", userData.get("geocodingStatus")
 			);
 		} catch (Exception e) {
 			if (e instanceof ResponseStatusException) throw (ResponseStatusException) e;
@@ -161,7 +183,10 @@ public class UserController {
 	@PutMapping("/{email}/coste-cancion") 
 	public Map<String, String> setCosteCancion(@PathVariable String email, @RequestBody Map<String, Object> costeData) {
 		try {
-			Double costeCancion = ((Number) costeData.get("costeCancion")).doubleValue();
+			if (!(costeData.get("costeCancion") instanceof Number coste)) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El coste de la canción debe ser un número en euros");
+			}
+			Double costeCancion = coste.doubleValue();
 			userService.setCosteCancion(email, costeCancion);
 			return Map.of("message", "Coste de canción actualizado correctamente");
 		} catch (Exception e) {
@@ -208,19 +233,85 @@ public class UserController {
 				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Latitud y longitud son requeridas");
 			}
 			
-			boolean estaCerca = userService.checkProximity(email, latitud, longitud);
+			Geofence fence = userService.getGeofence(email);
+			boolean estaCerca = fence.contains(latitud, longitud);
 			
-			return Map.of(
-				"estaCerca", estaCerca,
-				"radio", 100,
-				"mensaje", estaCerca ? "Estás dentro del radio de 100 metros del bar" : "Estás fuera del radio de 100 metros del bar"
-			);
+			Map<String, Object> respuesta = new LinkedHashMap<>();
+			respuesta.put("estaCerca", estaCerca);
+			if (fence.isPolygon()) {
+				respuesta.put("mensaje", estaCerca ? "Estás dentro de la zona del bar" : "Estás fuera de la zona del bar");
+			} else {
+				int radio = (int) Math.round(fence.getRadioMetros());
+				respuesta.put("radio", radio);
+				respuesta.put("mensaje", estaCerca ? "Estás dentro del radio de " + radio + " metros del bar"
+						: "Estás fuera del radio de " + radio + " metros del bar");
+			}
+			return respuesta;
 		} catch (Exception e) {
 			if (e instanceof ResponseStatusException) throw (ResponseStatusException) e;
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Comprueba varias posiciones de una vez, p. ej. las muestras acumuladas por el móvil.
+	 * Cuerpo: {"muestras": [[lat, lon], ...]}
+	 */
+	@PostMapping("/{email}/check-proximity/batch")
+	public Map<String, Object> checkProximityBatch(@PathVariable String email, @RequestBody Map<String, Object> body) {
+		if (!(body.get("muestras") instanceof List<?> muestras) || muestras.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Se requiere al menos una muestra");
+		}
+		if (muestras.size() > MAX_MUESTRAS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Como máximo " + MAX_MUESTRAS + " muestras por petición");
+		}
+		double[] latitudes = new double[muestras.size()];
+		double[] longitudes = new double[muestras.size()];
+		for (int i = 0; i < muestras.size(); i++) {
+			if (!(muestras.get(i) instanceof List<?> par) || par.size() != 2
+					|| !(par.get(0) instanceof Number lat) || !(par.get(1) instanceof Number lon)) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cada muestra debe ser [latitud, longitud]");
+			}
+			latitudes[i] = lat.doubleValue();
+			longitudes[i] = lon.doubleValue();
+		}
+
+		boolean[] dentro = userService.checkProximityBatch(email, latitudes, longitudes);
+		List<Boolean> resultados = new ArrayList<>(dentro.length);
+		int total = 0;
+		for (boolean d : dentro) {
+			resultados.add(d);
+			if (d) total++;
+		}
+		Map<String, Object> respuesta = new LinkedHashMap<>();
+		respuesta.put("resultados", resultados);
+		respuesta.put("dentro", total);
+		respuesta.put("total", dentro.length);
+		return respuesta;
+	}
+
+	/**
+	 * Cambia la geocerca del bar. Cuerpo: {"radio": metros} o {"poligono": [[lat, lon], ...]};
+	 * un polígono tiene prioridad sobre el radio y {"poligono": null} vuelve al círculo.
+	 */
+	@PutMapping("/{email}/geofence")
+	public Map<String, Object> setGeofence(@PathVariable String email, @RequestBody Map<String, Object> body) {
+		Double radio = body.get("radio") instanceof Number n ? n.doubleValue() : null;
+		List<double[]> poligono = null;
+		if (body.get("poligono") instanceof List<?> vertices) {
+			poligono = new ArrayList<>(vertices.size());
+			for (Object v : vertices) {
+				if (!(v instanceof List<?> par) || par.size() != 2
+						|| !(par.get(0) instanceof Number lat) || !(par.get(1) instanceof Number lon)) {
+					throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cada vértice debe ser [latitud, longitud]");
+				}
+				poligono.add(new double[]{lat.doubleValue(), lon.doubleValue()});
+			}
+		}
+		userService.setGeofence(email, radio, poligono);
+		return Map.of("message", "Geocerca actualizada correctamente");
+	}
+
 	@GetMapping("/{email}/firma")
 	public Map<String, String> getFirma(@PathVariable String email) {
 		try {
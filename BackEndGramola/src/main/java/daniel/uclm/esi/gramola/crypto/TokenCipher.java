@@ -0,0 +1,141 @@
+package daniel.uclm.esi.gramola.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cifrado AES de los tokens de Spotify.
+ * <p>
+ * Formato actual: {@code v1:<keyId>:<base64(nonce || cifrado || tag)>} con AES-GCM y un nonce
+ * aleatorio por valor. Los valores antiguos (AES/ECB en base64, sin prefijo) se siguen
+ * pudiendo descifrar mientras dure la migración.
+ * <p>
+ * Claves: {@code AES_KEY_ID} (por defecto {@code k1}) identifica la clave actual, que es
+ * {@code AES_256_SECRET}. Las claves anteriores se leen de {@code AES_256_SECRET_<KEYID>} y la
+ * de los valores ECB de {@code AES_LEGACY_SECRET} (o {@code AES_256_SECRET} si no existe).
+ * Cada clave se lee una sola vez y cada hilo reutiliza sus instancias de {@link Cipher}.
+ */
+public final class TokenCipher {
+
+	private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final String LEGACY_TRANSFORMATION = "AES/ECB/PKCS5Padding";
+	private static final String VERSION_PREFIX = "v1:";
+	private static final int NONCE_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final String LEGACY_KEY = "__legacy__";
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Map<String, SecretKeySpec> KEYS = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<Cipher> GCM = ThreadLocal.withInitial(() -> newCipher(GCM_TRANSFORMATION));
+	private static final ThreadLocal<Cipher> LEGACY_DECRYPT = ThreadLocal.withInitial(() -> {
+		Cipher cipher = newCipher(LEGACY_TRANSFORMATION);
+		try {
+			cipher.init(Cipher.DECRYPT_MODE, key(LEGACY_KEY));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("No se pudo inicializar el cifrado AES", e);
+		}
+		return cipher;
+	});
+
+	private TokenCipher() {
+	}
+
+	public static String currentKeyId() {
+		return System.getProperty("AES_KEY_ID", "k1");
+	}
+
+	private static SecretKeySpec key(String keyId) {
+		return KEYS.computeIfAbsent(keyId, id -> {
+			String s;
+			if (LEGACY_KEY.equals(id)) {
+				s = System.getProperty("AES_LEGACY_SECRET", System.getProperty("AES_256_SECRET"));
+			} else if (id.equals(currentKeyId())) {
+				s = System.getProperty("AES_256_SECRET");
+			} else {
+				s = System.getProperty("AES_256_SECRET_" + id.toUpperCase(Locale.ROOT));
+			}
+			if (s == null || s.length() != 32) {
+				throw new IllegalStateException("Clave AES '" + id + "' no definida o no tiene 32 caracteres");
+			}
+			return new SecretKeySpec(s.getBytes(StandardCharsets.UTF_8), "AES");
+		});
+	}
+
+	private static Cipher newCipher(String transformation) {
+		try {
+			return Cipher.getInstance(transformation);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("No se pudo inicializar el cifrado AES", e);
+		}
+	}
+
+	public static String encrypt(String token) throws GeneralSecurityException {
+		if (token == null || token.isBlank()) return null;
+		String keyId = currentKeyId();
+		String header = VERSION_PREFIX + keyId + ":";
+
+		byte[] nonce = new byte[NONCE_LENGTH];
+		RANDOM.nextBytes(nonce);
+
+		Cipher cipher = GCM.get();
+		cipher.init(Cipher.ENCRYPT_MODE, key(keyId), new GCMParameterSpec(TAG_BITS, nonce));
+		// La cabecera va como AAD para que no se pueda cambiar el keyId sin invalidar el tag
+		cipher.updateAAD(header.getBytes(StandardCharsets.UTF_8));
+		byte[] encrypted = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
+
+		byte[] out = new byte[NONCE_LENGTH + encrypted.length];
+		System.arraycopy(nonce, 0, out, 0, NONCE_LENGTH);
+		System.arraycopy(encrypted, 0, out, NONCE_LENGTH, encrypted.length);
+		return header + Base64.getEncoder().encodeToString(out);
+	}
+
+	public static String decrypt(String encryptedToken) throws GeneralSecurityException {
+		if (encryptedToken == null || encryptedToken.isBlank()) return "";
+		if (!encryptedToken.startsWith(VERSION_PREFIX)) {
+			return decryptLegacy(encryptedToken);
+		}
+
+		int keyEnd = encryptedToken.indexOf(':', VERSION_PREFIX.length());
+		if (keyEnd < 0) {
+			throw new GeneralSecurityException("Formato de token cifrado no válido");
+		}
+		String keyId = encryptedToken.substring(VERSION_PREFIX.length(), keyEnd);
+		String header = encryptedToken.substring(0, keyEnd + 1);
+		byte[] data = Base64.getDecoder().decode(encryptedToken.substring(keyEnd + 1));
+		if (data.length < NONCE_LENGTH + TAG_BITS / 8) {
+			throw new GeneralSecurityException("Formato de token cifrado no válido");
+		}
+
+		Cipher cipher = GCM.get();
+		cipher.init(Cipher.DECRYPT_MODE, key(keyId), new GCMParameterSpec(TAG_BITS, data, 0, NONCE_LENGTH));
+		cipher.updateAAD(header.getBytes(StandardCharsets.UTF_8));
+		byte[] decrypted = cipher.doFinal(data, NONCE_LENGTH, data.length - NONCE_LENGTH);
+		return new String(decrypted, StandardCharsets.UTF_8);
+	}
+
+	private static String decryptLegacy(String encryptedToken) throws GeneralSecurityException {
+		byte[] decoded = Base64.getDecoder().decode(encryptedToken);
+		// Tras doFinal el Cipher vuelve al estado inicializado y se puede reutilizar
+		byte[] decrypted = LEGACY_DECRYPT.get().doFinal(decoded);
+		return new String(decrypted, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Indica si el valor ya está en el formato actual con la clave actual
+	 * (los valores vacíos no necesitan migrarse).
+	 */
+	public static boolean isCurrent(String encryptedToken) {
+		if (encryptedToken == null || encryptedToken.isBlank()) return true;
+		return encryptedToken.startsWith(VERSION_PREFIX + currentKeyId() + ":");
+	}
+}
@@ -0,0 +1,19 @@
+package daniel.uclm.esi.gramola.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import daniel.uclm.esi.gramola.models.EmailOutbox;
+
+@Repository
+public interface EmailOutboxDao extends JpaRepository<EmailOutbox, String> {
+
+	List<EmailOutbox> findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAt(EmailOutbox.Status status,
+			LocalDateTime now, Pageable page);
+
+	long countByStatus(EmailOutbox.Status status);
+}
@@ -0,0 +1,11 @@
+package daniel.uclm.esi.gramola.dao;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import daniel.uclm.esi.gramola.models.GeocodeCacheEntry;
+
+@Repository
+public interface GeocodeCacheDao extends JpaRepository<GeocodeCacheEntry, String> {
+
+}
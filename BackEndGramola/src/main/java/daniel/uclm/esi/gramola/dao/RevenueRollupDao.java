@@ -0,0 +1,41 @@
+package daniel.uclm.esi.gramola.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import daniel.uclm.esi.gramola.models.RevenueRollup;
+import daniel.uclm.esi.gramola.models.RollupGranularity;
+
+@Repository
+public interface RevenueRollupDao extends JpaRepository<RevenueRollup, String> {
+
+	List<RevenueRollup> findByEmailAndGranularityAndBucketStartBetweenOrderByBucketStart(String email,
+			RollupGranularity granularity, LocalDateTime from, LocalDateTime to);
+
+	/** Suma los contadores al intervalo, creándolo si no existe, en una sola sentencia atómica. */
+	@Transactional
+	@Modifying
+	@Query(value = "INSERT INTO revenue_rollup (id, email, granularity, bucket_start, song_count, song_amount, "
+			+ "subscription_count, subscription_amount) "
+			+ "VALUES (:id, :email, :granularity, :bucketStart, :songCount, :songAmount, :subscriptionCount, :subscriptionAmount) "
+			+ "ON DUPLICATE KEY UPDATE song_count = song_count + VALUES(song_count), "
+			+ "song_amount = song_amount + VALUES(song_amount), "
+			+ "subscription_count = subscription_count + VALUES(subscription_count), "
+			+ "subscription_amount = subscription_amount + VALUES(subscription_amount)", nativeQuery = true)
+	int add(@Param("id") String id, @Param("email") String email, @Param("granularity") String granularity,
+			@Param("bucketStart") LocalDateTime bucketStart, @Param("songCount") long songCount,
+			@Param("songAmount") long songAmount, @Param("subscriptionCount") long subscriptionCount,
+			@Param("subscriptionAmount") long subscriptionAmount);
+
+	@Transactional
+	@Modifying
+	@Query("delete from RevenueRollup r where r.email = :email")
+	int deleteByEmail(@Param("email") String email);
+}
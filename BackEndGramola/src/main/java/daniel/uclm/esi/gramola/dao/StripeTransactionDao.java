@@ -1,11 +1,89 @@
 package daniel.uclm.esi.gramola.dao;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.ReconciliationRow;
 import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.TransactionSummary;
 
 @Repository
 public interface StripeTransactionDao extends JpaRepository <StripeTransaction, String> {
 
+	Optional<StripeTransaction> findByPaymentIntentId(String paymentIntentId);
+
+	boolean existsByPaymentIntentId(String paymentIntentId);
+
+	/** Transacciones anteriores a las columnas extraídas, por orden de id para poder reanudar. */
+	List<StripeTransaction> findByKindIsNullAndIdGreaterThanOrderById(String afterId, Pageable page);
+
+	// Historial por bar con paginación por clave (createdAt, id): cada página es un rango del
+	// índice (email[, kind], createdAt, id), sin OFFSET, así que cuesta lo mismo en la página 1 que en la 1000
+
+	String SUMMARY = "select new daniel.uclm.esi.gramola.models.TransactionSummary(t.id, t.paymentIntentId, t.kind, "
+			+ "t.status, t.amount, t.currency, t.trackUri, t.createdAt, t.confirmedAt) from StripeTransaction t ";
+
+	@Query(SUMMARY + "where t.email = :email order by t.createdAt desc, t.id desc")
+	List<TransactionSummary> findHistory(@Param("email") String email, Pageable page);
+
+	@Query(SUMMARY + "where t.email = :email "
+			+ "and (t.createdAt < :createdAt or (t.createdAt = :createdAt and t.id < :id)) "
+			+ "order by t.createdAt desc, t.id desc")
+	List<TransactionSummary> findHistoryAfter(@Param("email") String email, @Param("createdAt") LocalDateTime createdAt,
+			@Param("id") String id, Pageable page);
+
+	@Query(SUMMARY + "where t.email = :email and t.kind = :kind order by t.createdAt desc, t.id desc")
+	List<TransactionSummary> findHistoryByKind(@Param("email") String email, @Param("kind") PaymentKind kind, Pageable page);
+
+	@Query(SUMMARY + "where t.email = :email and t.kind = :kind "
+			+ "and (t.createdAt < :createdAt or (t.createdAt = :createdAt and t.id < :id)) "
+			+ "order by t.createdAt desc, t.id desc")
+	List<TransactionSummary> findHistoryByKindAfter(@Param("email") String email, @Param("kind") PaymentKind kind,
+			@Param("createdAt") LocalDateTime createdAt, @Param("id") String id, Pageable page);
+
+	/** Bares con algún pago confirmado, para reconstruir sus acumulados de ingresos. */
+	@Query("select distinct t.email from StripeTransaction t where t.confirmedAt is not null and t.email is not null")
+	List<String> findConfirmedEmails();
+
+	@Query(SUMMARY + "where t.email = :email and t.confirmedAt is not null and t.id > :id order by t.id")
+	List<TransactionSummary> findConfirmedAfter(@Param("email") String email, @Param("id") String afterId, Pageable page);
+
+	/** Filas de un lote de PaymentIntents de Stripe, por el índice único de paymentIntentId. */
+	@Query("select new daniel.uclm.esi.gramola.models.ReconciliationRow(t.id, t.paymentIntentId, t.kind, t.status, "
+			+ "t.amount, t.email, t.trackUri, t.confirmedAt) from StripeTransaction t where t.paymentIntentId in :ids")
+	List<ReconciliationRow> findReconciliationRows(@Param("ids") Collection<String> paymentIntentIds);
+
+	@Transactional
+	@Modifying
+	@Query("update StripeTransaction t set t.email = :email where t.paymentIntentId = :paymentIntentId and t.email is null")
+	int attachEmail(@Param("paymentIntentId") String paymentIntentId, @Param("email") String email);
+
+	/** Registra un cambio de estado recibido de Stripe; no hace nada si ya estaba en ese estado. */
+	@Transactional
+	@Modifying
+	@Query("update StripeTransaction t set t.status = :status, t.amount = :amount, t.data = :data "
+			+ "where t.paymentIntentId = :paymentIntentId and (t.status is null or t.status <> :status)")
+	int updateStatus(@Param("paymentIntentId") String paymentIntentId, @Param("status") String status,
+			@Param("amount") Long amount, @Param("data") String data);
+
+	/** Copia el estado y el importe de Stripe si cualquiera de los dos difiere (reconciliación). */
+	@Transactional
+	@Modifying
+	@Query("update StripeTransaction t set t.status = :status, t.amount = :amount, t.data = :data "
+			+ "where t.paymentIntentId = :paymentIntentId and (t.status is null or t.status <> :status "
+			+ "or t.amount is null or t.amount <> :amount)")
+	int repairFromStripe(@Param("paymentIntentId") String paymentIntentId, @Param("status") String status,
+			@Param("amount") Long amount, @Param("data") String data);
 }
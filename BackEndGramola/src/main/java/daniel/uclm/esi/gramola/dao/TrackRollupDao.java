@@ -0,0 +1,38 @@
+package daniel.uclm.esi.gramola.dao;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import daniel.uclm.esi.gramola.models.TrackRevenue;
+import daniel.uclm.esi.gramola.models.TrackRollup;
+
+@Repository
+public interface TrackRollupDao extends JpaRepository<TrackRollup, String> {
+
+	@Query("select new daniel.uclm.esi.gramola.models.TrackRevenue(r.trackUri, sum(r.plays), sum(r.amount)) "
+			+ "from TrackRollup r where r.email = :email and r.bucketDay between :from and :to "
+			+ "group by r.trackUri order by sum(r.plays) desc, sum(r.amount) desc")
+	List<TrackRevenue> findTopTracks(@Param("email") String email, @Param("from") LocalDate from,
+			@Param("to") LocalDate to, Pageable page);
+
+	@Transactional
+	@Modifying
+	@Query(value = "INSERT INTO track_rollup (id, email, bucket_day, track_uri, plays, amount) "
+			+ "VALUES (:id, :email, :bucketDay, :trackUri, :plays, :amount) "
+			+ "ON DUPLICATE KEY UPDATE plays = plays + VALUES(plays), amount = amount + VALUES(amount)", nativeQuery = true)
+	int add(@Param("id") String id, @Param("email") String email, @Param("bucketDay") LocalDate bucketDay,
+			@Param("trackUri") String trackUri, @Param("plays") long plays, @Param("amount") long amount);
+
+	@Transactional
+	@Modifying
+	@Query("delete from TrackRollup r where r.email = :email")
+	int deleteByEmail(@Param("email") String email);
+}
@@ -1,11 +1,170 @@
 package daniel.uclm.esi.gramola.dao;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import daniel.uclm.esi.gramola.models.BarLocation;
+import daniel.uclm.esi.gramola.models.GeocodingStatus;
+import daniel.uclm.esi.gramola.models.PendingGeocoding;
+import daniel.uclm.esi.gramola.models.SpotifyTokens;
+import daniel.uclm.esi.gramola.models.SubscriptionExpiry;
 import daniel.uclm.esi.gramola.models.User;
+import daniel.uclm.esi.gramola.models.UserProfile;
 
 @Repository
 public interface UserDao extends JpaRepository<User, String> {
 
+	@Query("select new daniel.uclm.esi.gramola.models.UserProfile(u.email, "
+			+ "case when u.activatedAt is not null then true else false end, "
+			+ "u.subscriptionExpiry, u.ubicacionBar, u.nombreBar, u.costeCancion, u.latitud, u.longitud, "
+			+ "u.geocodingStatus, u.radioGeocerca, u.geocercaPoligono) "
+			+ "from User u where u.email = :email")
+	Optional<UserProfile> findProfileByEmail(@Param("email") String email);
+
+	@Query("select u.pwd from User u where u.email = :email")
+	Optional<String> findPwdByEmail(@Param("email") String email);
+
+	// Se lee la clave ajena directamente, sin join con Token
+	@Query("select u.creationToken.id from User u where u.email = :email")
+	Optional<String> findCreationTokenIdByEmail(@Param("email") String email);
+
+	@Query("select u.firma from User u where u.email = :email")
+	Optional<String> findFirmaByEmail(@Param("email") String email);
+
+	Optional<SpotifyTokens> findSpotifyTokensByEmail(String email);
+
+	// Escrituras de una sola sentencia UPDATE: devuelven el número de filas afectadas
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.costeCancion = :costeCancion where u.email = :email")
+	int updateCosteCancion(@Param("email") String email, @Param("costeCancion") Double costeCancion);
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.ubicacionBar = :ubicacionBar, u.nombreBar = :nombreBar where u.email = :email")
+	int updateBarData(@Param("email") String email, @Param("ubicacionBar") String ubicacionBar,
+			@Param("nombreBar") String nombreBar);
+
+	/** Cambia solo el nombre si la dirección guardada es {@code ubicacionBar} y ya tiene coordenadas. */
+	@Transactional
+	@Modifying
+	@Query("update User u set u.nombreBar = :nombreBar where u.email = :email and u.ubicacionBar = :ubicacionBar "
+			+ "and u.latitud is not null and u.longitud is not null")
+	int updateBarNameIfSameAddress(@Param("email") String email, @Param("ubicacionBar") String ubicacionBar,
+			@Param("nombreBar") String nombreBar);
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.ubicacionBar = :ubicacionBar, u.nombreBar = :nombreBar, "
+			+ "u.latitud = :latitud, u.longitud = :longitud, "
+			+ "u.geocodingStatus = daniel.uclm.esi.gramola.models.GeocodingStatus.RESOLVED, "
+			+ "u.geocodingAttempts = 0, u.geocodingNextAttemptAt = null where u.email = :email")
+	int updateBarDataWithCoordinates(@Param("email") String email, @Param("ubicacionBar") String ubicacionBar,
+			@Param("nombreBar") String nombreBar, @Param("latitud") Double latitud, @Param("longitud") Double longitud);
+
+	/** Guarda la nueva dirección sin coordenadas y la deja en cola para geocodificarla. */
+	@Transactional
+	@Modifying
+	@Query("update User u set u.ubicacionBar = :ubicacionBar, u.nombreBar = :nombreBar, "
+			+ "u.latitud = null, u.longitud = null, "
+			+ "u.geocodingStatus = daniel.uclm.esi.gramola.models.GeocodingStatus.PENDING, "
+			+ "u.geocodingAttempts = 0, u.geocodingNextAttemptAt = :now where u.email = :email")
+	int updateBarDataPendingGeocoding(@Param("email") String email, @Param("ubicacionBar") String ubicacionBar,
+			@Param("nombreBar") String nombreBar, @Param("now") LocalDateTime now);
+
+	@Query("select u.email as email, u.ubicacionBar as ubicacionBar, u.nombreBar as nombreBar, "
+			+ "u.geocodingAttempts as geocodingAttempts "
+			+ "from User u where u.geocodingStatus = daniel.uclm.esi.gramola.models.GeocodingStatus.PENDING "
+			+ "and u.geocodingNextAttemptAt <= :now order by u.geocodingNextAttemptAt")
+	List<PendingGeocoding> findPendingGeocoding(@Param("now") LocalDateTime now, Pageable pageable);
+
+	// Todas las transiciones de la cola exigen que la dirección no haya cambiado mientras se geocodificaba
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.latitud = :latitud, u.longitud = :longitud, "
+			+ "u.geocodingStatus = daniel.uclm.esi.gramola.models.GeocodingStatus.RESOLVED, "
+			+ "u.geocodingAttempts = 0, u.geocodingNextAttemptAt = null where u.email = :email and u.ubicacionBar = :ubicacionBar "
+			+ "and u.geocodingStatus = daniel.uclm.esi.gramola.models.GeocodingStatus.PENDING")
+	int resolveGeocoding(@Param("email") String email, @Param("ubicacionBar") String ubicacionBar,
+			@Param("latitud") Double latitud, @Param("longitud") Double longitud);
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.geocodingStatus = :status, u.geocodingAttempts = :attempts, "
+			+ "u.geocodingNextAttemptAt = :nextAttemptAt where u.email = :email and u.ubicacionBar = :ubicacionBar "
+			+ "and u.geocodingStatus = daniel.uclm.esi.gramola.models.GeocodingStatus.PENDING")
+	int updateGeocodingAttempt(@Param("email") String email, @Param("ubicacionBar") String ubicacionBar,
+			@Param("status") GeocodingStatus status, @Param("attempts") int attempts,
+			@Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+	long countByGeocodingStatus(GeocodingStatus status);
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.radioGeocerca = :radio, u.geocercaPoligono = :poligono where u.email = :email")
+	int updateGeofence(@Param("email") String email, @Param("radio") Double radio, @Param("poligono") String poligono);
+
+	@Query("select u.email as email, u.nombreBar as nombreBar, u.latitud as latitud, u.longitud as longitud "
+			+ "from User u where u.latitud is not null and u.longitud is not null")
+	List<BarLocation> findBarLocations();
+
+	@Query("select u.email as email, u.subscriptionExpiry as subscriptionExpiry "
+			+ "from User u where u.subscriptionExpiry is not null")
+	List<SubscriptionExpiry> findSubscriptionExpiries();
+
+	/** Solo actualiza si el hash no ha cambiado desde que se comprobó la contraseña antigua. */
+	@Transactional
+	@Modifying
+	@Query("update User u set u.pwd = :newPwd where u.email = :email and u.pwd = :oldPwd")
+	int updatePwdIfUnchanged(@Param("email") String email, @Param("oldPwd") String oldPwd,
+			@Param("newPwd") String newPwd);
+
+	@Transactional
+	@Modifying
+	@Query("update versioned User u set u.subscriptionExpiry = :expiry where u.email = :email")
+	int updateSubscriptionExpiry(@Param("email") String email, @Param("expiry") LocalDateTime expiry);
+
+	/** Marca como usado el token de creación del usuario si coincide y aún no se había usado. */
+	@Transactional
+	@Modifying
+	@Query("update Token t set t.usedTime = :now where t.id = :token and t.usedTime = 0 "
+			+ "and exists (select u from User u where u.email = :email and u.creationToken = t)")
+	int activateCreationToken(@Param("email") String email, @Param("token") String token, @Param("now") long now);
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.activatedAt = :now where u.email = :email and u.activatedAt is null")
+	int markActivated(@Param("email") String email, @Param("now") long now);
+
+	/**
+	 * Pasa a euros los precios por canción guardados en céntimos (el editor de perfil antiguo
+	 * multiplicaba por 100): los que superan {@code maximo} y divididos entre 100 ya no lo superan.
+	 */
+	@Transactional
+	@Modifying
+	@Query("update User u set u.costeCancion = u.costeCancion / 100 "
+			+ "where u.costeCancion > :maximo and u.costeCancion / 100 <= :maximo")
+	int convertCosteCancionFromCents(@Param("maximo") double maximo);
+
+	long countByCosteCancionGreaterThan(Double maximo);
+
+	/** Copia usedTime de los tokens ya usados a las filas de usuario que aún no tienen activatedAt. */
+	@Transactional
+	@Modifying
+	@Query("update User u set u.activatedAt = (select t.usedTime from Token t where t = u.creationToken) "
+			+ "where u.activatedAt is null "
+			+ "and exists (select t from Token t where t = u.creationToken and t.usedTime <> 0)")
+	int backfillActivatedAt();
 }
@@ -0,0 +1,205 @@
+package daniel.uclm.esi.gramola.geo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.BarLocation;
+
+/**
+ * Índice espacial en memoria de los bares con coordenadas: una rejilla de celdas de
+ * {@code cell-degrees} grados. Se carga al arrancar y lo mantienen al día {@code UserService}
+ * y {@code BarGeocodingWorker} cada vez que escriben latitud/longitud.
+ *
+ * La búsqueda de los k más cercanos recorre anillos de celdas alrededor del punto y descarta
+ * por caja envolvente antes de calcular el Haversine; se detiene cuando ningún bar de un anillo
+ * más exterior puede estar más cerca que el k-ésimo encontrado.
+ */
+@Component
+public class BarSpatialIndex implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(BarSpatialIndex.class);
+
+	private record BarPoint(String email, String nombreBar, double latitud, double longitud) {
+	}
+
+	@Autowired
+	private UserDao userDao;
+
+	@Value("${app.geo.index.cell-degrees:0.01}")
+	private double cellDegrees;
+
+	private final Map<Long, List<BarPoint>> cells = new HashMap<>();
+	private final Map<String, BarPoint> byEmail = new HashMap<>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong haversines = new AtomicLong();
+	private final AtomicLong prefiltered = new AtomicLong();
+
+	@Override
+	public void run(ApplicationArguments args) {
+		rebuild();
+	}
+
+	public void rebuild() {
+		List<BarLocation> locations = userDao.findBarLocations();
+		lock.writeLock().lock();
+		try {
+			cells.clear();
+			byEmail.clear();
+			for (BarLocation location : locations) {
+				insert(new BarPoint(location.getEmail(), location.getNombreBar(), location.getLatitud(), location.getLongitud()));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		logger.info("Índice espacial cargado con {} bares", locations.size());
+	}
+
+	public void put(String email, String nombreBar, double latitud, double longitud) {
+		lock.writeLock().lock();
+		try {
+			delete(email);
+			insert(new BarPoint(email, nombreBar, latitud, longitud));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String email) {
+		lock.writeLock().lock();
+		try {
+			delete(email);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void insert(BarPoint point) {
+		byEmail.put(point.email(), point);
+		cells.computeIfAbsent(cellKey(cell(point.latitud()), cell(point.longitud())), k -> new ArrayList<>()).add(point);
+	}
+
+	private void delete(String email) {
+		BarPoint old = byEmail.remove(email);
+		if (old == null) return;
+		long key = cellKey(cell(old.latitud()), cell(old.longitud()));
+		List<BarPoint> cell = cells.get(key);
+		cell.remove(old);
+		if (cell.isEmpty()) cells.remove(key);
+	}
+
+	private int cell(double degrees) {
+		return (int) Math.floor(degrees / cellDegrees);
+	}
+
+	private static long cellKey(int latCell, int lonCell) {
+		return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return byEmail.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Devuelve como mucho {@code k} bares a menos de {@code maxMetros}, del más cercano al más lejano.
+	 */
+	public List<NearbyBar> nearest(double latitud, double longitud, int k, double maxMetros) {
+		searches.incrementAndGet();
+		// Cola con el más lejano de los k mejores en la cabeza
+		PriorityQueue<NearbyBar> best = new PriorityQueue<>(k + 1,
+				Comparator.comparingDouble(NearbyBar::distanciaMetros).reversed());
+		int centerLat = cell(latitud);
+		int centerLon = cell(longitud);
+		long evaluated = 0;
+		long skipped = 0;
+
+		lock.readLock().lock();
+		try {
+			for (int ring = 0; ; ring++) {
+				double limit = best.size() == k ? best.peek().distanciaMetros() : maxMetros;
+				double boxLat = limit / GeoMath.METROS_POR_GRADO;
+				double boxLon = GeoMath.gradosLongitud(limit, latitud);
+
+				for (int dLat = -ring; dLat <= ring; dLat++) {
+					// En las filas intermedias del anillo solo cuentan las dos columnas de los bordes
+					int step = (dLat == -ring || dLat == ring) ? 1 : Math.max(1, 2 * ring);
+					for (int dLon = -ring; dLon <= ring; dLon += step) {
+						List<BarPoint> cell = cells.get(cellKey(centerLat + dLat, centerLon + dLon));
+						if (cell == null) continue;
+						for (BarPoint point : cell) {
+							if (Math.abs(point.latitud() - latitud) > boxLat || Math.abs(point.longitud() - longitud) > boxLon) {
+								skipped++;
+								continue;
+							}
+							evaluated++;
+							double distancia = GeoMath.distanciaMetros(latitud, longitud, point.latitud(), point.longitud());
+							if (distancia > limit) continue;
+							best.offer(new NearbyBar(point.email(), point.nombreBar(), point.latitud(), point.longitud(), distancia));
+							if (best.size() > k) best.poll();
+							if (best.size() == k) {
+								limit = best.peek().distanciaMetros();
+								boxLat = limit / GeoMath.METROS_POR_GRADO;
+								boxLon = GeoMath.gradosLongitud(limit, latitud);
+							}
+						}
+					}
+				}
+
+				// Distancia mínima a la que puede estar cualquier bar de los anillos siguientes
+				double outerLat = Math.abs(latitud) + (ring + 1) * cellDegrees;
+				double ringMetros = Math.min(ring * cellDegrees * GeoMath.METROS_POR_GRADO,
+						ring * cellDegrees / GeoMath.gradosLongitud(1, outerLat));
+				if (ringMetros > limit || (best.size() == k && ringMetros >= best.peek().distanciaMetros())) {
+					break;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		haversines.addAndGet(evaluated);
+		prefiltered.addAndGet(skipped);
+
+		List<NearbyBar> result = new ArrayList<>(best);
+		result.sort(Comparator.comparingDouble(NearbyBar::distanciaMetros));
+		return result;
+	}
+
+	public Map<String, Object> stats() {
+		long total = searches.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("bars", size());
+		lock.readLock().lock();
+		try {
+			stats.put("cells", cells.size());
+		} finally {
+			lock.readLock().unlock();
+		}
+		stats.put("cellDegrees", cellDegrees);
+		stats.put("searches", total);
+		stats.put("avgHaversinesPerSearch", total == 0 ? 0.0 : (double) haversines.get() / total);
+		stats.put("avgPrefilteredPerSearch", total == 0 ? 0.0 : (double) prefiltered.get() / total);
+		return stats;
+	}
+}
@@ -0,0 +1,38 @@
+package daniel.uclm.esi.gramola.geo;
+
+/**
+ * Cálculos geográficos sobre una Tierra esférica.
+ */
+public final class GeoMath {
+
+	public static final double RADIO_TIERRA_METROS = 6371000;
+	/** Metros por grado de latitud (y de longitud en el ecuador). */
+	public static final double METROS_POR_GRADO = Math.toRadians(1) * RADIO_TIERRA_METROS;
+
+	private GeoMath() {
+	}
+
+	/**
+	 * Distancia entre dos puntos con la fórmula de Haversine.
+	 * 
+	 * @return distancia en metros
+	 */
+	public static double distanciaMetros(double lat1, double lon1, double lat2, double lon2) {
+		double lat1Rad = Math.toRadians(lat1);
+		double lat2Rad = Math.toRadians(lat2);
+		double deltaLatRad = Math.toRadians(lat2 - lat1);
+		double deltaLonRad = Math.toRadians(lon2 - lon1);
+
+		double a = Math.sin(deltaLatRad / 2) * Math.sin(deltaLatRad / 2) +
+				Math.cos(lat1Rad) * Math.cos(lat2Rad) *
+				Math.sin(deltaLonRad / 2) * Math.sin(deltaLonRad / 2);
+		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+		return RADIO_TIERRA_METROS * c;
+	}
+
+	/** Grados de longitud que ocupan {@code metros} a la latitud dada (acotado cerca de los polos). */
+	public static double gradosLongitud(double metros, double latitud) {
+		double cos = Math.cos(Math.toRadians(Math.min(Math.abs(latitud), 89.0)));
+		return metros / (METROS_POR_GRADO * cos);
+	}
+}
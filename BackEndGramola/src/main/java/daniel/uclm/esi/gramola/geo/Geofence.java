@@ -0,0 +1,115 @@
+package daniel.uclm.esi.gramola.geo;
+
+/**
+ * Geocerca de un bar ya "compilada": un círculo alrededor del bar o, si se ha definido,
+ * un polígono. La caja envolvente, el coseno de la latitud del centro y los vértices se
+ * calculan una vez, así que {@link #contains} no crea objetos y casi siempre evita la
+ * trigonometría descartando por la caja.
+ */
+public final class Geofence {
+
+	private final double latitud;
+	private final double longitud;
+	private final double radioMetros;
+
+	private final double latRad;
+	private final double lonRad;
+	private final double cosLat;
+
+	private final double minLat;
+	private final double maxLat;
+	private final double minLon;
+	private final double maxLon;
+
+	// Vértices del polígono (null si es un círculo)
+	private final double[] polyLat;
+	private final double[] polyLon;
+
+	private Geofence(double latitud, double longitud, double radioMetros, double[] polyLat, double[] polyLon) {
+		this.latitud = latitud;
+		this.longitud = longitud;
+		this.radioMetros = radioMetros;
+		this.latRad = Math.toRadians(latitud);
+		this.lonRad = Math.toRadians(longitud);
+		this.cosLat = Math.cos(latRad);
+		this.polyLat = polyLat;
+		this.polyLon = polyLon;
+
+		if (polyLat == null) {
+			double dLat = radioMetros / GeoMath.METROS_POR_GRADO;
+			double dLon = GeoMath.gradosLongitud(radioMetros, Math.abs(latitud) + dLat);
+			this.minLat = latitud - dLat;
+			this.maxLat = latitud + dLat;
+			this.minLon = longitud - dLon;
+			this.maxLon = longitud + dLon;
+		} else {
+			double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE, left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+			for (int i = 0; i < polyLat.length; i++) {
+				lo = Math.min(lo, polyLat[i]);
+				hi = Math.max(hi, polyLat[i]);
+				left = Math.min(left, polyLon[i]);
+				right = Math.max(right, polyLon[i]);
+			}
+			this.minLat = lo;
+			this.maxLat = hi;
+			this.minLon = left;
+			this.maxLon = right;
+		}
+	}
+
+	public static Geofence circle(double latitud, double longitud, double radioMetros) {
+		return new Geofence(latitud, longitud, radioMetros, null, null);
+	}
+
+	/** Polígono con los vértices en orden; el centro (el bar) solo se usa para informar distancias. */
+	public static Geofence polygon(double latitud, double longitud, double[] polyLat, double[] polyLon) {
+		if (polyLat.length != polyLon.length || polyLat.length < 3) {
+			throw new IllegalArgumentException("Un polígono necesita al menos 3 vértices");
+		}
+		return new Geofence(latitud, longitud, 0, polyLat.clone(), polyLon.clone());
+	}
+
+	public boolean isPolygon() {
+		return polyLat != null;
+	}
+
+	public double getRadioMetros() {
+		return radioMetros;
+	}
+
+	public double getLatitud() {
+		return latitud;
+	}
+
+	public double getLongitud() {
+		return longitud;
+	}
+
+	public boolean contains(double lat, double lon) {
+		if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+			return false;
+		}
+		return polyLat == null ? distanciaMetros(lat, lon) <= radioMetros : insidePolygon(lat, lon);
+	}
+
+	/** Haversine con los términos del centro ya calculados. */
+	public double distanciaMetros(double lat, double lon) {
+		double otherLatRad = Math.toRadians(lat);
+		double sinDLat = Math.sin((otherLatRad - latRad) / 2);
+		double sinDLon = Math.sin((Math.toRadians(lon) - lonRad) / 2);
+		double a = sinDLat * sinDLat + cosLat * Math.cos(otherLatRad) * sinDLon * sinDLon;
+		return 2 * GeoMath.RADIO_TIERRA_METROS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+
+	// Ray casting en el plano lat/lon: suficiente para polígonos del tamaño de una manzana
+	private boolean insidePolygon(double lat, double lon) {
+		boolean inside = false;
+		for (int i = 0, j = polyLat.length - 1; i < polyLat.length; j = i++) {
+			if ((polyLat[i] > lat) != (polyLat[j] > lat)
+					&& lon < (polyLon[j] - polyLon[i]) * (lat - polyLat[i]) / (polyLat[j] - polyLat[i]) + polyLon[i]) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+}
@@ -0,0 +1,122 @@
+package daniel.uclm.esi.gramola.geo;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import daniel.uclm.esi.gramola.models.UserProfile;
+
+/**
+ * Geocercas compiladas por bar. Cada una se compila a partir del {@link UserProfile} de la
+ * caché de usuarios y se reutiliza mientras la caché devuelva el mismo perfil: cualquier
+ * escritura que invalide al usuario provoca que se vuelva a compilar en la siguiente consulta.
+ */
+@Component
+public class GeofenceRegistry {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final TypeReference<List<double[]>> POLYGON = new TypeReference<>() { };
+
+	static final int MAX_VERTICES = 100;
+
+	@Value("${app.geo.geofence.default-radius:100}")
+	private double defaultRadius;
+
+	private record Compiled(UserProfile source, Geofence fence) {
+	}
+
+	private final Map<String, Compiled> fences = new ConcurrentHashMap<>();
+	private final AtomicLong compilations = new AtomicLong();
+	private final AtomicLong reuses = new AtomicLong();
+
+	public double getDefaultRadius() {
+		return defaultRadius;
+	}
+
+	/**
+	 * @return la geocerca del bar o null si aún no tiene coordenadas
+	 */
+	public Geofence get(UserProfile profile) {
+		if (!profile.hasCoordinates()) {
+			fences.remove(profile.email());
+			return null;
+		}
+		Compiled compiled = fences.get(profile.email());
+		if (compiled != null && compiled.source() == profile) {
+			reuses.incrementAndGet();
+			return compiled.fence();
+		}
+		Geofence fence = compile(profile);
+		fences.put(profile.email(), new Compiled(profile, fence));
+		compilations.incrementAndGet();
+		return fence;
+	}
+
+	public void remove(String email) {
+		fences.remove(email);
+	}
+
+	private Geofence compile(UserProfile profile) {
+		List<double[]> vertices = parsePolygon(profile.geocercaPoligono());
+		if (vertices != null) {
+			double[] lats = new double[vertices.size()];
+			double[] lons = new double[vertices.size()];
+			for (int i = 0; i < vertices.size(); i++) {
+				lats[i] = vertices.get(i)[0];
+				lons[i] = vertices.get(i)[1];
+			}
+			return Geofence.polygon(profile.latitud(), profile.longitud(), lats, lons);
+		}
+		double radio = profile.radioGeocerca() != null ? profile.radioGeocerca() : defaultRadius;
+		return Geofence.circle(profile.latitud(), profile.longitud(), radio);
+	}
+
+	/** Convierte el JSON guardado ({@code [[lat, lon], ...]}) en vértices; null si no hay polígono. */
+	public static List<double[]> parsePolygon(String json) {
+		if (json == null || json.isBlank()) return null;
+		try {
+			return MAPPER.readValue(json, POLYGON);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Polígono de geocerca mal formado", e);
+		}
+	}
+
+	/** Valida los vértices recibidos por la API y los serializa para guardarlos. */
+	public static String toJson(List<double[]> vertices) {
+		if (vertices == null || vertices.isEmpty()) return null;
+		if (vertices.size() < 3 || vertices.size() > MAX_VERTICES) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"El polígono debe tener entre 3 y " + MAX_VERTICES + " vértices");
+		}
+		for (double[] v : vertices) {
+			if (v == null || v.length != 2 || Math.abs(v[0]) > 90 || Math.abs(v[1]) > 180) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cada vértice debe ser [latitud, longitud]");
+			}
+		}
+		try {
+			return MAPPER.writeValueAsString(vertices);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("compiled", fences.size());
+		stats.put("compilations", compilations.get());
+		stats.put("reuses", reuses.get());
+		stats.put("defaultRadius", defaultRadius);
+		return stats;
+	}
+}
@@ -0,0 +1,7 @@
+package daniel.uclm.esi.gramola.geo;
+
+/**
+ * Bar devuelto por una búsqueda de cercanía, con su distancia al punto buscado.
+ */
+public record NearbyBar(String email, String nombreBar, double latitud, double longitud, double distanciaMetros) {
+}
@@ -0,0 +1,113 @@
+package daniel.uclm.esi.gramola.geocoding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Geocodificación sin red a partir de un nomenclátor local ({@code app.geocoding.gazetteer.file},
+ * por ejemplo un extracto de OSM o GeoNames para España convertido a TSV). Al arrancar genera el
+ * índice binario si no existe o está desfasado y lo proyecta en memoria.
+ */
+@Component
+public class GazetteerGeocoder {
+
+	private static final Logger logger = LoggerFactory.getLogger(GazetteerGeocoder.class);
+
+	@Value("${app.geocoding.mode:PHOTON}")
+	private GeocodingMode mode;
+
+	@Value("${app.geocoding.gazetteer.file:}")
+	private String file;
+
+	@Value("${app.geocoding.gazetteer.index-file:}")
+	private String indexFile;
+
+	@Value("${app.geocoding.gazetteer.min-score:0.75}")
+	private double minScore;
+
+	private volatile GazetteerIndex index;
+	private long loadMillis;
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong exactHits = new AtomicLong();
+	private final AtomicLong approximateHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong lookupNanos = new AtomicLong();
+
+	@PostConstruct
+	void init() throws IOException {
+		if (mode == GeocodingMode.PHOTON) return;
+		if (file == null || file.isBlank()) {
+			throw new IllegalStateException("app.geocoding.mode=" + mode + " necesita app.geocoding.gazetteer.file");
+		}
+		load(Path.of(file), indexFile == null || indexFile.isBlank() ? Path.of(file + ".idx") : Path.of(indexFile));
+	}
+
+	void load(Path source, Path indexPath) throws IOException {
+		long start = System.nanoTime();
+		if (Files.exists(source) && GazetteerIndex.needsRebuild(source, indexPath)) {
+			int entries = GazetteerIndex.build(source, indexPath);
+			logger.info("Índice del nomenclátor generado en {} con {} direcciones", indexPath, entries);
+		}
+		this.index = GazetteerIndex.open(indexPath);
+		this.loadMillis = (System.nanoTime() - start) / 1_000_000;
+		logger.info("Nomenclátor cargado: {} direcciones, {} KB mapeados, {} ms",
+				index.size(), index.mappedBytes() / 1024, loadMillis);
+	}
+
+	public GeocodingMode getMode() {
+		return mode;
+	}
+
+	public boolean isEnabled() {
+		return mode != GeocodingMode.PHOTON && index != null;
+	}
+
+	/**
+	 * Busca una dirección ya normalizada (ver {@code GeocodingCache.normalizar}).
+	 * @return la coincidencia o null si no hay ninguna suficientemente parecida
+	 */
+	public GazetteerIndex.Match lookup(String normalizada) {
+		GazetteerIndex current = index;
+		if (current == null) return null;
+		long start = System.nanoTime();
+		GazetteerIndex.Match match = current.lookup(normalizada, minScore);
+		lookupNanos.addAndGet(System.nanoTime() - start);
+		lookups.incrementAndGet();
+		if (match == null) {
+			misses.incrementAndGet();
+		} else if (match.score() >= 1.0) {
+			exactHits.incrementAndGet();
+		} else {
+			approximateHits.incrementAndGet();
+		}
+		return match;
+	}
+
+	public Map<String, Object> stats() {
+		GazetteerIndex current = index;
+		long total = lookups.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("mode", mode.name());
+		stats.put("entries", current == null ? 0 : current.size());
+		stats.put("mappedBytes", current == null ? 0 : current.mappedBytes());
+		stats.put("loadMillis", loadMillis);
+		stats.put("lookups", total);
+		stats.put("exactHits", exactHits.get());
+		stats.put("approximateHits", approximateHits.get());
+		stats.put("misses", misses.get());
+		stats.put("avgLookupMicros", total == 0 ? 0.0 : lookupNanos.get() / 1000.0 / total);
+		return stats;
+	}
+}
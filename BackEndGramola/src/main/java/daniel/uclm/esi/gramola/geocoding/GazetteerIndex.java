@@ -0,0 +1,380 @@
+package daniel.uclm.esi.gramola.geocoding;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+
+/**
+ * Índice de un nomenclátor (direcciones con sus coordenadas) guardado en un fichero binario
+ * que se proyecta en memoria con {@link FileChannel#map}: el índice no ocupa heap y el sistema
+ * operativo comparte sus páginas entre procesos.
+ *
+ * Formato del fichero (big endian):
+ * <pre>
+ * cabecera   magic, versión, nº entradas, nº trigramas, y los desplazamientos de cada sección
+ * entradas   [offset clave, longitud clave, latitud, longitud] ordenadas por la clave en UTF-8
+ * trigramas  [trigrama, primera posición en postings, nº de postings] ordenados por trigrama
+ * postings   índices de entrada que contienen cada trigrama
+ * claves     texto UTF-8 de las direcciones normalizadas
+ * </pre>
+ * Las búsquedas exactas y por prefijo son búsquedas binarias comparando bytes sin crear
+ * objetos; si fallan, los trigramas proponen candidatos que se puntúan con el coeficiente de Dice.
+ */
+public final class GazetteerIndex {
+
+	public record Match(String key, double latitud, double longitud, double score) {
+	}
+
+	static final int MAGIC = 0x47415A31; // "GAZ1"
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 48;
+	private static final int ENTRY_BYTES = 24;
+	private static final int TRIGRAM_BYTES = 16;
+
+	// Trigramas presentes en más de 1/50 de las entradas ("cal", "lle"...) no ayudan a elegir candidatos
+	private static final int COMMON_TRIGRAM_DIVISOR = 50;
+	private static final int MIN_POSTINGS_LIMIT = 64;
+	private static final int MAX_CANDIDATES = 32;
+	private static final int MAX_PREFIX_SCAN = 16;
+
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int trigramCount;
+	private final int entriesOffset;
+	private final int trigramsOffset;
+	private final int postingsOffset;
+	private final int heapOffset;
+
+	private GazetteerIndex(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IllegalArgumentException("El fichero no es un índice de nomenclátor válido");
+		}
+		this.count = buffer.getInt(8);
+		this.trigramCount = buffer.getInt(12);
+		this.entriesOffset = (int) buffer.getLong(16);
+		this.trigramsOffset = (int) buffer.getLong(24);
+		this.postingsOffset = (int) buffer.getLong(32);
+		this.heapOffset = (int) buffer.getLong(40);
+	}
+
+	public static GazetteerIndex open(Path indexFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("El índice supera los 2 GB que admite un único mapeo");
+			}
+			// El mapeo sigue siendo válido después de cerrar el canal
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			return new GazetteerIndex(buffer);
+		}
+	}
+
+	/** Indica si hay que (re)generar el índice porque no existe o es más antiguo que el fichero fuente. */
+	public static boolean needsRebuild(Path source, Path indexFile) throws IOException {
+		return !Files.exists(indexFile)
+			|| Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(source)) < 0;
+	}
+
+	/**
+	 * Genera el índice a partir de un TSV {@code dirección<TAB>latitud<TAB>longitud} (las líneas
+	 * que empiezan por # se ignoran). Las direcciones se normalizan igual que las claves de la
+	 * caché de geocodificación; si se repiten gana la primera.
+	 *
+	 * @return número de entradas indexadas
+	 */
+	public static int build(Path source, Path indexFile) throws IOException {
+		Map<String, double[]> unique = new HashMap<>();
+		List<byte[]> keys = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank() || line.startsWith("#")) continue;
+				String[] parts = line.split("\t");
+				if (parts.length < 3) continue;
+				String key = GeocodingCache.normalizar(parts[0]);
+				if (key.isEmpty() || unique.containsKey(key)) continue;
+				try {
+					unique.put(key, new double[] { Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim()) });
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				keys.add(key.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		keys.sort(Arrays::compareUnsigned);
+
+		int n = keys.size();
+		Map<Long, List<Integer>> postingsByTrigram = new HashMap<>();
+		long heapBytes = 0;
+		for (int i = 0; i < n; i++) {
+			for (long trigram : trigrams(new String(keys.get(i), StandardCharsets.UTF_8))) {
+				postingsByTrigram.computeIfAbsent(trigram, t -> new ArrayList<>()).add(i);
+			}
+			heapBytes += keys.get(i).length;
+		}
+		long[] sortedTrigrams = postingsByTrigram.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+		long totalPostings = postingsByTrigram.values().stream().mapToLong(List::size).sum();
+
+		long entriesOff = HEADER_BYTES;
+		long trigramsOff = entriesOff + (long) n * ENTRY_BYTES;
+		long postingsOff = trigramsOff + (long) sortedTrigrams.length * TRIGRAM_BYTES;
+		long heapOff = postingsOff + totalPostings * 4;
+		long size = heapOff + heapBytes;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("El nomenclátor es demasiado grande para un único índice (" + size + " bytes)");
+		}
+
+		ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+		out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(sortedTrigrams.length)
+			.putLong(entriesOff).putLong(trigramsOff).putLong(postingsOff).putLong(heapOff);
+
+		int keyOffset = 0;
+		for (int i = 0; i < n; i++) {
+			byte[] key = keys.get(i);
+			double[] coords = unique.get(new String(key, StandardCharsets.UTF_8));
+			out.putInt(keyOffset).putInt(key.length).putDouble(coords[0]).putDouble(coords[1]);
+			keyOffset += key.length;
+		}
+		int postingIndex = 0;
+		for (long trigram : sortedTrigrams) {
+			int postings = postingsByTrigram.get(trigram).size();
+			out.putLong(trigram).putInt(postingIndex).putInt(postings);
+			postingIndex += postings;
+		}
+		for (long trigram : sortedTrigrams) {
+			for (int entry : postingsByTrigram.get(trigram)) {
+				out.putInt(entry);
+			}
+		}
+		for (byte[] key : keys) {
+			out.put(key);
+		}
+
+		// Se escribe aparte y se renombra para que nadie mapee un índice a medio escribir
+		Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		Files.write(tmp, out.array());
+		Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return n;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public long mappedBytes() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Busca una dirección ya normalizada: coincidencia exacta, después la entrada más corta que
+	 * empiece por ella y por último la más parecida por trigramas. Tanto el prefijo (por la parte
+	 * de la entrada que cubre la consulta) como los trigramas tienen que llegar a {@code minScore}.
+	 */
+	public Match lookup(String normalizada, double minScore) {
+		if (normalizada == null || normalizada.isEmpty() || count == 0) return null;
+		byte[] query = normalizada.getBytes(StandardCharsets.UTF_8);
+
+		int pos = lowerBound(query);
+		if (pos < count && compare(pos, query) == 0) {
+			return match(pos, 1.0);
+		}
+
+		// La consulta es prefijo de alguna entrada ("calle mayor 1 almagro" -> "... almagro ciudad real")
+		int best = -1;
+		for (int i = pos; i < count && i < pos + MAX_PREFIX_SCAN && startsWith(i, query); i++) {
+			// Solo en frontera de palabra: "calle mayor 1" no debe dar "calle mayor 10"
+			boolean wordBoundary = buffer.get(keyOffset(i) + query.length) == ' ';
+			if (wordBoundary && (best < 0 || keyLength(i) < keyLength(best))) best = i;
+		}
+		// "calle mayor" no basta para quedarse con "calle mayor 1 ..." de cualquier pueblo
+		if (best >= 0 && (double) query.length / keyLength(best) >= minScore) {
+			return match(best, (double) query.length / keyLength(best));
+		}
+
+		return fuzzy(normalizada, minScore);
+	}
+
+	private Match fuzzy(String normalizada, double minScore) {
+		Set<Long> queryTrigrams = trigrams(normalizada);
+
+		// Posición en la tabla y nº de postings de cada trigrama de la consulta, de más raro a más común
+		long[] found = new long[queryTrigrams.size()];
+		int foundCount = 0;
+		for (long trigram : queryTrigrams) {
+			int t = findTrigram(trigram);
+			if (t >= 0) {
+				int postings = buffer.getInt(trigramsOffset + t * TRIGRAM_BYTES + 12);
+				found[foundCount++] = ((long) postings << 32) | t;
+			}
+		}
+		if (foundCount == 0) return null;
+		Arrays.sort(found, 0, foundCount);
+
+		// Los trigramas muy comunes no discriminan; se usan los raros y como mínimo los dos más raros
+		int maxPostings = Math.max(MIN_POSTINGS_LIMIT, count / COMMON_TRIGRAM_DIVISOR);
+		Scratch scratch = SCRATCH.get().ensure(count);
+		try {
+			for (int k = 0; k < foundCount; k++) {
+				int postings = (int) (found[k] >>> 32);
+				if (k >= 2 && postings > maxPostings) break;
+				int recordPos = trigramsOffset + (int) found[k] * TRIGRAM_BYTES;
+				int start = buffer.getInt(recordPos + 8);
+				for (int p = 0; p < postings; p++) {
+					scratch.hit(buffer.getInt(postingsOffset + (start + p) * 4));
+				}
+			}
+			if (scratch.touchedCount == 0) return null;
+
+			// Se puntúan de verdad solo los candidatos con más trigramas en común
+			int[] candidates = scratch.top(MAX_CANDIDATES);
+			Match best = null;
+			for (int entry : candidates) {
+				Set<Long> entryTrigrams = trigrams(key(entry));
+				int common = 0;
+				for (long trigram : queryTrigrams) {
+					if (entryTrigrams.contains(trigram)) common++;
+				}
+				double score = 2.0 * common / (queryTrigrams.size() + entryTrigrams.size());
+				if (score >= minScore && (best == null || score > best.score())) {
+					best = match(entry, score);
+				}
+			}
+			return best;
+		} finally {
+			scratch.reset();
+		}
+	}
+
+	/**
+	 * Contadores por entrada reutilizados entre búsquedas del mismo hilo, para no crear un mapa
+	 * por consulta. Solo se limpian las posiciones tocadas.
+	 */
+	private static final class Scratch {
+		int[] counts = new int[0];
+		int[] touched = new int[256];
+		int touchedCount;
+
+		Scratch ensure(int size) {
+			if (counts.length < size) counts = new int[size];
+			return this;
+		}
+
+		void hit(int entry) {
+			if (counts[entry]++ == 0) {
+				if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touched.length * 2);
+				touched[touchedCount++] = entry;
+			}
+		}
+
+		int[] top(int limit) {
+			// Selección parcial: basta con los "limit" primeros, sin ordenar todo
+			int n = Math.min(limit, touchedCount);
+			for (int i = 0; i < n; i++) {
+				int best = i;
+				for (int j = i + 1; j < touchedCount; j++) {
+					if (counts[touched[j]] > counts[touched[best]]) best = j;
+				}
+				int tmp = touched[i];
+				touched[i] = touched[best];
+				touched[best] = tmp;
+			}
+			return Arrays.copyOf(touched, n);
+		}
+
+		void reset() {
+			for (int i = 0; i < touchedCount; i++) counts[touched[i]] = 0;
+			touchedCount = 0;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	static Set<Long> trigrams(String key) {
+		String padded = "  " + key + " ";
+		Set<Long> result = new HashSet<>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			result.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+		}
+		return result;
+	}
+
+	private int findTrigram(long trigram) {
+		int lo = 0, hi = trigramCount - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long value = buffer.getLong(trigramsOffset + mid * TRIGRAM_BYTES);
+			if (value < trigram) lo = mid + 1;
+			else if (value > trigram) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	private int lowerBound(byte[] query) {
+		int lo = 0, hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, query) < 0) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	private int keyOffset(int entry) {
+		return heapOffset + buffer.getInt(entriesOffset + entry * ENTRY_BYTES);
+	}
+
+	private int keyLength(int entry) {
+		return buffer.getInt(entriesOffset + entry * ENTRY_BYTES + 4);
+	}
+
+	// Comparación sin signo byte a byte: el mismo orden con el que se ordenaron las claves
+	private int compare(int entry, byte[] query) {
+		int offset = keyOffset(entry);
+		int length = keyLength(entry);
+		int n = Math.min(length, query.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = Integer.compare(buffer.get(offset + i) & 0xff, query[i] & 0xff);
+			if (cmp != 0) return cmp;
+		}
+		return Integer.compare(length, query.length);
+	}
+
+	private boolean startsWith(int entry, byte[] prefix) {
+		if (keyLength(entry) < prefix.length) return false;
+		int offset = keyOffset(entry);
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(offset + i) != prefix[i]) return false;
+		}
+		return true;
+	}
+
+	private String key(int entry) {
+		byte[] bytes = new byte[keyLength(entry)];
+		buffer.get(keyOffset(entry), bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private Match match(int entry, double score) {
+		int record = entriesOffset + entry * ENTRY_BYTES;
+		return new Match(key(entry), buffer.getDouble(record + 8), buffer.getDouble(record + 16), score);
+	}
+}
@@ -0,0 +1,14 @@
+package daniel.uclm.esi.gramola.geocoding;
+
+/**
+ * De dónde saca {@code GeocodingService} las coordenadas que no están en caché
+ * ({@code app.geocoding.mode}).
+ */
+public enum GeocodingMode {
+	/** Solo Photon (comportamiento original). */
+	PHOTON,
+	/** Nomenclátor local y, si no encuentra la dirección, Photon. */
+	HYBRID,
+	/** Solo el nomenclátor local; nunca sale a la red. */
+	OFFLINE
+}
@@ -0,0 +1,70 @@
+package daniel.uclm.esi.gramola.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias con cubetas fijas en milisegundos. Registrar es una sola operación
+ * atómica, así que se puede llamar desde cualquier hilo sin bloquear; los percentiles se
+ * estiman con el límite superior de la cubeta en la que caen.
+ */
+public class LatencyHistogram {
+
+	static final long[] BOUNDS_MS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+	// Una cubeta por límite más la de desbordamiento
+	private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+
+	public void record(long millis) {
+		int i = 0;
+		while (i < BOUNDS_MS.length && millis > BOUNDS_MS[i]) {
+			i++;
+		}
+		buckets.incrementAndGet(i);
+	}
+
+	public long count() {
+		long total = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			total += buckets.get(i);
+		}
+		return total;
+	}
+
+	/** Límite superior (ms) de la cubeta del percentil pedido; -1 si no hay datos. */
+	public long percentile(double p) {
+		long[] snapshot = new long[buckets.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return -1;
+		long rank = (long) Math.ceil(p * total);
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return i < BOUNDS_MS.length ? BOUNDS_MS[i] : Long.MAX_VALUE;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> histogram = new LinkedHashMap<>();
+		for (int i = 0; i < BOUNDS_MS.length; i++) {
+			histogram.put("le" + BOUNDS_MS[i] + "ms", buckets.get(i));
+		}
+		histogram.put("gt" + BOUNDS_MS[BOUNDS_MS.length - 1] + "ms", buckets.get(BOUNDS_MS.length));
+
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("count", count());
+		stats.put("p50Ms", percentile(0.50));
+		stats.put("p95Ms", percentile(0.95));
+		stats.put("p99Ms", percentile(0.99));
+		stats.put("buckets", histogram);
+		return stats;
+	}
+}
@@ -0,0 +1,150 @@
+package daniel.uclm.esi.gramola.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Cliente HTTP saliente compartido por las integraciones externas (Photon, ...).
+ * Usa un único {@link HttpClient} del JDK, que mantiene las conexiones vivas y las reutiliza
+ * y negocia HTTP/2 por ALPN cuando el servidor lo admite. Limita las peticiones simultáneas
+ * por host y lleva un histograma de latencias por host.
+ */
+@Component
+public class OutboundHttpClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutboundHttpClient.class);
+
+	@Value("${app.http.connect-timeout-ms:2000}")
+	private long connectTimeoutMs;
+
+	@Value("${app.http.request-timeout-ms:5000}")
+	private long requestTimeoutMs;
+
+	@Value("${app.http.max-per-host:16}")
+	private int maxPerHost;
+
+	@Value("${app.http.acquire-timeout-ms:1000}")
+	private long acquireTimeoutMs;
+
+	@Value("${app.http.user-agent:Gramola/1.0}")
+	private String userAgent;
+
+	private HttpClient client;
+	private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+	private final class HostState {
+		final Semaphore permits = new Semaphore(maxPerHost);
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong requests = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong rejected = new AtomicLong();
+		final Map<HttpClient.Version, AtomicLong> versions = new ConcurrentHashMap<>();
+	}
+
+	@PostConstruct
+	void init() {
+		this.client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.connectTimeout(Duration.ofMillis(connectTimeoutMs))
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+	}
+
+	/** GET con el tiempo máximo por defecto. */
+	public String getString(URI uri) throws IOException {
+		return getString(uri, Duration.ofMillis(requestTimeoutMs));
+	}
+
+	/**
+	 * Hace un GET y devuelve el cuerpo. Cualquier respuesta que no sea 2xx se lanza como
+	 * {@link OutboundHttpException}.
+	 */
+	public String getString(URI uri, Duration timeout) throws IOException {
+		HttpRequest request = HttpRequest.newBuilder(uri)
+			.timeout(timeout)
+			.header("User-Agent", userAgent)
+			.GET()
+			.build();
+		HttpResponse<String> response = send(request);
+		if (response.statusCode() / 100 != 2) {
+			throw new OutboundHttpException(uri.getHost(), response.statusCode());
+		}
+		return response.body();
+	}
+
+	public HttpResponse<String> send(HttpRequest request) throws IOException {
+		String host = request.uri().getHost();
+		HostState state = hosts.computeIfAbsent(host, h -> new HostState());
+		try {
+			if (!state.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+				state.rejected.incrementAndGet();
+				throw new IOException("Demasiadas peticiones simultáneas a " + host);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrumpido esperando una conexión a " + host, e);
+		}
+
+		long start = System.nanoTime();
+		state.requests.incrementAndGet();
+		try {
+			HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+			state.versions.computeIfAbsent(response.version(), v -> new AtomicLong()).incrementAndGet();
+			if (response.statusCode() >= 500) {
+				state.errors.incrementAndGet();
+			}
+			return response;
+		} catch (IOException e) {
+			state.errors.incrementAndGet();
+			throw e;
+		} catch (InterruptedException e) {
+			state.errors.incrementAndGet();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrumpido esperando la respuesta de " + host, e);
+		} finally {
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			state.latency.record(millis);
+			state.permits.release();
+			logger.debug("{} {} en {} ms", request.method(), request.uri(), millis);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("maxPerHost", maxPerHost);
+		stats.put("connectTimeoutMs", connectTimeoutMs);
+		stats.put("requestTimeoutMs", requestTimeoutMs);
+		Map<String, Object> perHost = new LinkedHashMap<>();
+		hosts.forEach((host, state) -> {
+			Map<String, Object> hostStats = new LinkedHashMap<>();
+			hostStats.put("requests", state.requests.get());
+			hostStats.put("errors", state.errors.get());
+			hostStats.put("rejected", state.rejected.get());
+			hostStats.put("inFlight", maxPerHost - state.permits.availablePermits());
+			Map<String, Long> versions = new LinkedHashMap<>();
+			state.versions.forEach((v, n) -> versions.put(v.name(), n.get()));
+			hostStats.put("versions", versions);
+			hostStats.put("latency", state.latency.stats());
+			perHost.put(host, hostStats);
+		});
+		stats.put("hosts", perHost);
+		return stats;
+	}
+}
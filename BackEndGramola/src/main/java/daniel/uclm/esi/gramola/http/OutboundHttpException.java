@@ -0,0 +1,20 @@
+package daniel.uclm.esi.gramola.http;
+
+import java.io.IOException;
+
+/**
+ * Respuesta no 2xx de un servicio externo.
+ */
+public class OutboundHttpException extends IOException {
+
+	private final int statusCode;
+
+	public OutboundHttpException(String host, int statusCode) {
+		super(host + " respondió con HTTP " + statusCode);
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
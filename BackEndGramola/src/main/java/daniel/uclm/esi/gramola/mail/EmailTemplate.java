@@ -0,0 +1,97 @@
+package daniel.uclm.esi.gramola.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plantilla de correo ya analizada: una lista de segmentos de texto fijo y variables
+ * {@code {{nombre}}}. Los valores de las variables se escapan como HTML al renderizar.
+ */
+public final class EmailTemplate {
+
+	private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+	// Cada hilo reutiliza su StringBuilder; solo se descarta si ha crecido demasiado
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+	private final String name;
+	// Índices pares: texto fijo; impares: nombre de variable
+	private final String[] segments;
+	private final int literalLength;
+
+	private EmailTemplate(String name, String[] segments) {
+		this.name = name;
+		this.segments = segments;
+		int length = 0;
+		for (int i = 0; i < segments.length; i += 2) {
+			length += segments[i].length();
+		}
+		this.literalLength = length;
+	}
+
+	public static EmailTemplate compile(String name, String source) {
+		List<String> segments = new ArrayList<>();
+		int pos = 0;
+		while (true) {
+			int open = source.indexOf("{{", pos);
+			if (open < 0) {
+				segments.add(source.substring(pos));
+				break;
+			}
+			int close = source.indexOf("}}", open + 2);
+			if (close < 0) {
+				throw new IllegalArgumentException("Plantilla '" + name + "': '{{' sin cerrar en la posición " + open);
+			}
+			String variable = source.substring(open + 2, close).trim();
+			if (variable.isEmpty()) {
+				throw new IllegalArgumentException("Plantilla '" + name + "': variable vacía en la posición " + open);
+			}
+			segments.add(source.substring(pos, open));
+			segments.add(variable);
+			pos = close + 2;
+		}
+		return new EmailTemplate(name, segments.toArray(new String[0]));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String render(Map<String, ?> values) {
+		StringBuilder sb = BUFFER.get();
+		if (sb.capacity() > MAX_POOLED_CAPACITY) {
+			sb = new StringBuilder(4096);
+			BUFFER.set(sb);
+		}
+		sb.setLength(0);
+		sb.ensureCapacity(literalLength + 256);
+
+		for (int i = 0; i < segments.length; i++) {
+			if ((i & 1) == 0) {
+				sb.append(segments[i]);
+			} else {
+				Object value = values.get(segments[i]);
+				if (value == null) {
+					throw new IllegalArgumentException("Plantilla '" + name + "': falta la variable '" + segments[i] + "'");
+				}
+				appendEscaped(sb, value.toString());
+			}
+		}
+		return sb.toString();
+	}
+
+	static void appendEscaped(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '&' -> sb.append("&amp;");
+				case '<' -> sb.append("&lt;");
+				case '>' -> sb.append("&gt;");
+				case '"' -> sb.append("&quot;");
+				case '\'' -> sb.append("&#39;");
+				default -> sb.append(c);
+			}
+		}
+	}
+}
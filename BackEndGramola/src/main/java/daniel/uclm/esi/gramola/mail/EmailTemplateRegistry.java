@@ -0,0 +1,55 @@
+package daniel.uclm.esi.gramola.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Carga y analiza una sola vez, al arrancar, las plantillas de {@code classpath:email-templates/*.html}.
+ * El nombre de cada plantilla es el del fichero sin extensión.
+ */
+@Component
+public class EmailTemplateRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(EmailTemplateRegistry.class);
+
+	static final String LOCATION = "classpath:email-templates/*.html";
+
+	private final Map<String, EmailTemplate> templates = new HashMap<>();
+
+	@PostConstruct
+	void load() throws IOException {
+		Resource[] resources = new PathMatchingResourcePatternResolver().getResources(LOCATION);
+		for (Resource resource : resources) {
+			String filename = resource.getFilename();
+			if (filename == null) continue;
+			String name = filename.substring(0, filename.length() - ".html".length());
+			try (InputStream in = resource.getInputStream()) {
+				templates.put(name, EmailTemplate.compile(name, new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+			}
+		}
+		logger.info("Plantillas de correo cargadas: {}", templates.keySet());
+	}
+
+	public EmailTemplate get(String name) {
+		EmailTemplate template = templates.get(name);
+		if (template == null) {
+			throw new IllegalArgumentException("No existe la plantilla de correo '" + name + "'");
+		}
+		return template;
+	}
+
+	public String render(String name, Map<String, ?> values) {
+		return get(name).render(values);
+	}
+}
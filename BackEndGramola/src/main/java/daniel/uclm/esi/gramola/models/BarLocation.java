@@ -0,0 +1,11 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Proyección con la posición de un bar para cargar el índice espacial.
+ */
+public interface BarLocation {
+	String getEmail();
+	String getNombreBar();
+	Double getLatitud();
+	Double getLongitud();
+}
@@ -0,0 +1,121 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Correo pendiente de envío. Se escribe en la misma transacción que el cambio que lo
+ * provoca y lo envía después {@link daniel.uclm.esi.gramola.services.EmailOutboxService}.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_email_outbox_status_next", columnList = "status, nextAttemptAt"))
+public class EmailOutbox {
+
+	public enum Status { PENDING, SENT, DEAD }
+
+	@Id @Column(length = 36)
+	private String id;
+
+	private String recipient;
+	private String subject;
+
+	@Column(columnDefinition = "LONGTEXT")
+	private String body;
+
+	private boolean html;
+
+	@Enumerated(EnumType.STRING) @Column(length = 16)
+	private Status status;
+
+	private int attempts;
+	private LocalDateTime createdAt;
+	private LocalDateTime nextAttemptAt;
+	private LocalDateTime sentAt;
+
+	@Column(length = 1000)
+	private String lastError;
+
+	public EmailOutbox() {
+		this.id = java.util.UUID.randomUUID().toString();
+		this.status = Status.PENDING;
+		this.createdAt = LocalDateTime.now();
+		this.nextAttemptAt = this.createdAt;
+	}
+
+	public EmailOutbox(String recipient, String subject, String body, boolean html) {
+		this();
+		this.recipient = recipient;
+		this.subject = subject;
+		this.body = body;
+		this.html = html;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getRecipient() {
+		return recipient;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public boolean isHtml() {
+		return html;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public LocalDateTime getNextAttemptAt() {
+		return nextAttemptAt;
+	}
+
+	public LocalDateTime getSentAt() {
+		return sentAt;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void markSent() {
+		this.attempts++;
+		this.status = Status.SENT;
+		this.sentAt = LocalDateTime.now();
+		this.lastError = null;
+	}
+
+	/** Registra un fallo y programa el siguiente intento, o lo marca como DEAD si no quedan. */
+	public void markFailed(String error, LocalDateTime nextAttemptAt, int maxAttempts) {
+		this.attempts++;
+		this.lastError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+		if (this.attempts >= maxAttempts) {
+			this.status = Status.DEAD;
+		} else {
+			this.nextAttemptAt = nextAttemptAt;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * Resultado de geocodificación guardado en BD. La clave es el SHA-256 de la dirección
+ * normalizada, para que direcciones largas no limiten el tamaño de la clave primaria.
+ */
+@Entity
+public class GeocodeCacheEntry {
+	@Id @Column(length = 64)
+	private String addressKey;
+
+	@Column(length = 1000)
+	private String address;
+
+	private double latitud;
+	private double longitud;
+	private LocalDateTime resolvedAt;
+
+	public GeocodeCacheEntry() {
+	}
+
+	public GeocodeCacheEntry(String addressKey, String address, double latitud, double longitud) {
+		this.addressKey = addressKey;
+		this.address = address;
+		this.latitud = latitud;
+		this.longitud = longitud;
+		this.resolvedAt = LocalDateTime.now();
+	}
+
+	public String getAddressKey() {
+		return addressKey;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public double getLatitud() {
+		return latitud;
+	}
+
+	public double getLongitud() {
+		return longitud;
+	}
+
+	public LocalDateTime getResolvedAt() {
+		return resolvedAt;
+	}
+}
@@ -0,0 +1,12 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Estado de las coordenadas de un bar. Un bar sin ubicación no tiene estado (null).
+ */
+public enum GeocodingStatus {
+	/** La dirección ha cambiado y las coordenadas se están calculando en segundo plano. */
+	PENDING,
+	RESOLVED,
+	/** No se encontró la dirección o se agotaron los reintentos. */
+	FAILED
+}
@@ -0,0 +1,77 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * Progreso guardado de un proceso por lotes, para poder reanudarlo tras una caída.
+ * {@code lastKey} es la última clave procesada (paginación por clave) y {@code marker}
+ * un dato libre del proceso con el que decide si debe empezar de nuevo.
+ */
+@Entity
+public class JobCheckpoint {
+	@Id
+	private String name;
+	private String lastKey;
+	private String marker;
+	private long processed;
+	private LocalDateTime updatedAt;
+	private LocalDateTime completedAt;
+
+	public JobCheckpoint() {
+	}
+
+	public JobCheckpoint(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getLastKey() {
+		return lastKey;
+	}
+
+	public String getMarker() {
+		return marker;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public LocalDateTime getCompletedAt() {
+		return completedAt;
+	}
+
+	public boolean isCompleted() {
+		return completedAt != null;
+	}
+
+	/** Vuelve a empezar desde el principio con un nuevo marcador. */
+	public void restart(String marker) {
+		this.marker = marker;
+		this.lastKey = null;
+		this.processed = 0;
+		this.completedAt = null;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public void advance(String lastKey, long processedInBatch) {
+		this.lastKey = lastKey;
+		this.processed += processedInBatch;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public void complete() {
+		this.completedAt = LocalDateTime.now();
+		this.updatedAt = this.completedAt;
+	}
+}
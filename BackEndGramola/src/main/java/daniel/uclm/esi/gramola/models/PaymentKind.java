@@ -0,0 +1,11 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Qué se paga en una {@link StripeTransaction}.
+ */
+public enum PaymentKind {
+	/** Cuota mensual del bar. */
+	SUBSCRIPTION,
+	/** Canción pedida por un cliente desde la gramola. */
+	SONG
+}
@@ -0,0 +1,11 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Proyección con lo mínimo que necesita el proceso de geocodificación en segundo plano.
+ */
+public interface PendingGeocoding {
+	String getEmail();
+	String getUbicacionBar();
+	String getNombreBar();
+	int getGeocodingAttempts();
+}
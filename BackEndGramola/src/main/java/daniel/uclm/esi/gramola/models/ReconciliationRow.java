@@ -0,0 +1,17 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Columnas de una transacción que se comparan con su PaymentIntent al reconciliar con Stripe.
+ */
+public record ReconciliationRow(
+		String id,
+		String paymentIntentId,
+		PaymentKind kind,
+		String status,
+		Long amount,
+		String email,
+		String trackUri,
+		LocalDateTime confirmedAt) {
+}
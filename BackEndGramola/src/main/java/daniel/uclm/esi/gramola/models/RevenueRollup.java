@@ -0,0 +1,64 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Ingresos de un bar en un intervalo (hora o día), acumulados según se confirman los pagos.
+ * La clave es el SHA-256 de (email, granularidad, inicio) para poder sumar con un único
+ * INSERT ... ON DUPLICATE KEY UPDATE.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_revenue_rollup_bar", columnList = "email, granularity, bucketStart"))
+public class RevenueRollup {
+	@Id @Column(length = 64)
+	private String id;
+
+	private String email;
+
+	@Enumerated(EnumType.STRING) @Column(length = 8)
+	private RollupGranularity granularity;
+
+	private LocalDateTime bucketStart;
+
+	// Importes en céntimos
+	private long songCount;
+	private long songAmount;
+	private long subscriptionCount;
+	private long subscriptionAmount;
+
+	public String getEmail() {
+		return email;
+	}
+
+	public RollupGranularity getGranularity() {
+		return granularity;
+	}
+
+	public LocalDateTime getBucketStart() {
+		return bucketStart;
+	}
+
+	public long getSongCount() {
+		return songCount;
+	}
+
+	public long getSongAmount() {
+		return songAmount;
+	}
+
+	public long getSubscriptionCount() {
+		return subscriptionCount;
+	}
+
+	public long getSubscriptionAmount() {
+		return subscriptionAmount;
+	}
+}
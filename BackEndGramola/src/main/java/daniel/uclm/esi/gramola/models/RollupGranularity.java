@@ -0,0 +1,23 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Tamaño de los intervalos en los que se acumulan los ingresos de un bar.
+ */
+public enum RollupGranularity {
+	HOUR(ChronoUnit.HOURS),
+	DAY(ChronoUnit.DAYS);
+
+	private final ChronoUnit unit;
+
+	RollupGranularity(ChronoUnit unit) {
+		this.unit = unit;
+	}
+
+	/** Inicio del intervalo que contiene {@code instant}. */
+	public LocalDateTime bucketStart(LocalDateTime instant) {
+		return instant.truncatedTo(unit);
+	}
+}
@@ -0,0 +1,7 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Tokens de Spotify de un bar ya descifrados.
+ */
+public record SpotifyCredentials(String accessToken, String privateToken) {
+}
@@ -0,0 +1,9 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Proyección con los tokens de Spotify tal y como se guardan (cifrados).
+ */
+public interface SpotifyTokens {
+	String getSpotifyAccessToken();
+	String getSpotifyPrivateToken();
+}
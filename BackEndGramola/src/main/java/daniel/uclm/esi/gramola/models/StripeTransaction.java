@@ -4,10 +4,23 @@ import org.json.JSONObject;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
+@Table(indexes = {
+	@Index(name = "idx_stripe_tx_payment_intent", columnList = "paymentIntentId", unique = true),
+	@Index(name = "idx_stripe_tx_email_created", columnList = "email, createdAt, id"),
+	@Index(name = "idx_stripe_tx_email_kind_created", columnList = "email, kind, createdAt, id"),
+	@Index(name = "idx_stripe_tx_status_created", columnList = "status, createdAt")
+})
 public class StripeTransaction {
+	public static final String STATUS_SUCCEEDED = "succeeded";
+
 	@Id @Column(length=36)
 	private String id;
 
@@ -17,8 +30,30 @@ public class StripeTransaction {
 	private String email;
 	private String trackUri;
 
+	@Enumerated(EnumType.STRING) @Column(length = 16)
+	private PaymentKind kind;
+
+	// Copias del PaymentIntent extraídas al escribir, para consultar sin leer el JSON
+	@Column(length = 64)
+	private String paymentIntentId;
+	@Column(length = 32)
+	private String status;
+	// Importe en céntimos
+	private Long amount;
+	@Column(length = 3)
+	private String currency;
+	private java.time.LocalDateTime createdAt;
+
+	// Momento en que se aplicó la confirmación (suscripción o canción); null si aún no
+	private java.time.LocalDateTime confirmedAt;
+
+	// Dos confirmaciones simultáneas de la misma transacción: solo la primera escribe
+	@Version
+	private long version;
+
 	public StripeTransaction() {
 		this.id = java.util.UUID.randomUUID().toString();
+		this.createdAt = java.time.LocalDateTime.now();
 	}
 
 	public String getId() {
@@ -33,8 +68,13 @@ public class StripeTransaction {
 		return data;
 	}
 
+	/** Guarda el PaymentIntent completo y copia su id, estado, importe y moneda. */
 	public void setData(JSONObject data) {
 		this.data = data.toString();
+		this.paymentIntentId = data.optString("id", null);
+		this.status = data.optString("status", null);
+		this.amount = data.has("amount") ? data.getLong("amount") : null;
+		this.currency = data.optString("currency", null);
 	}
 
 	public String getEmail() {
@@ -52,4 +92,57 @@ public class StripeTransaction {
 	public void setTrackUri(String trackUri) {
 		this.trackUri = trackUri;
 	}
+
+	public PaymentKind getKind() {
+		return kind;
+	}
+
+	public void setKind(PaymentKind kind) {
+		this.kind = kind;
+	}
+
+	public String getPaymentIntentId() {
+		return paymentIntentId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public Long getAmount() {
+		return amount;
+	}
+
+	public String getCurrency() {
+		return currency;
+	}
+
+	public java.time.LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(java.time.LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public java.time.LocalDateTime getConfirmedAt() {
+		return confirmedAt;
+	}
+
+	public boolean isConfirmed() {
+		return confirmedAt != null;
+	}
+
+	public void markConfirmed() {
+		this.confirmedAt = java.time.LocalDateTime.now();
+	}
+
+	/** Solo para migrar transacciones confirmadas antes de que existiera la columna. */
+	public void setConfirmedAt(java.time.LocalDateTime confirmedAt) {
+		this.confirmedAt = confirmedAt;
+	}
+
+	public boolean isSucceeded() {
+		return STATUS_SUCCEEDED.equals(status);
+	}
 }
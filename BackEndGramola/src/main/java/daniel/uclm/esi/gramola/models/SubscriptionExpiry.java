@@ -0,0 +1,11 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección con la caducidad de la suscripción de un bar para cargar el índice de suscripciones.
+ */
+public interface SubscriptionExpiry {
+	String getEmail();
+	LocalDateTime getSubscriptionExpiry();
+}
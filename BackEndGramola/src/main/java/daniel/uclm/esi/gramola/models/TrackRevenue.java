@@ -0,0 +1,7 @@
+package daniel.uclm.esi.gramola.models;
+
+/**
+ * Canción con las veces que se ha pagado y lo recaudado (en céntimos) en un periodo.
+ */
+public record TrackRevenue(String trackUri, long plays, long amount) {
+}
@@ -0,0 +1,48 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Veces que se ha pagado una canción en un bar en un día. Igual que {@link RevenueRollup},
+ * la clave es el SHA-256 de (email, día, canción).
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_track_rollup_bar_day", columnList = "email, bucketDay"))
+public class TrackRollup {
+	@Id @Column(length = 64)
+	private String id;
+
+	private String email;
+	private LocalDate bucketDay;
+	private String trackUri;
+
+	private long plays;
+	// Céntimos
+	private long amount;
+
+	public String getEmail() {
+		return email;
+	}
+
+	public LocalDate getBucketDay() {
+		return bucketDay;
+	}
+
+	public String getTrackUri() {
+		return trackUri;
+	}
+
+	public long getPlays() {
+		return plays;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+}
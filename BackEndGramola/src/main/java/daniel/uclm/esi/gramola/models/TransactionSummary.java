@@ -0,0 +1,18 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Fila del historial de pagos de un bar: solo las columnas extraídas, sin el JSON del PaymentIntent.
+ */
+public record TransactionSummary(
+		String id,
+		String paymentIntentId,
+		PaymentKind kind,
+		String status,
+		Long amount,
+		String currency,
+		String trackUri,
+		LocalDateTime createdAt,
+		LocalDateTime confirmedAt) {
+}
@@ -1,22 +1,25 @@
 package daniel.uclm.esi.gramola.models;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-
-import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
-
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-
+import daniel.uclm.esi.gramola.crypto.TokenCipher;
+import jakarta.persistence.Basic;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
 
 
 @Entity
+@Table(indexes = {
+	@Index(name = "idx_user_geocoding_pending", columnList = "geocodingStatus, geocodingNextAttemptAt"),
+	// Recordatorios de renovación: rango por caducidad, paginado por (caducidad, email)
+	@Index(name = "idx_user_subscription_expiry", columnList = "subscriptionExpiry, email")
+})
 public class User {
 	@Id
     private String email;
@@ -25,6 +28,10 @@ public class User {
 	@JoinColumn(name = "Creation_Token_ID", referencedColumnName = "id")
     private Token creationToken = new Token();
 
+    // Copia desnormalizada de creationToken.usedTime para saber si está activo sin leer Token
+    @jakarta.persistence.Column(name = "activated_at")
+    private Long activatedAt;
+
     private String spotifyAccessToken;
     private String spotifyPrivateToken;
     @jakarta.persistence.Column(name = "subscription_expiry")
@@ -32,24 +39,32 @@ public class User {
     
     private String ubicacionBar;
     private String nombreBar;
+    // Precio de una canción en euros (PaymentService lo pasa a céntimos al cobrar)
     private Double costeCancion;
     private Double latitud;
     private Double longitud;
+
+    // Geocerca propia del bar: radio en metros (null = el de por defecto) o polígono en JSON [[lat, lon], ...]
+    private Double radioGeocerca;
+    // Hasta 100 vértices con todos sus decimales no caben en 4000 caracteres
+    @jakarta.persistence.Column(columnDefinition = "TEXT")
+    private String geocercaPoligono;
+
+    // Cola de geocodificación: la rellena setBarData y la vacía BarGeocodingWorker
+    @Enumerated(EnumType.STRING) @jakarta.persistence.Column(length = 16)
+    private GeocodingStatus geocodingStatus;
+    private int geocodingAttempts;
+    private java.time.LocalDateTime geocodingNextAttemptAt;
+
+    // Bloqueo optimista: guardar una copia antigua del usuario falla en vez de pisar otra escritura
+    @jakarta.persistence.Version
+    private long version;
     
+    // Perezoso (requiere el bytecode enhancement de Hibernate): solo se lee con getFirma()
+    @Basic(fetch = FetchType.LAZY)
     @jakarta.persistence.Column(columnDefinition = "LONGTEXT")
     private String firma;
 
-    private static final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
-
-	// Obtenemos la clave AES desde el .env
-    private static String getAesSecret() {
-        String s = System.getProperty("AES_256_SECRET");
-        if (s == null || s.length() != 32) {
-            throw new IllegalStateException("AES_256_SECRET no definida o no tiene 32 caracteres");
-        }
-        return s;
-    }
-
     public String getEmail() {
         return this.email;
     }
@@ -67,11 +82,16 @@ public class User {
     }
 
     public boolean isActive() {
-        return this.creationToken.isUsed();
+        return this.activatedAt != null;
     }
 
     public void setActivate() {
         this.creationToken.setUsedTime();
+        this.activatedAt = System.currentTimeMillis();
+    }
+
+    public Long getActivatedAt() {
+        return this.activatedAt;
     }
 
     public Token getCreationToken() {
@@ -94,11 +114,6 @@ public class User {
         return this.subscriptionExpiry != null && this.subscriptionExpiry.isAfter(java.time.LocalDateTime.now());
     }
 
-    // Método para verificar si una contraseña coincide con la almacenada
-    public boolean checkPwd(String rawPwd) {
-        return passwordEncoder.matches(rawPwd, this.pwd);
-    }
-
     public String getSpotifyAccessToken() throws Exception {
         if (this.spotifyAccessToken == null || this.spotifyAccessToken.isBlank()) return "";
         String AccessTokenDecrypted = decrypt(this.spotifyAccessToken);
@@ -161,6 +176,18 @@ public class User {
         this.longitud = longitud;
     }
 
+    public GeocodingStatus getGeocodingStatus() {
+        return this.geocodingStatus;
+    }
+
+    public void setGeocodingStatus(GeocodingStatus geocodingStatus) {
+        this.geocodingStatus = geocodingStatus;
+    }
+
+    public int getGeocodingAttempts() {
+        return this.geocodingAttempts;
+    }
+
     public String getFirma() {
         return this.firma;
     }
@@ -171,22 +198,11 @@ public class User {
 
     // Método para encriptar un token
     public static String encrypt(String token) throws Exception {
-        if (token == null || token.isBlank()) return null;
-        SecretKeySpec secretKey = new SecretKeySpec(getAesSecret().getBytes(StandardCharsets.UTF_8), "AES");
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding"); // puedes cambiar a AES/GCM si prefieres más seguridad
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] encrypted = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(encrypted);
+        return TokenCipher.encrypt(token);
     }
 
     // Método para desencriptar un token
     public static String decrypt(String encryptedToken) throws Exception {
-        if (encryptedToken == null || encryptedToken.isBlank()) return "";
-        SecretKeySpec secretKey = new SecretKeySpec(getAesSecret().getBytes(StandardCharsets.UTF_8), "AES");
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
-        byte[] decoded = Base64.getDecoder().decode(encryptedToken);
-        byte[] decrypted = cipher.doFinal(decoded);
-        return new String(decrypted, StandardCharsets.UTF_8);
+        return TokenCipher.decrypt(encryptedToken);
     }
 }
@@ -0,0 +1,35 @@
+package daniel.uclm.esi.gramola.models;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección de solo lectura con los datos escalares de un bar.
+ * No incluye la firma, la contraseña ni los tokens cifrados.
+ */
+public record UserProfile(
+		String email,
+		boolean active,
+		LocalDateTime subscriptionExpiry,
+		String ubicacionBar,
+		String nombreBar,
+		Double costeCancion,
+		Double latitud,
+		Double longitud,
+		GeocodingStatus geocodingStatus,
+		Double radioGeocerca,
+		String geocercaPoligono) {
+
+	public boolean hasActiveSubscription() {
+		return this.subscriptionExpiry != null && this.subscriptionExpiry.isAfter(LocalDateTime.now());
+	}
+
+	public boolean hasCoordinates() {
+		return this.latitud != null && this.longitud != null;
+	}
+
+	/** Estado para los clientes; las filas anteriores a la geocodificación en segundo plano no lo tienen. */
+	public String geocodingStatusName() {
+		if (this.geocodingStatus != null) return this.geocodingStatus.name();
+		return hasCoordinates() ? GeocodingStatus.RESOLVED.name() : "NONE";
+	}
+}
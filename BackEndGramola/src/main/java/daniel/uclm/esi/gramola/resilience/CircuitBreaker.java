@@ -0,0 +1,87 @@
+package daniel.uclm.esi.gramola.resilience;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cortocircuito para servicios externos. Tras {@code failureThreshold} fallos seguidos se abre
+ * y rechaza las llamadas durante {@code openDuration}; después deja pasar una sola de prueba
+ * (semiabierto) y se cierra o se vuelve a abrir según el resultado.
+ */
+public class CircuitBreaker {
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openNanos;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean probeInFlight;
+
+	private long rejected;
+	private long opened;
+
+	public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+		if (failureThreshold <= 0) {
+			throw new IllegalArgumentException("failureThreshold debe ser mayor que 0");
+		}
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/** Indica si se puede hacer la llamada. Si devuelve true hay que informar del resultado. */
+	public synchronized boolean allowRequest() {
+		if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+			state = State.HALF_OPEN;
+			probeInFlight = false;
+		}
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.HALF_OPEN && !probeInFlight) {
+			probeInFlight = true;
+			return true;
+		}
+		rejected++;
+		return false;
+	}
+
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		probeInFlight = false;
+		state = State.CLOSED;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		probeInFlight = false;
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			if (state != State.OPEN) {
+				opened++;
+			}
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("name", name);
+		stats.put("state", state.name());
+		stats.put("consecutiveFailures", consecutiveFailures);
+		stats.put("failureThreshold", failureThreshold);
+		stats.put("openSeconds", Duration.ofNanos(openNanos).toSeconds());
+		stats.put("timesOpened", opened);
+		stats.put("rejected", rejected);
+		return stats;
+	}
+}
@@ -0,0 +1,202 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.geo.BarSpatialIndex;
+import daniel.uclm.esi.gramola.models.GeocodingStatus;
+import daniel.uclm.esi.gramola.models.PendingGeocoding;
+import daniel.uclm.esi.gramola.resilience.CircuitBreaker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Calcula en segundo plano las coordenadas de los bares que {@code setBarData} deja en estado
+ * PENDING. Los reintentos usan espera exponencial y, si Photon falla repetidamente, un
+ * cortocircuito detiene las llamadas un tiempo para no acumular peticiones colgadas.
+ */
+@Service
+public class BarGeocodingWorker {
+
+	private static final Logger logger = LoggerFactory.getLogger(BarGeocodingWorker.class);
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private GeocodingService geocodingService;
+
+	@Autowired
+	private BarSpatialIndex spatialIndex;
+
+	@Value("${app.geocoding.worker.enabled:true}")
+	private boolean enabled;
+
+	@Value("${app.geocoding.worker.batch-size:20}")
+	private int batchSize;
+
+	@Value("${app.geocoding.worker.max-attempts:6}")
+	private int maxAttempts;
+
+	@Value("${app.geocoding.worker.backoff-base-seconds:30}")
+	private long backoffBaseSeconds;
+
+	@Value("${app.geocoding.worker.backoff-max-seconds:3600}")
+	private long backoffMaxSeconds;
+
+	@Value("${app.geocoding.breaker.failure-threshold:5}")
+	private int failureThreshold;
+
+	@Value("${app.geocoding.breaker.open-seconds:60}")
+	private long openSeconds;
+
+	private CircuitBreaker breaker;
+	private ExecutorService executor;
+	private final AtomicBoolean wakeUpQueued = new AtomicBoolean();
+
+	private final AtomicLong resolved = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	@PostConstruct
+	void init() {
+		this.breaker = new CircuitBreaker("photon", failureThreshold, Duration.ofSeconds(openSeconds));
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "bar-geocoding");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Scheduled(fixedDelayString = "${app.geocoding.worker.poll-ms:5000}")
+	public void scheduledRun() {
+		if (enabled) {
+			processPending();
+		}
+	}
+
+	/** Pide una pasada inmediata sin esperar al siguiente ciclo; no bloquea al llamante. */
+	public void wakeUp() {
+		if (enabled && wakeUpQueued.compareAndSet(false, true)) {
+			executor.execute(() -> {
+				wakeUpQueued.set(false);
+				processPending();
+			});
+		}
+	}
+
+	/**
+	 * Geocodifica los bares pendientes cuyo siguiente intento ya ha vencido.
+	 * @return número de bares resueltos
+	 */
+	synchronized int processPending() {
+		int total = 0;
+		List<PendingGeocoding> batch;
+		do {
+			batch = userDao.findPendingGeocoding(LocalDateTime.now(), PageRequest.of(0, batchSize));
+			for (PendingGeocoding pending : batch) {
+				if (!breaker.allowRequest()) {
+					logger.debug("Cortocircuito de geocodificación abierto, se deja para más tarde");
+					return total;
+				}
+				if (process(pending)) {
+					total++;
+				}
+			}
+		} while (batch.size() == batchSize);
+		return total;
+	}
+
+	private boolean process(PendingGeocoding pending) {
+		String email = pending.getEmail();
+		String ubicacion = pending.getUbicacionBar();
+		try {
+			double[] coordenadas = geocodingService.obtenerCoordenadas(ubicacion);
+			breaker.recordSuccess();
+			if (userDao.resolveGeocoding(email, ubicacion, coordenadas[0], coordenadas[1]) == 1) {
+				userCache.invalidate(email);
+				spatialIndex.put(email, pending.getNombreBar(), coordenadas[0], coordenadas[1]);
+				resolved.incrementAndGet();
+				logger.info("Coordenadas del bar de {} resueltas: lat={}, lon={}", email, coordenadas[0], coordenadas[1]);
+				return true;
+			}
+			// La dirección cambió mientras tanto; la nueva ya está en cola
+			return false;
+		} catch (ResponseStatusException e) {
+			int attempts = pending.getGeocodingAttempts() + 1;
+			if (e.getStatusCode().is4xxClientError()) {
+				// Photon ha respondido: la dirección no existe y reintentar no sirve de nada
+				breaker.recordSuccess();
+				markFailed(email, ubicacion, attempts, e.getReason());
+			} else {
+				breaker.recordFailure();
+				if (attempts >= maxAttempts) {
+					markFailed(email, ubicacion, attempts, e.getReason());
+				} else {
+					LocalDateTime next = LocalDateTime.now().plusSeconds(backoffSeconds(attempts - 1));
+					userDao.updateGeocodingAttempt(email, ubicacion, GeocodingStatus.PENDING, attempts, next);
+					retried.incrementAndGet();
+					logger.warn("Fallo al geocodificar '{}' (intento {}), se reintentará a las {}: {}",
+							ubicacion, attempts, next, e.getReason());
+				}
+			}
+			return false;
+		}
+	}
+
+	private void markFailed(String email, String ubicacion, int attempts, String reason) {
+		if (userDao.updateGeocodingAttempt(email, ubicacion, GeocodingStatus.FAILED, attempts, null) == 1) {
+			userCache.invalidate(email);
+			failed.incrementAndGet();
+			logger.error("No se pudieron obtener coordenadas para '{}' tras {} intentos: {}", ubicacion, attempts, reason);
+		}
+	}
+
+	// Intentos previos: 0 -> base, 1 -> 2*base, 2 -> 4*base... hasta backoff-max-seconds
+	private long backoffSeconds(int attempts) {
+		long factor = 1L << Math.min(Math.max(attempts, 0), 20);
+		return Math.min(backoffBaseSeconds * factor, backoffMaxSeconds);
+	}
+
+	CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("pending", userDao.countByGeocodingStatus(GeocodingStatus.PENDING));
+		stats.put("failed", userDao.countByGeocodingStatus(GeocodingStatus.FAILED));
+		stats.put("resolved", resolved.get());
+		stats.put("retries", retried.get());
+		stats.put("markedFailed", failed.get());
+		stats.put("breaker", breaker.stats());
+		return stats;
+	}
+}
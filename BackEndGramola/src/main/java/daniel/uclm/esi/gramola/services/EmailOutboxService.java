@@ -0,0 +1,131 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import daniel.uclm.esi.gramola.dao.EmailOutboxDao;
+import daniel.uclm.esi.gramola.models.EmailOutbox;
+
+/**
+ * Bandeja de salida de correos. {@link #enqueueHtml} se une a la transacción del llamante,
+ * así el correo solo existe si el cambio que lo provoca se confirma. Un proceso periódico
+ * envía los pendientes por lotes sobre una única conexión SMTP, con reintentos y espera
+ * exponencial; tras {@code max-attempts} fallos el correo queda como DEAD.
+ */
+@Service
+public class EmailOutboxService {
+
+	private static final Logger logger = LoggerFactory.getLogger(EmailOutboxService.class);
+
+	@Autowired
+	private EmailOutboxDao outboxDao;
+
+	@Autowired
+	private EmailService emailService;
+
+	@Value("${app.mail.outbox.enabled:true}")
+	private boolean enabled;
+
+	@Value("${app.mail.outbox.batch-size:50}")
+	private int batchSize;
+
+	@Value("${app.mail.outbox.max-attempts:8}")
+	private int maxAttempts;
+
+	@Value("${app.mail.outbox.backoff-base-seconds:30}")
+	private long backoffBaseSeconds;
+
+	@Value("${app.mail.outbox.backoff-max-seconds:3600}")
+	private long backoffMaxSeconds;
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dead = new AtomicLong();
+
+	@Transactional
+	public EmailOutbox enqueueHtml(String to, String subject, String htmlContent) {
+		return outboxDao.save(new EmailOutbox(to, subject, htmlContent, true));
+	}
+
+	@Transactional
+	public EmailOutbox enqueueText(String to, String subject, String text) {
+		return outboxDao.save(new EmailOutbox(to, subject, text, false));
+	}
+
+	@Scheduled(fixedDelayString = "${app.mail.outbox.poll-ms:2000}")
+	public void scheduledDispatch() {
+		if (enabled) {
+			dispatchPending();
+		}
+	}
+
+	/**
+	 * Envía los correos pendientes cuyo siguiente intento ya ha vencido.
+	 * @return número de correos enviados
+	 */
+	public synchronized int dispatchPending() {
+		int total = 0;
+		List<EmailOutbox> batch;
+		int sentInBatch;
+		do {
+			batch = outboxDao.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAt(
+					EmailOutbox.Status.PENDING, LocalDateTime.now(), PageRequest.of(0, batchSize));
+			if (batch.isEmpty()) break;
+
+			Map<String, Exception> failures = emailService.sendBatch(batch);
+			LocalDateTime now = LocalDateTime.now();
+			sentInBatch = 0;
+			for (EmailOutbox email : batch) {
+				Exception error = failures.get(email.getId());
+				if (error == null) {
+					email.markSent();
+					sent.incrementAndGet();
+					sentInBatch++;
+				} else {
+					email.markFailed(error.getMessage(), now.plusSeconds(backoffSeconds(email.getAttempts())), maxAttempts);
+					failed.incrementAndGet();
+					if (email.getStatus() == EmailOutbox.Status.DEAD) {
+						dead.incrementAndGet();
+						logger.error("Correo {} a {} descartado tras {} intentos: {}",
+								email.getId(), email.getRecipient(), email.getAttempts(), error.getMessage());
+					} else {
+						logger.warn("Fallo al enviar el correo {} a {} (intento {}): {}",
+								email.getId(), email.getRecipient(), email.getAttempts(), error.getMessage());
+					}
+				}
+			}
+			outboxDao.saveAll(batch);
+			total += sentInBatch;
+			// Si todo el lote falló (p. ej. SMTP caído) no tiene sentido seguir en esta pasada
+		} while (batch.size() == batchSize && sentInBatch > 0);
+		return total;
+	}
+
+	// Intentos previos: 0 -> base, 1 -> 2*base, 2 -> 4*base... hasta backoff-max-seconds
+	private long backoffSeconds(int attempts) {
+		long factor = 1L << Math.min(Math.max(attempts, 0), 20);
+		return Math.min(backoffBaseSeconds * factor, backoffMaxSeconds);
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("pending", outboxDao.countByStatus(EmailOutbox.Status.PENDING));
+		stats.put("dead", outboxDao.countByStatus(EmailOutbox.Status.DEAD));
+		stats.put("sent", sent.get());
+		stats.put("failedAttempts", failed.get());
+		stats.put("deadLettered", dead.get());
+		return stats;
+	}
+}
@@ -1,11 +1,31 @@
 package daniel.uclm.esi.gramola.services;
 
+import daniel.uclm.esi.gramola.models.EmailOutbox;
+import daniel.uclm.esi.gramola.services.SmtpTransportPool.PooledTransport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
 import jakarta.mail.internet.MimeMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMailMessage;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
@@ -15,9 +35,32 @@ public class EmailService {
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private SmtpTransportPool transportPool;
+
     @Value("${spring.mail.username}")
     private String fromEmail;
 
+    @Value("${app.mail.recipients-per-message:50}")
+    private int recipientsPerMessage;
+
+    private ExecutorService chunkExecutor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        this.chunkExecutor = Executors.newFixedThreadPool(transportPool.getSize(), r -> {
+            Thread t = new Thread(r, "mail-chunk-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        chunkExecutor.shutdown();
+    }
+
     /**
      * Envía un correo de texto simple
      */
@@ -28,7 +71,7 @@ public class EmailService {
         message.setSubject(subject);
         message.setText(text);
         
-        mailSender.send(message);
+        sendOrThrow(toMimeMessage(message));
     }
 
     /**
@@ -43,19 +86,141 @@ public class EmailService {
         helper.setSubject(subject);
         helper.setText(htmlContent, true); // true indica que es HTML
         
-        mailSender.send(message);
+        send(message);
+    }
+
+    /**
+     * Envía un lote de correos de la bandeja de salida reutilizando una conexión del pool.
+     * Devuelve los fallos indexados por id del correo (vacío si todo fue bien).
+     */
+    public Map<String, Exception> sendBatch(List<EmailOutbox> emails) {
+        Map<String, Exception> failures = new HashMap<>();
+        Map<String, MimeMessage> messages = new LinkedHashMap<>();
+        for (EmailOutbox email : emails) {
+            try {
+                MimeMessage message = mailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(message, email.isHtml(), "UTF-8");
+                helper.setFrom(fromEmail);
+                helper.setTo(email.getRecipient());
+                helper.setSubject(email.getSubject());
+                helper.setText(email.getBody(), email.isHtml());
+                prepare(message);
+                messages.put(email.getId(), message);
+            } catch (MessagingException e) {
+                failures.put(email.getId(), e);
+            }
+        }
+
+        PooledTransport pooled = null;
+        try {
+            for (Map.Entry<String, MimeMessage> entry : messages.entrySet()) {
+                MimeMessage message = entry.getValue();
+                // Un segundo intento con otra conexión si la actual estaba caída
+                for (int attempt = 0; attempt < 2; attempt++) {
+                    try {
+                        if (pooled == null) {
+                            pooled = transportPool.borrow();
+                        }
+                        pooled.transport().sendMessage(message, message.getAllRecipients());
+                        failures.remove(entry.getKey());
+                        break;
+                    } catch (SendFailedException e) {
+                        // Destinatario rechazado: la conexión sigue siendo válida
+                        failures.put(entry.getKey(), e);
+                        break;
+                    } catch (MessagingException e) {
+                        failures.put(entry.getKey(), e);
+                        if (pooled != null) {
+                            transportPool.release(pooled, true);
+                            pooled = null;
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (pooled != null) {
+                transportPool.release(pooled, false);
+            }
+        }
+        return failures;
     }
 
     /**
-     * Envía un correo con múltiples destinatarios
+     * Envía un correo con múltiples destinatarios. Las listas grandes se dividen en
+     * mensajes de como mucho {@code app.mail.recipients-per-message} destinatarios que
+     * se envían en paralelo por distintas conexiones del pool.
      */
     public void sendEmailToMultipleRecipients(String[] recipients, String subject, String text) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setFrom(fromEmail);
-        message.setTo(recipients);
-        message.setSubject(subject);
-        message.setText(text);
-        
-        mailSender.send(message);
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < recipients.length; from += recipientsPerMessage) {
+            String[] chunk = Arrays.copyOfRange(recipients, from, Math.min(from + recipientsPerMessage, recipients.length));
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setFrom(fromEmail);
+            message.setTo(chunk);
+            message.setSubject(subject);
+            message.setText(text);
+            MimeMessage mimeMessage = toMimeMessage(message);
+            chunks.add(CompletableFuture.runAsync(() -> sendOrThrow(mimeMessage), chunkExecutor));
+        }
+
+        Map<Object, Exception> failed = new LinkedHashMap<>();
+        for (CompletableFuture<Void> chunk : chunks) {
+            try {
+                chunk.join();
+            } catch (Exception e) {
+                failed.put(chunk, e.getCause() instanceof Exception cause ? cause : e);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new MailSendException(failed);
+        }
+    }
+
+    private MimeMessage toMimeMessage(SimpleMailMessage simpleMessage) {
+        MimeMessage message = mailSender.createMimeMessage();
+        simpleMessage.copyTo(new MimeMailMessage(message));
+        return message;
+    }
+
+    private static void prepare(MimeMessage message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        message.saveChanges();
+    }
+
+    private void send(MimeMessage message) throws MessagingException {
+        prepare(message);
+        try {
+            sendOnce(message);
+        } catch (SendFailedException e) {
+            throw e;
+        } catch (MessagingException e) {
+            // La conexión del pool pudo cerrarla el servidor: se reintenta una vez con otra
+            sendOnce(message);
+        }
+    }
+
+    private void sendOnce(MimeMessage message) throws MessagingException {
+        PooledTransport pooled = transportPool.borrow();
+        boolean broken = false;
+        try {
+            pooled.transport().sendMessage(message, message.getAllRecipients());
+        } catch (SendFailedException e) {
+            throw e;
+        } catch (MessagingException e) {
+            broken = true;
+            throw e;
+        } finally {
+            transportPool.release(pooled, broken);
+        }
+    }
+
+    private void sendOrThrow(MimeMessage message) {
+        try {
+            send(message);
+        } catch (MessagingException e) {
+            throw new MailSendException("Error al enviar el correo: " + e.getMessage(), e);
+        }
     }
 }
@@ -1,7 +1,8 @@
 package daniel.uclm.esi.gramola.services;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import org.slf4j.Logger;
@@ -9,23 +10,75 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+import daniel.uclm.esi.gramola.geocoding.GazetteerGeocoder;
+import daniel.uclm.esi.gramola.geocoding.GazetteerIndex;
+import daniel.uclm.esi.gramola.geocoding.GeocodingMode;
+import daniel.uclm.esi.gramola.http.OutboundHttpClient;
+import daniel.uclm.esi.gramola.http.OutboundHttpException;
+
 /** Servicio para obtener coordenadas geográficas usando Photon API (más rápida y precisa que Nominatim). */
 
 @Service
 public class GeocodingService {
 
     private static final Logger logger = LoggerFactory.getLogger(GeocodingService.class);
-    private static final String PHOTON_URL = "https://photon.komoot.io/api/";
-    private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
 
+    @Autowired
+    private GeocodingCache geocodingCache;
+
+    @Autowired
+    private OutboundHttpClient httpClient;
+
+    @Autowired
+    private GazetteerGeocoder gazetteer;
+
+    @Value("${app.geocoding.photon-url:https://photon.komoot.io/api/}")
+    private String photonUrl;
+
+    // Sin tiempo máximo una instancia lenta de Photon retendría el hilo indefinidamente
+    @Value("${app.geocoding.read-timeout-ms:3000}")
+    private long readTimeoutMs;
+
     public GeocodingService() {
-        this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
     }
 
     /**
-     * Obtiene las coordenadas (latitud y longitud) de una dirección usando Photon API.
+     * Devuelve las coordenadas solo si están en caché y no han caducado; nunca sale a la red.
+     * 
+     * @return [latitud, longitud] o null si habría que consultar Photon
+     */
+    public double[] obtenerCoordenadasCacheadas(String direccion) {
+        if (direccion == null || direccion.isBlank()) return null;
+        String clave = GeocodingCache.normalizar(normalizarConsulta(direccion));
+        GeocodingCache.Coordinates cached = geocodingCache.lookup(clave);
+        if (cached != null && !geocodingCache.isStale(cached)) {
+            return new double[]{cached.latitud(), cached.longitud()};
+        }
+        // El nomenclátor también es local, así que cuenta como "sin red"
+        return buscarEnNomenclator(clave);
+    }
+
+    private double[] buscarEnNomenclator(String clave) {
+        if (!gazetteer.isEnabled()) return null;
+        GazetteerIndex.Match match = gazetteer.lookup(clave);
+        if (match == null) return null;
+        logger.debug("Dirección '{}' encontrada en el nomenclátor como '{}' (similitud {})", clave, match.key(), match.score());
+        return new double[]{match.latitud(), match.longitud()};
+    }
+
+    private static String normalizarConsulta(String direccion) {
+        // Normalizar la dirección: reemplazar términos en español por inglés
+        return direccion
+            .replace("España", "Spain")
+            .trim();
+    }
+
+    /**
+     * Obtiene las coordenadas (latitud y longitud) de una dirección: primero de la caché, después
+     * del nomenclátor local si {@code app.geocoding.mode} lo activa y solo al final de Photon API.
      * 
      * @param direccion La dirección a geocodificar
      * @return Un array con [latitud, longitud]
@@ -36,23 +89,51 @@ public class GeocodingService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La dirección no puede estar vacía");
         }
 
-        // Normalizar la dirección: reemplazar términos en español por inglés
-        String direccionNormalizada = direccion
-            .replace("España", "Spain")
-            .trim();
+        String direccionNormalizada = normalizarConsulta(direccion);
+
+        String clave = GeocodingCache.normalizar(direccionNormalizada);
+        GeocodingCache.Coordinates cached = geocodingCache.lookup(clave);
+        if (cached != null && !geocodingCache.isStale(cached)) {
+            logger.debug("Coordenadas de '{}' servidas desde caché", direccion);
+            return new double[]{cached.latitud(), cached.longitud()};
+        }
+
+        double[] local = buscarEnNomenclator(clave);
+        if (local != null) {
+            return local;
+        }
+
+        double[] coordenadas;
+        try {
+            if (gazetteer.getMode() == GeocodingMode.OFFLINE) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "No se pudieron encontrar coordenadas para la dirección proporcionada");
+            }
+            coordenadas = consultarPhoton(direccion, direccionNormalizada);
+        } catch (ResponseStatusException e) {
+            if (cached == null) throw e;
+            // Mejor una coordenada antigua que ninguna
+            logger.warn("No se pudo refrescar '{}', se usa el valor caducado: {}", direccion, e.getReason());
+            geocodingCache.recordStaleServed();
+            return new double[]{cached.latitud(), cached.longitud()};
+        }
+        geocodingCache.store(clave, coordenadas[0], coordenadas[1], cached != null);
+        return coordenadas;
+    }
 
+    private double[] consultarPhoton(String direccion, String direccionNormalizada) {
         logger.info("Buscando coordenadas para: {} (normalizada: {})", direccion, direccionNormalizada);
         
         try {
             // Construir la URL con parámetros (sin lang o con default)
             String url = String.format("%s?q=%s&limit=1",
-                    PHOTON_URL,
-                    java.net.URLEncoder.encode(direccionNormalizada, "UTF-8"));
+                    photonUrl,
+                    java.net.URLEncoder.encode(direccionNormalizada, java.nio.charset.StandardCharsets.UTF_8));
 
             logger.debug("URL de búsqueda Photon: {}", url);
 
-            // Realizar la petición (Photon no requiere User-Agent especial)
-            String response = restTemplate.getForObject(url, String.class);
+            // Realizar la petición por el cliente compartido (conexiones reutilizadas)
+            String response = httpClient.getString(java.net.URI.create(url), java.time.Duration.ofMillis(readTimeoutMs));
             logger.debug("Respuesta de Photon: {}", response);
             
             // Parsear la respuesta JSON (formato GeoJSON)
@@ -79,6 +160,13 @@ public class GeocodingService {
 
         } catch (ResponseStatusException e) {
             throw e;
+        } catch (OutboundHttpException e) {
+            // Un 4xx de Photon no se arregla reintentando (salvo 429); el worker lo marca como fallido
+            logger.warn("Photon rechazó la búsqueda de '{}': {}", direccion, e.getMessage());
+            HttpStatus status = e.getStatusCode() >= 400 && e.getStatusCode() < 500 && e.getStatusCode() != 429
+                ? HttpStatus.BAD_REQUEST : HttpStatus.BAD_GATEWAY;
+            throw new ResponseStatusException(status,
+                "Error al consultar el servicio de geocodificación: " + e.getMessage());
         } catch (Exception e) {
             logger.error("Error al buscar coordenadas: {}", e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
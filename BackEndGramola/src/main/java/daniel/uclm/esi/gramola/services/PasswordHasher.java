@@ -0,0 +1,196 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Ejecuta BCrypt en un pool de hilos propio y acotado para que una ráfaga de logins
+ * no ocupe todas las CPUs ni los hilos de Tomcat. Si la cola está llena responde 503.
+ */
+@Service
+public class PasswordHasher {
+
+	private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+	private static final int MIN_STRENGTH = 10;
+	private static final int MAX_STRENGTH = 16;
+
+	@Value("${app.security.bcrypt.threads:0}")
+	private int threads;
+
+	@Value("${app.security.bcrypt.queue-capacity:64}")
+	private int queueCapacity;
+
+	@Value("${app.security.bcrypt.timeout-ms:5000}")
+	private long timeoutMs;
+
+	@Value("${app.security.bcrypt.strength:10}")
+	private int strength;
+
+	@Value("${app.security.bcrypt.calibrate:false}")
+	private boolean calibrate;
+
+	@Value("${app.security.bcrypt.target-ms:250}")
+	private long targetMs;
+
+	private ThreadPoolExecutor executor;
+	private BCryptPasswordEncoder encoder;
+
+	private final AtomicLong operations = new AtomicLong();
+	private final AtomicLong totalHashNanos = new AtomicLong();
+	private final AtomicLong maxHashNanos = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong rehashes = new AtomicLong();
+
+	@PostConstruct
+	void init() {
+		int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		AtomicInteger counter = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				r -> {
+					Thread t = new Thread(r, "bcrypt-" + counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+
+		if (calibrate) {
+			this.strength = calibrateStrength();
+		}
+		this.encoder = new BCryptPasswordEncoder(strength);
+		logger.info("BCrypt: coste {}, {} hilos, cola de {}", strength, poolSize, queueCapacity);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	public String encode(String rawPassword) {
+		return submit(() -> encoder.encode(rawPassword));
+	}
+
+	public boolean matches(String rawPassword, String encodedPassword) {
+		return submit(() -> encoder.matches(rawPassword, encodedPassword));
+	}
+
+	/** Indica si el hash se generó con un coste menor que el actual. */
+	public boolean needsRehash(String encodedPassword) {
+		return encoder.upgradeEncoding(encodedPassword);
+	}
+
+	/**
+	 * Recalcula el hash en segundo plano y lo entrega a {@code onRehashed}. Si el pool
+	 * está saturado se omite: se volverá a intentar en el siguiente login.
+	 */
+	public void rehashInBackground(String rawPassword, Consumer<String> onRehashed) {
+		try {
+			executor.execute(() -> {
+				try {
+					onRehashed.accept(encoder.encode(rawPassword));
+					rehashes.incrementAndGet();
+				} catch (Exception e) {
+					logger.warn("No se pudo actualizar el hash de la contraseña: {}", e.getMessage());
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+		}
+	}
+
+	private <T> T submit(Callable<T> task) {
+		long enqueuedAt = System.nanoTime();
+		Future<T> future;
+		try {
+			future = executor.submit(() -> {
+				long start = System.nanoTime();
+				totalWaitNanos.addAndGet(start - enqueuedAt);
+				try {
+					return task.call();
+				} finally {
+					long elapsed = System.nanoTime() - start;
+					operations.incrementAndGet();
+					totalHashNanos.addAndGet(elapsed);
+					maxHashNanos.accumulateAndGet(elapsed, Math::max);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Servidor ocupado, inténtalo de nuevo en unos segundos");
+		}
+
+		try {
+			return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			timeouts.incrementAndGet();
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Servidor ocupado, inténtalo de nuevo en unos segundos");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Operación interrumpida");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error al calcular el hash de la contraseña", e.getCause());
+		}
+	}
+
+	// Elige el mayor coste cuyo tiempo de hash no supere el objetivo en esta máquina
+	private int calibrateStrength() {
+		int chosen = MIN_STRENGTH;
+		for (int cost = MIN_STRENGTH; cost <= MAX_STRENGTH; cost++) {
+			BCryptPasswordEncoder candidate = new BCryptPasswordEncoder(cost);
+			candidate.encode("calibracion"); // calentamiento
+			long start = System.nanoTime();
+			candidate.encode("calibracion");
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			logger.info("Calibración BCrypt: coste {} -> {} ms", cost, elapsedMs);
+			if (elapsedMs > targetMs) {
+				break;
+			}
+			chosen = cost;
+		}
+		return chosen;
+	}
+
+	public Map<String, Object> stats() {
+		long ops = operations.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("strength", strength);
+		stats.put("poolSize", executor.getCorePoolSize());
+		stats.put("active", executor.getActiveCount());
+		stats.put("queued", executor.getQueue().size());
+		stats.put("queueCapacity", queueCapacity);
+		stats.put("operations", ops);
+		stats.put("avgHashMs", ops == 0 ? 0.0 : totalHashNanos.get() / 1_000_000.0 / ops);
+		stats.put("maxHashMs", maxHashNanos.get() / 1_000_000.0);
+		stats.put("avgQueueWaitMs", ops == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / ops);
+		stats.put("rejected", rejected.get());
+		stats.put("timeouts", timeouts.get());
+		stats.put("rehashes", rehashes.get());
+		return stats;
+	}
+}
@@ -1,14 +1,31 @@
 package daniel.uclm.esi.gramola.services;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
 import com.stripe.model.PaymentIntent;
+import com.stripe.net.RequestOptions;
 import com.stripe.param.PaymentIntentCreateParams;
 
+import daniel.uclm.esi.gramola.cache.UserCache;
 import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
 import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.mail.EmailTemplateRegistry;
+import daniel.uclm.esi.gramola.models.PaymentKind;
 import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.UserProfile;
+import daniel.uclm.esi.gramola.subscription.SubscriptionIndex;
 
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +43,33 @@ public class PaymentService {
 	private StripeTransactionDao dao;
 	@Autowired
 	private UserDao userDao;
+	@Autowired
+	private UserCache userCache;
+	@Autowired
+	private EmailOutboxService emailOutboxService;
+	@Autowired
+	private EmailTemplateRegistry emailTemplates;
+	@Autowired
+	private UserService userService;
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+	@Autowired
+	private RevenueRollupService revenueRollups;
+	@Autowired
+	private SubscriptionIndex subscriptionIndex;
+
+	private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
+
+	// Confirmaciones respondidas con lo que registró el webhook frente a las que tuvieron que ir a Stripe
+	private final AtomicLong confirmedLocally = new AtomicLong();
+	private final AtomicLong confirmedRemotely = new AtomicLong();
+	private final AtomicLong duplicateConfirmations = new AtomicLong();
+
+	// Stripe no acepta cobros en euros por debajo de 0,50 €
+	static final long MINIMO_STRIPE_CENTIMOS = 50;
+
+	// Bar que pagó, guardado en el PaymentIntent para poder reconciliarlo aunque falle el registro local
+	public static final String METADATA_EMAIL = "email";
 	
 	private Double getCosteSuscripcionEuros() {
 		String coste = System.getProperty("COSTE_SUSCRIPTION");
@@ -33,21 +77,53 @@ public class PaymentService {
 		return Double.parseDouble(coste);
 	}
 	
-	private long getCosteSuscripcionCentimos() {
-		return (long) (getCosteSuscripcionEuros() * 100);
+	public long getCosteSuscripcionCentimos() {
+		return Math.round(getCosteSuscripcionEuros() * 100);
 	}
 	
-	public StripeTransaction prepay() throws StripeException {
+	/**
+	 * Opciones de Stripe con la clave de idempotencia del cliente, si la hay. Se antepone la
+	 * operación para que la misma clave en dos endpoints distintos no choque en Stripe.
+	 */
+	private static RequestOptions opcionesStripe(String operacion, String idempotencyKey) {
+		if (idempotencyKey == null || idempotencyKey.isBlank()) return null;
+		return RequestOptions.builder().setIdempotencyKey(operacion + ":" + idempotencyKey).build();
+	}
+
+	public StripeTransaction prepay(String idempotencyKey) throws StripeException {
 		PaymentIntentCreateParams createParams = new PaymentIntentCreateParams.Builder()
 			.setCurrency("eur")
 			.setAmount(getCosteSuscripcionCentimos())
 			.build();
-		PaymentIntent intent = PaymentIntent.create(createParams);
-		JSONObject transactionDetails = new JSONObject(intent.toJson());
+		PaymentIntent intent = PaymentIntent.create(createParams, opcionesStripe("prepay", idempotencyKey));
+		return registrar(intent, PaymentKind.SUBSCRIPTION, null, null, idempotencyKey);
+	}
+
+	/**
+	 * Guarda la transacción de un PaymentIntent recién creado. Con clave de idempotencia Stripe
+	 * devuelve el mismo PaymentIntent en los reintentos, así que se reutiliza su transacción.
+	 */
+	private StripeTransaction registrar(PaymentIntent intent, PaymentKind kind, String email, String trackUri,
+			String idempotencyKey) {
+		if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+			var existing = dao.findByPaymentIntentId(intent.getId());
+			if (existing.isPresent()) {
+				return existing.get();
+			}
+		}
 		StripeTransaction st = new StripeTransaction();
-		st.setData(transactionDetails);
-		this.dao.save(st);
-	return st;
+		st.setData(new JSONObject(intent.toJson()));
+		st.setKind(kind);
+		st.setEmail(email);
+		if (trackUri != null && !trackUri.isBlank()) {
+			st.setTrackUri(trackUri);
+		}
+		try {
+			return this.dao.save(st);
+		} catch (DataIntegrityViolationException e) {
+			// Un reintento simultáneo ya la guardó
+			return dao.findByPaymentIntentId(intent.getId()).orElseThrow(() -> e);
+		}
 	}
 	
 	public Double getCosteSuscripcion() {
@@ -56,7 +132,7 @@ public class PaymentService {
 	
 	public void confirmSubscription(String email, String paymentIntentId, Double amount, String transactionId) throws Exception {
 		// Verificar que el usuario existe
-		var optUser = userDao.findById(email);
+		var optUser = userCache.get(email);
 		if (optUser.isEmpty()) {
 			throw new IllegalArgumentException("Usuario no encontrado");
 		}
@@ -67,62 +143,144 @@ public class PaymentService {
 			throw new IllegalArgumentException("Transacción no encontrada");
 		}
 		
-		// Verificar el PaymentIntent con Stripe
-		PaymentIntent intent = PaymentIntent.retrieve(paymentIntentId);
-		if (!"succeeded".equals(intent.getStatus())) {
-			throw new IllegalStateException("El pago no ha sido completado");
+		// Un reintento de una confirmación ya aplicada no vuelve a aplicarse
+		var transaction = optTransaction.get();
+		if (transaction.isConfirmed() && paymentIntentId != null && paymentIntentId.equals(transaction.getPaymentIntentId())) {
+			duplicateConfirmations.incrementAndGet();
+			return;
 		}
+
+		// Verificar el pago (estado registrado por el webhook o, si aún no ha llegado, Stripe)
+		long importe = importeCobrado(transaction, paymentIntentId);
 		
 		// Verificar que el monto coincide
-		long expectedAmount = (long) (amount * 100);
-		if (intent.getAmount() != expectedAmount) {
+		long expectedAmount = Math.round(amount * 100);
+		if (importe != expectedAmount) {
 			throw new IllegalArgumentException("El monto del pago no coincide");
 		}
 		
-		// Activar la suscripción del usuario (1 mes desde ahora)
-		var user = optUser.get();
-		java.time.LocalDateTime newExpiry = java.time.LocalDateTime.now().plusMonths(1);
-		user.setSubscriptionExpiry(newExpiry);
-		
-		// Asociar el email a la transacción
-		var transaction = optTransaction.get();
-		transaction.setEmail(email);
-		
-		// Guardar los cambios
-		userDao.save(user);
-		dao.save(transaction);
+		// Recibo por correo a través del outbox (no bloquea la confirmación)
+		String nombreBar = optUser.get().nombreBar();
+		String html = emailTemplates.render("payment-receipt", Map.of(
+			"nombreBar", nombreBar != null ? nombreBar : email,
+			"concepto", "Suscripción mensual Gramola",
+			"importe", String.format(java.util.Locale.ROOT, "%.2f €", importe / 100.0),
+			"fecha", java.time.LocalDate.now().toString(),
+			"referencia", paymentIntentId));
+
+		// Marcar la transacción, activar la suscripción (1 mes desde ahora) y encolar el recibo
+		// van juntos: si otra confirmación de la misma transacción se adelanta, no se aplica nada
+		java.time.LocalDateTime expiry = java.time.LocalDateTime.now().plusMonths(1);
+		boolean aplicada = aplicarUnaVez(transaction, importe, () -> {
+			transaction.setEmail(email);
+			if (userDao.updateSubscriptionExpiry(email, expiry) == 0) {
+				throw new IllegalArgumentException("Usuario no encontrado");
+			}
+			emailOutboxService.enqueueHtml(email, "Recibo de tu suscripción a Gramola", html);
+		});
+		if (aplicada) {
+			userCache.invalidate(email);
+			subscriptionIndex.put(email, expiry);
+		}
 	}
 	
-	public StripeTransaction prepaySong(String email, Double amount) throws Exception {
+	public SongPurchase prepaySong(String email, Double amount, String idempotencyKey) throws Exception {
 		// Verificar que el usuario existe
-		var optUser = userDao.findById(email);
+		var optUser = userCache.get(email);
 		if (optUser.isEmpty()) {
 			throw new IllegalArgumentException("Usuario no encontrado");
 		}
 		
 		// Convertir el monto a céntimos
-		long amountCents = (long) (amount * 100);
+		long amountCents = Math.round(amount * 100);
 		
 		// Crear el PaymentIntent en Stripe
 		PaymentIntentCreateParams createParams = new PaymentIntentCreateParams.Builder()
 			.setCurrency("eur")
 			.setAmount(amountCents)
+			.putMetadata(METADATA_EMAIL, email)
 			.build();
-		PaymentIntent intent = PaymentIntent.create(createParams);
+		PaymentIntent intent = PaymentIntent.create(createParams, opcionesStripe("prepay-song", idempotencyKey));
 		
 		// Guardar la transacción
-		JSONObject transactionDetails = new JSONObject(intent.toJson());
-		StripeTransaction st = new StripeTransaction();
-		st.setData(transactionDetails);
-		st.setEmail(email);
-		this.dao.save(st);
-		
-		return st;
+		StripeTransaction st = registrar(intent, PaymentKind.SONG, email, null, idempotencyKey);
+		return new SongPurchase(st, intent.getId(), intent.getClientSecret(), amountCents);
 	}
 	
+	/**
+	 * Importe cobrado en céntimos. Si el webhook ya registró el pago se responde con el estado
+	 * local; si no, se consulta a Stripe y se guarda la respuesta para que el evento, cuando
+	 * llegue, no cambie nada.
+	 */
+	private long importeCobrado(StripeTransaction transaction, String paymentIntentId) throws StripeException {
+		if (transaction.getPaymentIntentId() != null && !transaction.getPaymentIntentId().equals(paymentIntentId)) {
+			throw new IllegalArgumentException("El pago no corresponde a la transacción");
+		}
+		if (transaction.isSucceeded() && transaction.getAmount() != null) {
+			confirmedLocally.incrementAndGet();
+			return transaction.getAmount();
+		}
+		PaymentIntent intent = PaymentIntent.retrieve(paymentIntentId);
+		confirmedRemotely.incrementAndGet();
+		if (!StripeTransaction.STATUS_SUCCEEDED.equals(intent.getStatus())) {
+			throw new IllegalStateException("El pago no ha sido completado");
+		}
+		transaction.setData(new JSONObject(intent.toJson()));
+		return intent.getAmount();
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("confirmedLocally", confirmedLocally.get());
+		stats.put("confirmedRemotely", confirmedRemotely.get());
+		stats.put("duplicateConfirmations", duplicateConfirmations.get());
+		return stats;
+	}
+
+	/** Resultado de {@link #purchaseSong} y {@link #prepaySong}: todo lo que necesita el cliente para cobrar con Stripe.js. */
+	public record SongPurchase(StripeTransaction transaction, String paymentIntentId, String clientSecret, long amountCents) {
+	}
+
+	/**
+	 * Compra de una canción en una sola petición: comprueba la geocerca del bar, toma el precio
+	 * de {@code costeCancion} (nunca del cliente) y crea el PaymentIntent. El perfil sale de la
+	 * caché de usuarios una sola vez para las tres cosas.
+	 */
+	public SongPurchase purchaseSong(String email, double latitud, double longitud, String trackUri,
+			String idempotencyKey) throws StripeException {
+		var optUser = userCache.get(email);
+		if (optUser.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuario no encontrado");
+		}
+		UserProfile user = optUser.get();
+		if (!userService.getGeofence(user).contains(latitud, longitud)) {
+			throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Estás demasiado lejos del bar");
+		}
+
+		long amountCents = getCosteCancionCentimos(user.costeCancion());
+		PaymentIntentCreateParams createParams = new PaymentIntentCreateParams.Builder()
+			.setCurrency("eur")
+			.setAmount(amountCents)
+			.putMetadata(METADATA_EMAIL, email)
+			.build();
+		PaymentIntent intent = PaymentIntent.create(createParams, opcionesStripe("purchase-song", idempotencyKey));
+
+		StripeTransaction st = registrar(intent, PaymentKind.SONG, email, trackUri, idempotencyKey);
+		return new SongPurchase(st, intent.getId(), intent.getClientSecret(), amountCents);
+	}
+
+	// costeCancion se guarda en euros; un precio fuera de rango nunca llega a Stripe
+	static long getCosteCancionCentimos(Double costeCancion) {
+		if (costeCancion != null && !(costeCancion <= UserService.MAX_COSTE_CANCION)) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "El precio por canción del bar no es válido");
+		}
+		long centimos = costeCancion == null ? 0 : Math.round(costeCancion * 100);
+		return Math.max(centimos, MINIMO_STRIPE_CENTIMOS);
+	}
+
 	public void confirmSongPayment(String email, String paymentIntentId, Double amount, String transactionId, String trackUri) throws Exception {
 		// Verificar que el usuario existe
-		var optUser = userDao.findById(email);
+		var optUser = userCache.get(email);
 		if (optUser.isEmpty()) {
 			throw new IllegalArgumentException("Usuario no encontrado");
 		}
@@ -133,29 +291,55 @@ public class PaymentService {
 			throw new IllegalArgumentException("Transacción no encontrada");
 		}
 		
-		// Verificar el PaymentIntent con Stripe
-		PaymentIntent intent = PaymentIntent.retrieve(paymentIntentId);
-		if (!"succeeded".equals(intent.getStatus())) {
-			throw new IllegalStateException("El pago no ha sido completado");
+		// Un reintento de una confirmación ya aplicada no vuelve a aplicarse
+		var transaction = optTransaction.get();
+		if (transaction.isConfirmed() && paymentIntentId != null && paymentIntentId.equals(transaction.getPaymentIntentId())) {
+			duplicateConfirmations.incrementAndGet();
+			return;
 		}
+
+		// Verificar el pago (estado registrado por el webhook o, si aún no ha llegado, Stripe)
+		long importe = importeCobrado(transaction, paymentIntentId);
 		
 		// Verificar que el monto coincide
-		long expectedAmount = (long) (amount * 100);
-		if (intent.getAmount() != expectedAmount) {
+		long expectedAmount = Math.round(amount * 100);
+		if (importe != expectedAmount) {
 			throw new IllegalArgumentException("El monto del pago no coincide");
 		}
 		
-		// Asociar el email a la transacción si aún no está asociado
-		var transaction = optTransaction.get();
-		if (transaction.getEmail() == null || transaction.getEmail().isBlank()) {
-			transaction.setEmail(email);
-		}
-		
-		// Asociar el trackUri a la transacción
-		if (trackUri != null && !trackUri.isBlank()) {
-			transaction.setTrackUri(trackUri);
+		aplicarUnaVez(transaction, importe, () -> {
+			// Asociar el email a la transacción si aún no está asociado
+			if (transaction.getEmail() == null || transaction.getEmail().isBlank()) {
+				transaction.setEmail(email);
+			}
+			
+			// Asociar el trackUri a la transacción
+			if (trackUri != null && !trackUri.isBlank()) {
+				transaction.setTrackUri(trackUri);
+			}
+		});
+	}
+
+	/**
+	 * Ejecuta {@code cambios}, marca la transacción como confirmada y suma {@code importe} a los
+	 * ingresos del bar en una sola transacción de BD. La versión de StripeTransaction hace que,
+	 * de dos confirmaciones simultáneas, la segunda falle al guardar y se deshaga entera.
+	 * 
+	 * @return false si otra confirmación se adelantó y no se ha aplicado nada
+	 */
+	private boolean aplicarUnaVez(StripeTransaction transaction, long importe, Runnable cambios) {
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				cambios.run();
+				transaction.markConfirmed();
+				dao.saveAndFlush(transaction);
+				revenueRollups.record(transaction, importe);
+			});
+			return true;
+		} catch (ObjectOptimisticLockingFailureException e) {
+			duplicateConfirmations.incrementAndGet();
+			logger.info("La transacción {} ya la confirmó otra petición", transaction.getId());
+			return false;
 		}
-		
-		dao.save(transaction);
 	}
 }
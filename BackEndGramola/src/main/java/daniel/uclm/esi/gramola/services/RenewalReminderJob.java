@@ -0,0 +1,209 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import daniel.uclm.esi.gramola.dao.EmailOutboxDao;
+import daniel.uclm.esi.gramola.dao.JobCheckpointDao;
+import daniel.uclm.esi.gramola.mail.EmailTemplateRegistry;
+import daniel.uclm.esi.gramola.models.EmailOutbox;
+import daniel.uclm.esi.gramola.models.JobCheckpoint;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+
+/**
+ * Recordatorio de renovación para los bares cuya suscripción caduca en los próximos
+ * {@code days-ahead} días. Recorre solo las columnas necesarias por trozos de {@code chunk-size}
+ * filas paginados por (caducidad, email) sobre {@code idx_user_subscription_expiry}, envía cada
+ * trozo con {@link EmailService#sendBatch} y guarda un checkpoint tras cada uno, así que la
+ * memoria y el tiempo por trozo no dependen del número de usuarios y tras una caída continúa
+ * donde se quedó. Los fallos sueltos y los destinatarios rechazados pasan a la bandeja de salida;
+ * si un trozo entero falla por la conexión (SMTP caído) el proceso se detiene y la siguiente
+ * ejecución lo retoma.
+ *
+ * Cada ejecución cubre las caducidades desde el final de la anterior hasta ahora + días, de
+ * modo que cada caducidad se recuerda una sola vez sin marcar nada en los usuarios.
+ */
+@Service
+public class RenewalReminderJob {
+
+	private static final Logger logger = LoggerFactory.getLogger(RenewalReminderJob.class);
+
+	static final String JOB_NAME = "renewal-reminders";
+
+	private static final String SELECT_CHUNK = "SELECT email, nombre_bar, subscription_expiry FROM user "
+			+ "WHERE subscription_expiry <= ? AND activated_at IS NOT NULL "
+			+ "AND (subscription_expiry > ? OR (subscription_expiry = ? AND email > ?)) "
+			+ "ORDER BY subscription_expiry, email LIMIT ?";
+
+	private static final DateTimeFormatter FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private JobCheckpointDao checkpointDao;
+
+	@Autowired
+	private EmailService emailService;
+
+	@Autowired
+	private EmailOutboxDao outboxDao;
+
+	@Autowired
+	private EmailTemplateRegistry emailTemplates;
+
+	@Value("${app.subscriptions.reminder.enabled:true}")
+	private boolean enabled;
+
+	@Value("${app.subscriptions.reminder.days-ahead:7}")
+	private int daysAhead;
+
+	@Value("${app.subscriptions.reminder.chunk-size:500}")
+	private int chunkSize;
+
+	@Value("${app.frontend.url:http://localhost:4200}")
+	private String frontendUrl;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private final AtomicLong scanned = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong deferred = new AtomicLong();
+	private volatile String lastKey;
+
+	private record Reminder(String email, String nombreBar, LocalDateTime expiry) {
+	}
+
+	@Scheduled(cron = "${app.subscriptions.reminder.cron:0 0 10 * * *}")
+	public void scheduledRun() {
+		if (enabled) {
+			run(LocalDateTime.now());
+		}
+	}
+
+	/**
+	 * Envía los recordatorios pendientes hasta {@code now} + días. Devuelve false si ya había
+	 * otra ejecución en marcha.
+	 */
+	public boolean run(LocalDateTime now) {
+		if (!running.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			runJob(now);
+		} finally {
+			running.set(false);
+		}
+		return true;
+	}
+
+	private void runJob(LocalDateTime now) {
+		JobCheckpoint checkpoint = checkpointDao.findById(JOB_NAME).orElseGet(() -> new JobCheckpoint(JOB_NAME));
+		// marker = "inicio|fin" de la ventana de caducidades de la ejecución
+		if (checkpoint.getMarker() == null || checkpoint.isCompleted()) {
+			// Lo que caducó mientras el proceso no corría ya no necesita recordatorio
+			LocalDateTime from = now;
+			if (checkpoint.getMarker() != null && windowEnd(checkpoint.getMarker()).isAfter(now)) {
+				from = windowEnd(checkpoint.getMarker());
+			}
+			LocalDateTime to = now.plusDays(daysAhead);
+			if (!to.isAfter(from)) return;
+			checkpoint.restart(from + "|" + to);
+			checkpointDao.save(checkpoint);
+		}
+		LocalDateTime from = LocalDateTime.parse(checkpoint.getMarker().substring(0, checkpoint.getMarker().indexOf('|')));
+		LocalDateTime to = windowEnd(checkpoint.getMarker());
+
+		// Posición dentro de la ventana: (caducidad, email) de la última fila procesada. Al empezar
+		// el email es null, así que "email > null" nunca se cumple y el inicio queda excluido
+		LocalDateTime afterExpiry = from;
+		String afterEmail = null;
+		if (checkpoint.getLastKey() != null) {
+			int separator = checkpoint.getLastKey().indexOf('|');
+			afterExpiry = LocalDateTime.parse(checkpoint.getLastKey().substring(0, separator));
+			afterEmail = checkpoint.getLastKey().substring(separator + 1);
+		}
+		logger.info("Recordatorios de renovación para caducidades entre {} y {}", from, to);
+
+		while (true) {
+			List<Reminder> chunk = jdbcTemplate.query(SELECT_CHUNK,
+					(rs, i) -> new Reminder(rs.getString(1), rs.getString(2), rs.getObject(3, LocalDateTime.class)),
+					to, afterExpiry, afterExpiry, afterEmail, chunkSize);
+			if (chunk.isEmpty()) {
+				checkpoint.complete();
+				checkpointDao.save(checkpoint);
+				logger.info("Recordatorios de renovación completados: {} enviados, {} a la bandeja de salida",
+						sent.get(), deferred.get());
+				return;
+			}
+
+			List<EmailOutbox> emails = new ArrayList<>(chunk.size());
+			for (Reminder reminder : chunk) {
+				emails.add(render(reminder));
+			}
+			Map<String, Exception> failures = emailService.sendBatch(emails);
+			if (failures.size() == emails.size() && failures.values().stream().anyMatch(RenewalReminderJob::isTransportFailure)) {
+				// SMTP caído: se deja el checkpoint aquí y la próxima ejecución sigue por este trozo
+				logger.warn("No se pudo enviar ningún recordatorio del trozo tras '{}'; se reintentará", checkpoint.getLastKey());
+				return;
+			}
+			if (!failures.isEmpty()) {
+				outboxDao.saveAll(emails.stream().filter(e -> failures.containsKey(e.getId())).toList());
+			}
+			sent.addAndGet(chunk.size() - failures.size());
+			deferred.addAndGet(failures.size());
+			scanned.addAndGet(chunk.size());
+
+			Reminder last = chunk.get(chunk.size() - 1);
+			afterExpiry = last.expiry();
+			afterEmail = last.email();
+			lastKey = afterExpiry + "|" + afterEmail;
+			checkpoint.advance(lastKey, chunk.size());
+			checkpointDao.save(checkpoint);
+		}
+	}
+
+	private EmailOutbox render(Reminder reminder) {
+		String html = emailTemplates.render("subscription-expiry", Map.of(
+			"nombreBar", reminder.nombreBar() != null ? reminder.nombreBar() : reminder.email(),
+			"estado", "caduca",
+			"fechaExpiracion", reminder.expiry().format(FECHA),
+			"renewUrl", frontendUrl + "/payments"));
+		return new EmailOutbox(reminder.email(), "Tu suscripción a Gramola está a punto de caducar", html, true);
+	}
+
+	// Un destinatario rechazado o mal escrito no se arregla reintentando el trozo: va a la bandeja
+	// de salida como cualquier otro fallo suelto. Solo los fallos de conexión detienen el proceso
+	private static boolean isTransportFailure(Exception e) {
+		return !(e instanceof SendFailedException || e instanceof AddressException);
+	}
+
+	private static LocalDateTime windowEnd(String marker) {
+		return LocalDateTime.parse(marker.substring(marker.indexOf('|') + 1));
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("running", running.get());
+		stats.put("scanned", scanned.get());
+		stats.put("sent", sent.get());
+		stats.put("deferredToOutbox", deferred.get());
+		stats.put("lastKey", lastKey);
+		return stats;
+	}
+}
@@ -0,0 +1,263 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.dao.RevenueRollupDao;
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.dao.TrackRollupDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.RevenueRollup;
+import daniel.uclm.esi.gramola.models.RollupGranularity;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.TrackRevenue;
+import daniel.uclm.esi.gramola.models.TransactionSummary;
+
+/**
+ * Ingresos de cada bar por hora y por día y canciones más pagadas, acumulados en
+ * {@link RevenueRollup} y {@code TrackRollup} a medida que se confirman los pagos. Las consultas
+ * del panel leen una fila por intervalo en vez de recorrer las transacciones.
+ * <p>
+ * {@link #record} se llama dentro de la transacción que marca el pago como confirmado, así que
+ * un pago se suma una sola vez aunque lleguen dos confirmaciones. Para rellenar los acumulados
+ * de pagos anteriores (o corregirlos) se arranca con {@code --rebuild-revenue-rollups}, o con
+ * {@code --rebuild-revenue-rollups=email} para un solo bar. Solo cuentan los pagos con
+ * {@code confirmedAt}; en los anteriores a esa columna lo rellena {@code StripeTransactionMigration},
+ * salvo en las canciones confirmadas sin trackUri, que no se pueden distinguir de las no pagadas.
+ */
+@Service
+public class RevenueRollupService implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(RevenueRollupService.class);
+
+	static final String REBUILD_OPTION = "rebuild-revenue-rollups";
+	static final int REBUILD_BATCH_SIZE = 1000;
+	public static final int MAX_BUCKETS = 2000;
+	public static final int MAX_TOP_TRACKS = 50;
+
+	@Autowired
+	private RevenueRollupDao revenueDao;
+
+	@Autowired
+	private TrackRollupDao trackDao;
+
+	@Autowired
+	private StripeTransactionDao transactionDao;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong rebuiltBars = new AtomicLong();
+	private final AtomicLong rebuiltTransactions = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	// Contadores de un intervalo mientras se reconstruye un bar
+	private static final class BucketCounters {
+		final RollupGranularity granularity;
+		final LocalDateTime bucketStart;
+		long songCount;
+		long songAmount;
+		long subscriptionCount;
+		long subscriptionAmount;
+
+		BucketCounters(RollupGranularity granularity, LocalDateTime bucketStart) {
+			this.granularity = granularity;
+			this.bucketStart = bucketStart;
+		}
+	}
+
+	private static final class TrackCounters {
+		final LocalDate day;
+		final String trackUri;
+		long plays;
+		long amount;
+
+		TrackCounters(LocalDate day, String trackUri) {
+			this.day = day;
+			this.trackUri = trackUri;
+		}
+	}
+
+	/**
+	 * Suma un pago confirmado a los acumulados de su bar. Debe ejecutarse en la misma transacción
+	 * que {@link StripeTransaction#markConfirmed()}.
+	 *
+	 * @param amountCents importe cobrado en céntimos
+	 */
+	public void record(StripeTransaction transaction, long amountCents) {
+		if (transaction.getEmail() == null || transaction.getConfirmedAt() == null) {
+			skipped.incrementAndGet();
+			return;
+		}
+		String email = transaction.getEmail();
+		LocalDateTime confirmedAt = transaction.getConfirmedAt();
+		boolean song = kindOf(transaction.getKind(), transaction.getTrackUri()) == PaymentKind.SONG;
+		for (RollupGranularity granularity : RollupGranularity.values()) {
+			LocalDateTime bucket = granularity.bucketStart(confirmedAt);
+			revenueDao.add(revenueId(email, granularity, bucket), email, granularity.name(), bucket,
+					song ? 1 : 0, song ? amountCents : 0, song ? 0 : 1, song ? 0 : amountCents);
+		}
+		if (song && transaction.getTrackUri() != null) {
+			LocalDate day = confirmedAt.toLocalDate();
+			trackDao.add(trackId(email, day, transaction.getTrackUri()), email, day, transaction.getTrackUri(), 1, amountCents);
+		}
+		recorded.incrementAndGet();
+	}
+
+	/** Intervalos con ingresos entre {@code from} y {@code to} (ambos días incluidos), en orden. */
+	public List<RevenueRollup> revenue(String email, RollupGranularity granularity, LocalDate from, LocalDate to) {
+		checkRange(from, to);
+		long days = ChronoUnit.DAYS.between(from, to) + 1;
+		long buckets = granularity == RollupGranularity.HOUR ? days * 24 : days;
+		if (buckets > MAX_BUCKETS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"El periodo no puede tener más de " + MAX_BUCKETS + " intervalos");
+		}
+		return revenueDao.findByEmailAndGranularityAndBucketStartBetweenOrderByBucketStart(email, granularity,
+				from.atStartOfDay(), to.plusDays(1).atStartOfDay().minusNanos(1));
+	}
+
+	/** Canciones más pagadas entre {@code from} y {@code to} (ambos días incluidos). */
+	public List<TrackRevenue> topTracks(String email, LocalDate from, LocalDate to, int limit) {
+		checkRange(from, to);
+		if (limit < 1 || limit > MAX_TOP_TRACKS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit debe estar entre 1 y " + MAX_TOP_TRACKS);
+		}
+		return trackDao.findTopTracks(email, from, to, PageRequest.of(0, limit));
+	}
+
+	private static void checkRange(LocalDate from, LocalDate to) {
+		if (from.isAfter(to)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from no puede ser posterior a to");
+		}
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!args.containsOption(REBUILD_OPTION)) return;
+		List<String> emails = args.getOptionValues(REBUILD_OPTION);
+		if (emails.isEmpty()) {
+			rebuildAll();
+		} else {
+			emails.forEach(this::rebuild);
+		}
+	}
+
+	public void rebuildAll() {
+		for (String email : transactionDao.findConfirmedEmails()) {
+			rebuild(email);
+		}
+	}
+
+	/**
+	 * Recalcula desde cero los acumulados de un bar a partir de sus pagos confirmados. Agrega en
+	 * memoria (una entrada por intervalo, no por pago) y sustituye las filas en una transacción,
+	 * así que el panel nunca ve el bar a medias. Pensado para rellenos y correcciones: un pago
+	 * que se confirme mientras se reconstruye ese mismo bar puede quedar sin contar.
+	 */
+	public void rebuild(String email) {
+		Map<String, BucketCounters> revenue = new HashMap<>();
+		Map<String, TrackCounters> tracks = new HashMap<>();
+		long transactions = 0;
+		String lastId = "";
+		List<TransactionSummary> batch;
+		do {
+			batch = transactionDao.findConfirmedAfter(email, lastId, PageRequest.of(0, REBUILD_BATCH_SIZE));
+			for (TransactionSummary tx : batch) {
+				lastId = tx.id();
+				if (tx.amount() == null) {
+					// Sin importe extraído no hay nada que sumar
+					skipped.incrementAndGet();
+					continue;
+				}
+				long amount = tx.amount();
+				boolean song = kindOf(tx.kind(), tx.trackUri()) == PaymentKind.SONG;
+				for (RollupGranularity granularity : RollupGranularity.values()) {
+					LocalDateTime bucket = granularity.bucketStart(tx.confirmedAt());
+					BucketCounters counters = revenue.computeIfAbsent(revenueId(email, granularity, bucket),
+							id -> new BucketCounters(granularity, bucket));
+					if (song) {
+						counters.songCount++;
+						counters.songAmount += amount;
+					} else {
+						counters.subscriptionCount++;
+						counters.subscriptionAmount += amount;
+					}
+				}
+				if (song && tx.trackUri() != null) {
+					LocalDate day = tx.confirmedAt().toLocalDate();
+					TrackCounters counters = tracks.computeIfAbsent(trackId(email, day, tx.trackUri()),
+							id -> new TrackCounters(day, tx.trackUri()));
+					counters.plays++;
+					counters.amount += amount;
+				}
+				transactions++;
+			}
+		} while (batch.size() == REBUILD_BATCH_SIZE);
+
+		transactionTemplate.executeWithoutResult(status -> {
+			revenueDao.deleteByEmail(email);
+			trackDao.deleteByEmail(email);
+			revenue.forEach((id, c) -> revenueDao.add(id, email, c.granularity.name(), c.bucketStart,
+					c.songCount, c.songAmount, c.subscriptionCount, c.subscriptionAmount));
+			tracks.forEach((id, c) -> trackDao.add(id, email, c.day, c.trackUri, c.plays, c.amount));
+		});
+		rebuiltBars.incrementAndGet();
+		rebuiltTransactions.addAndGet(transactions);
+		logger.info("Acumulados de ingresos de {} reconstruidos a partir de {} pagos", email, transactions);
+	}
+
+	// Antes de PaymentKind las canciones eran las únicas transacciones con trackUri
+	private static PaymentKind kindOf(PaymentKind kind, String trackUri) {
+		if (kind != null) return kind;
+		return trackUri != null ? PaymentKind.SONG : PaymentKind.SUBSCRIPTION;
+	}
+
+	static String revenueId(String email, RollupGranularity granularity, LocalDateTime bucket) {
+		return sha256(email + '|' + granularity + '|' + bucket);
+	}
+
+	static String trackId(String email, LocalDate day, String trackUri) {
+		return sha256(email + '|' + day + '|' + trackUri);
+	}
+
+	private static String sha256(String value) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(sha.digest(value.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("recorded", recorded.get());
+		stats.put("skipped", skipped.get());
+		stats.put("rebuiltBars", rebuiltBars.get());
+		stats.put("rebuiltTransactions", rebuiltTransactions.get());
+		return stats;
+	}
+}
@@ -0,0 +1,188 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+
+/**
+ * Pool de conexiones SMTP abiertas y autenticadas, para no repetir el handshake
+ * (y STARTTLS) en cada correo. Las conexiones que llevan un rato sin usarse se
+ * comprueban con NOOP antes de prestarlas y las inactivas se cierran periódicamente.
+ */
+@Component
+public class SmtpTransportPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+	@Autowired
+	private JavaMailSenderImpl mailSender;
+
+	@Value("${app.mail.pool.size:4}")
+	private int size;
+
+	@Value("${app.mail.pool.idle-timeout-ms:60000}")
+	private long idleTimeoutMs;
+
+	@Value("${app.mail.pool.validate-after-ms:5000}")
+	private long validateAfterMs;
+
+	@Value("${app.mail.pool.borrow-timeout-ms:10000}")
+	private long borrowTimeoutMs;
+
+	private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+	private Semaphore permits;
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong brokenOnValidation = new AtomicLong();
+
+	/** Conexión prestada por el pool; hay que devolverla con {@link SmtpTransportPool#release}. */
+	public static final class PooledTransport {
+		private final Transport transport;
+		private long lastUsed;
+
+		private PooledTransport(Transport transport) {
+			this.transport = transport;
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		public Transport transport() {
+			return transport;
+		}
+	}
+
+	@PostConstruct
+	void init() {
+		this.permits = new Semaphore(size, true);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public PooledTransport borrow() throws MessagingException {
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new MessagingException("No hay conexiones SMTP disponibles");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrumpido esperando una conexión SMTP", e);
+		}
+
+		try {
+			PooledTransport pooled;
+			while ((pooled = idle.pollFirst()) != null) {
+				long idleFor = System.currentTimeMillis() - pooled.lastUsed;
+				if (idleFor > idleTimeoutMs) {
+					close(pooled);
+					evicted.incrementAndGet();
+					continue;
+				}
+				// isConnected() de SMTPTransport envía un NOOP: solo se hace si lleva un rato parada
+				if (idleFor > validateAfterMs && !pooled.transport.isConnected()) {
+					close(pooled);
+					brokenOnValidation.incrementAndGet();
+					continue;
+				}
+				reused.incrementAndGet();
+				return pooled;
+			}
+			return open();
+		} catch (MessagingException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Devuelve la conexión al pool. Si hubo un error de transporte se pasa
+	 * {@code broken = true} y se cierra en vez de reutilizarla.
+	 */
+	public void release(PooledTransport pooled, boolean broken) {
+		try {
+			if (broken || !pooled.transport.isConnected()) {
+				close(pooled);
+			} else {
+				pooled.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private PooledTransport open() throws MessagingException {
+		Transport transport = mailSender.getSession().getTransport(
+				mailSender.getProtocol() != null ? mailSender.getProtocol() : "smtp");
+		String username = mailSender.getUsername();
+		String password = mailSender.getPassword();
+		if ("".equals(username)) username = null;
+		if ("".equals(password)) password = null;
+		transport.connect(mailSender.getHost(), mailSender.getPort(), username, password);
+		created.incrementAndGet();
+		return new PooledTransport(transport);
+	}
+
+	private static void close(PooledTransport pooled) {
+		try {
+			pooled.transport.close();
+		} catch (MessagingException e) {
+			logger.debug("Error al cerrar la conexión SMTP: {}", e.getMessage());
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${app.mail.pool.eviction-interval-ms:30000}")
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		List<PooledTransport> expired = new ArrayList<>();
+		for (Iterator<PooledTransport> it = idle.iterator(); it.hasNext();) {
+			PooledTransport pooled = it.next();
+			if (now - pooled.lastUsed > idleTimeoutMs && idle.removeFirstOccurrence(pooled)) {
+				expired.add(pooled);
+			}
+		}
+		expired.forEach(SmtpTransportPool::close);
+		evicted.addAndGet(expired.size());
+	}
+
+	@PreDestroy
+	void shutdown() {
+		PooledTransport pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			close(pooled);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", size);
+		stats.put("idle", idle.size());
+		stats.put("inUse", size - permits.availablePermits());
+		stats.put("created", created.get());
+		stats.put("reused", reused.get());
+		stats.put("evicted", evicted.get());
+		stats.put("brokenOnValidation", brokenOnValidation.get());
+		return stats;
+	}
+}
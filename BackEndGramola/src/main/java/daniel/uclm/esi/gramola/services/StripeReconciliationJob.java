@@ -0,0 +1,264 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.StripeCollection;
+import com.stripe.param.PaymentIntentListParams;
+
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.ReconciliationRow;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+
+/**
+ * Compara los PaymentIntents de Stripe con las filas de {@link StripeTransaction}. La ventana de
+ * fechas se reparte en {@code partitions} tramos que se recorren en paralelo, página a página
+ * ({@value #PAGE_SIZE} intents), y cada página se cruza con la BD en una sola consulta por el
+ * índice único de paymentIntentId. En memoria solo hay una página por tramo y los contadores,
+ * así que el heap no crece con el número de intents.
+ *
+ * Con {@code repair} se corrigen las diferencias: estado e importe desde Stripe, el email desde
+ * los metadatos del intent y, para los cobros que nunca se confirmaron, la confirmación normal
+ * de {@link PaymentService}. Los intents sin fila local solo se informan.
+ */
+@Service
+public class StripeReconciliationJob {
+
+	private static final Logger logger = LoggerFactory.getLogger(StripeReconciliationJob.class);
+
+	static final long PAGE_SIZE = 100;
+	static final int MAX_SAMPLES = 100;
+
+	public enum Mismatch { MISSING_LOCAL, STATUS_DRIFT, MISSING_EMAIL, UNCONFIRMED }
+
+	public record Discrepancy(Mismatch type, String paymentIntentId, String transactionId, String detail) {
+	}
+
+	public record Report(Instant from, Instant to, long scanned, long matched, Map<Mismatch, Long> mismatches,
+			long repaired, long errors, List<Discrepancy> samples) {
+	}
+
+	@Autowired
+	private StripeTransactionDao dao;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Value("${app.stripe.reconcile.enabled:false}")
+	private boolean enabled;
+
+	@Value("${app.stripe.reconcile.partitions:4}")
+	private int partitions;
+
+	@Value("${app.stripe.reconcile.lookback-hours:48}")
+	private long lookbackHours;
+
+	@Value("${app.stripe.reconcile.repair:false}")
+	private boolean repair;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+	private volatile Report lastReport;
+
+	// Estado de una ejecución, compartido por los tramos
+	private static final class Run {
+		final AtomicLong scanned = new AtomicLong();
+		final AtomicLong matched = new AtomicLong();
+		final Map<Mismatch, AtomicLong> mismatches = new LinkedHashMap<>();
+		final AtomicLong repaired = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final List<Discrepancy> samples = Collections.synchronizedList(new ArrayList<>());
+
+		Run() {
+			for (Mismatch type : Mismatch.values()) {
+				mismatches.put(type, new AtomicLong());
+			}
+		}
+
+		void found(Mismatch type, String paymentIntentId, String transactionId, String detail) {
+			mismatches.get(type).incrementAndGet();
+			synchronized (samples) {
+				if (samples.size() < MAX_SAMPLES) {
+					samples.add(new Discrepancy(type, paymentIntentId, transactionId, detail));
+				}
+			}
+		}
+	}
+
+	@Scheduled(cron = "${app.stripe.reconcile.cron:0 30 4 * * *}")
+	public void scheduledRun() {
+		if (enabled) {
+			Instant now = Instant.now();
+			reconcile(now.minus(lookbackHours, ChronoUnit.HOURS), now, repair);
+		}
+	}
+
+	/**
+	 * Reconcilia los PaymentIntents creados en [from, to).
+	 *
+	 * @return el informe, o null si ya había otra reconciliación en marcha
+	 */
+	public Report reconcile(Instant from, Instant to, boolean repair) {
+		if (!running.compareAndSet(false, true)) {
+			return null;
+		}
+		try {
+			Run run = new Run();
+			long start = from.getEpochSecond();
+			long end = to.getEpochSecond();
+			int tramos = (int) Math.max(1, Math.min(partitions, end - start));
+			long width = Math.max(1, (end - start + tramos - 1) / tramos);
+
+			ExecutorService pool = Executors.newFixedThreadPool(tramos);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (long gte = start; gte < end; gte += width) {
+					long lowerBound = gte;
+					long upperBound = Math.min(gte + width, end);
+					futures.add(pool.submit(() -> {
+						reconcilePartition(lowerBound, upperBound, repair, run);
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (Exception e) {
+						run.errors.incrementAndGet();
+						logger.error("Error al reconciliar un tramo con Stripe: {}", e.getMessage(), e);
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+
+			Map<Mismatch, Long> mismatches = new LinkedHashMap<>();
+			run.mismatches.forEach((type, count) -> mismatches.put(type, count.get()));
+			Report report = new Report(from, to, run.scanned.get(), run.matched.get(), mismatches,
+					run.repaired.get(), run.errors.get(), List.copyOf(run.samples));
+			lastReport = report;
+			logger.info("Reconciliación con Stripe de {} a {}: {} intents, {} correctos, diferencias {}, {} reparadas",
+					from, to, report.scanned(), report.matched(), mismatches, report.repaired());
+			return report;
+		} finally {
+			running.set(false);
+		}
+	}
+
+	private void reconcilePartition(long gte, long lt, boolean repair, Run run) throws StripeException {
+		String startingAfter = null;
+		boolean hasMore;
+		do {
+			PaymentIntentListParams.Builder params = PaymentIntentListParams.builder()
+					.setCreated(PaymentIntentListParams.Created.builder().setGte(gte).setLt(lt).build())
+					.setLimit(PAGE_SIZE);
+			if (startingAfter != null) {
+				params.setStartingAfter(startingAfter);
+			}
+			StripeCollection<PaymentIntent> page = PaymentIntent.list(params.build());
+			List<PaymentIntent> intents = page.getData();
+			if (intents.isEmpty()) return;
+
+			Map<String, ReconciliationRow> rows = dao.findReconciliationRows(
+					intents.stream().map(PaymentIntent::getId).toList())
+				.stream().collect(Collectors.toMap(ReconciliationRow::paymentIntentId, Function.identity()));
+			for (PaymentIntent intent : intents) {
+				run.scanned.incrementAndGet();
+				try {
+					compare(intent, rows.get(intent.getId()), repair, run);
+				} catch (Exception e) {
+					run.errors.incrementAndGet();
+					logger.warn("No se pudo reconciliar el PaymentIntent {}: {}", intent.getId(), e.getMessage());
+				}
+			}
+			startingAfter = intents.get(intents.size() - 1).getId();
+			hasMore = Boolean.TRUE.equals(page.getHasMore());
+		} while (hasMore);
+	}
+
+	private void compare(PaymentIntent intent, ReconciliationRow row, boolean repair, Run run) throws Exception {
+		String piId = intent.getId();
+		if (row == null) {
+			run.found(Mismatch.MISSING_LOCAL, piId, null, intent.getStatus() + " " + intent.getAmount());
+			return;
+		}
+		boolean ok = true;
+
+		if (!Objects.equals(row.status(), intent.getStatus()) || !Objects.equals(row.amount(), intent.getAmount())) {
+			ok = false;
+			run.found(Mismatch.STATUS_DRIFT, piId, row.id(),
+					row.status() + " " + row.amount() + " -> " + intent.getStatus() + " " + intent.getAmount());
+			if (repair && dao.repairFromStripe(piId, intent.getStatus(), intent.getAmount(), intent.toJson()) > 0) {
+				run.repaired.incrementAndGet();
+			}
+		}
+
+		String email = row.email();
+		if (email == null || email.isBlank()) {
+			ok = false;
+			email = intent.getMetadata() != null ? intent.getMetadata().get(PaymentService.METADATA_EMAIL) : null;
+			run.found(Mismatch.MISSING_EMAIL, piId, row.id(), email != null ? "metadata: " + email : "sin email en Stripe");
+			if (repair && email != null && dao.attachEmail(piId, email) > 0) {
+				run.repaired.incrementAndGet();
+			}
+		}
+
+		if (StripeTransaction.STATUS_SUCCEEDED.equals(intent.getStatus()) && row.confirmedAt() == null) {
+			ok = false;
+			run.found(Mismatch.UNCONFIRMED, piId, row.id(), row.kind() + " " + email);
+			// Sin tipo (transacción antigua que la migración no pudo clasificar) solo se informa
+			if (repair && email != null && row.kind() != null) {
+				// La misma confirmación que haría el cliente: activa la suscripción o registra la canción
+				double euros = intent.getAmount() / 100.0;
+				if (row.kind() == PaymentKind.SUBSCRIPTION) {
+					paymentService.confirmSubscription(email, piId, euros, row.id());
+				} else {
+					paymentService.confirmSongPayment(email, piId, euros, row.id(), row.trackUri());
+				}
+				run.repaired.incrementAndGet();
+			}
+		}
+
+		if (ok) {
+			run.matched.incrementAndGet();
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("running", running.get());
+		Report report = lastReport;
+		if (report != null) {
+			stats.put("from", report.from().toString());
+			stats.put("to", report.to().toString());
+			stats.put("scanned", report.scanned());
+			stats.put("matched", report.matched());
+			stats.put("mismatches", report.mismatches());
+			stats.put("repaired", report.repaired());
+			stats.put("errors", report.errors());
+		}
+		return stats;
+	}
+}
@@ -0,0 +1,112 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+
+/**
+ * Recibe los eventos de Stripe. Solo se aceptan si la cabecera {@code Stripe-Signature} es
+ * válida para {@code app.stripe.webhook-secret}; los {@code payment_intent.succeeded} se
+ * guardan en {@link StripeTransaction} para que las confirmaciones se respondan sin salir a
+ * Stripe. Stripe reintenta ante cualquier respuesta que no sea 2xx, así que los eventos
+ * repetidos o de PaymentIntents que no son nuestros se aceptan sin hacer nada.
+ */
+@Service
+public class StripeWebhookService {
+
+	private static final Logger logger = LoggerFactory.getLogger(StripeWebhookService.class);
+
+	static final String PAYMENT_INTENT_SUCCEEDED = "payment_intent.succeeded";
+
+	@Autowired
+	private StripeTransactionDao dao;
+
+	@Value("${app.stripe.webhook-secret:${STRIPE_WEBHOOK_SECRET:}}")
+	private String webhookSecret;
+
+	// Margen para la marca de tiempo firmada, contra reenvíos de eventos antiguos
+	@Value("${app.stripe.webhook-tolerance-seconds:300}")
+	private long toleranceSeconds;
+
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong unmatched = new AtomicLong();
+	private final AtomicLong ignored = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Verifica y procesa un evento.
+	 * 
+	 * @param payload Cuerpo de la petición tal cual llegó (la firma es sobre los bytes exactos)
+	 * @param signature Cabecera Stripe-Signature
+	 */
+	public void handle(String payload, String signature) {
+		if (webhookSecret == null || webhookSecret.isBlank()) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Webhook de Stripe no configurado");
+		}
+		Event event;
+		try {
+			event = Webhook.constructEvent(payload, signature, webhookSecret, toleranceSeconds);
+		} catch (SignatureVerificationException e) {
+			rejected.incrementAndGet();
+			logger.warn("Evento de Stripe rechazado: {}", e.getMessage());
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Firma no válida");
+		} catch (RuntimeException e) {
+			rejected.incrementAndGet();
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Evento mal formado");
+		}
+		received.incrementAndGet();
+
+		if (!PAYMENT_INTENT_SUCCEEDED.equals(event.getType())) {
+			ignored.incrementAndGet();
+			return;
+		}
+		// Se usa el JSON tal cual: deserializarlo a PaymentIntent exige que la versión de la API coincida
+		JSONObject intent = new JSONObject(event.getDataObjectDeserializer().getRawJson());
+		record(intent);
+	}
+
+	void record(JSONObject intent) {
+		String paymentIntentId = intent.getString("id");
+		String status = intent.optString("status", StripeTransaction.STATUS_SUCCEEDED);
+		Long amount = intent.has("amount") ? intent.getLong("amount") : null;
+		if (dao.updateStatus(paymentIntentId, status, amount, intent.toString()) == 1) {
+			recorded.incrementAndGet();
+			logger.info("PaymentIntent {} registrado como {}", paymentIntentId, status);
+		} else if (dao.existsByPaymentIntentId(paymentIntentId)) {
+			duplicates.incrementAndGet();
+		} else {
+			unmatched.incrementAndGet();
+			logger.warn("Evento para un PaymentIntent desconocido: {}", paymentIntentId);
+		}
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("configured", webhookSecret != null && !webhookSecret.isBlank());
+		stats.put("received", received.get());
+		stats.put("recorded", recorded.get());
+		stats.put("duplicates", duplicates.get());
+		stats.put("unmatched", unmatched.get());
+		stats.put("ignored", ignored.get());
+		stats.put("rejected", rejected.get());
+		return stats;
+	}
+}
@@ -0,0 +1,84 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.mail.EmailTemplateRegistry;
+import daniel.uclm.esi.gramola.models.UserProfile;
+import daniel.uclm.esi.gramola.subscription.SubscriptionIndex;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Lo que ocurre cuando {@link SubscriptionIndex} avisa de que ha caducado una suscripción: se
+ * invalida el perfil cacheado y se encola el correo {@code subscription-expiry} para el bar.
+ */
+@Service
+public class SubscriptionExpiryNotifier {
+
+	private static final Logger logger = LoggerFactory.getLogger(SubscriptionExpiryNotifier.class);
+
+	private static final DateTimeFormatter FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+	@Autowired
+	private SubscriptionIndex subscriptionIndex;
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private EmailOutboxService emailOutboxService;
+
+	@Autowired
+	private EmailTemplateRegistry emailTemplates;
+
+	@Value("${app.subscriptions.expiry-email.enabled:true}")
+	private boolean emailEnabled;
+
+	@Value("${app.frontend.url:http://localhost:4200}")
+	private String frontendUrl;
+
+	private final AtomicLong notified = new AtomicLong();
+
+	@PostConstruct
+	void init() {
+		subscriptionIndex.addExpiryListener(this::onExpired);
+	}
+
+	void onExpired(String email, LocalDateTime expiry) {
+		userCache.invalidate(email);
+		if (!emailEnabled) return;
+
+		Optional<UserProfile> user = userCache.get(email);
+		if (user.isEmpty()) return;
+		// Se pudo renovar justo antes del aviso (el índice guarda milisegundos: margen de un segundo)
+		LocalDateTime actual = user.get().subscriptionExpiry();
+		if (actual != null && actual.isAfter(expiry.plusSeconds(1))) return;
+
+		String nombreBar = user.get().nombreBar();
+		String html = emailTemplates.render("subscription-expiry", Map.of(
+			"nombreBar", nombreBar != null ? nombreBar : email,
+			"estado", "ha caducado",
+			"fechaExpiracion", expiry.format(FECHA),
+			"renewUrl", frontendUrl + "/payments"));
+		emailOutboxService.enqueueHtml(email, "Tu suscripción a Gramola ha caducado", html);
+		notified.incrementAndGet();
+		logger.info("Aviso de suscripción caducada encolado para {}", email);
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>(subscriptionIndex.stats());
+		stats.put("notified", notified.get());
+		return stats;
+	}
+}
@@ -0,0 +1,180 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import daniel.uclm.esi.gramola.crypto.TokenCipher;
+import daniel.uclm.esi.gramola.dao.JobCheckpointDao;
+import daniel.uclm.esi.gramola.models.JobCheckpoint;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Vuelve a cifrar los tokens de Spotify de todos los usuarios con el formato y la clave
+ * actuales de {@link TokenCipher}. Recorre la tabla por lotes paginados por email,
+ * escribe cada lote con un batch UPDATE de JDBC y guarda un checkpoint tras cada lote,
+ * de modo que tras una caída continúa donde se quedó. Entre lotes hace una pausa para
+ * no competir con el tráfico normal.
+ */
+@Service
+public class TokenReencryptionJob implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(TokenReencryptionJob.class);
+
+	static final String JOB_NAME = "token-reencryption";
+
+	private static final String SELECT_BATCH = "SELECT email, spotify_access_token, spotify_private_token "
+			+ "FROM user WHERE email > ? ORDER BY email LIMIT ?";
+
+	// Solo se escribe si los valores no han cambiado desde que se leyeron
+	private static final String UPDATE_TOKENS = "UPDATE user SET spotify_access_token = ?, spotify_private_token = ? "
+			+ "WHERE email = ? AND COALESCE(spotify_access_token, '') = ? AND COALESCE(spotify_private_token, '') = ?";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private JobCheckpointDao checkpointDao;
+
+	@Value("${app.crypto.reencrypt.enabled:false}")
+	private boolean enabled;
+
+	@Value("${app.crypto.reencrypt.batch-size:200}")
+	private int batchSize;
+
+	@Value("${app.crypto.reencrypt.pause-ms:250}")
+	private long pauseMs;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+	private volatile boolean stopRequested;
+
+	private final AtomicLong scanned = new AtomicLong();
+	private final AtomicLong reencrypted = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private volatile String lastKey;
+
+	private record TokenRow(String email, String accessToken, String privateToken) {
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (enabled) {
+			start();
+		}
+	}
+
+	/** Arranca el proceso en segundo plano; devuelve false si ya estaba en marcha. */
+	public boolean start() {
+		if (!running.compareAndSet(false, true)) {
+			return false;
+		}
+		stopRequested = false;
+		Thread worker = new Thread(() -> {
+			try {
+				runJob();
+			} catch (Exception e) {
+				logger.error("Error en el recifrado de tokens: {}", e.getMessage(), e);
+			} finally {
+				running.set(false);
+			}
+		}, JOB_NAME);
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+		return true;
+	}
+
+	@PreDestroy
+	public void stop() {
+		stopRequested = true;
+	}
+
+	void runJob() throws InterruptedException {
+		String keyId = TokenCipher.currentKeyId();
+		JobCheckpoint checkpoint = checkpointDao.findById(JOB_NAME).orElseGet(() -> new JobCheckpoint(JOB_NAME));
+		if (!keyId.equals(checkpoint.getMarker())) {
+			// Clave nueva (o primera ejecución): hay que recorrer todos los usuarios
+			checkpoint.restart(keyId);
+		} else if (checkpoint.isCompleted()) {
+			logger.info("Recifrado de tokens ya completado para la clave {}", keyId);
+			return;
+		}
+
+		lastKey = checkpoint.getLastKey() != null ? checkpoint.getLastKey() : "";
+		logger.info("Recifrado de tokens iniciado desde '{}' con la clave {}", lastKey, keyId);
+
+		while (!stopRequested) {
+			List<TokenRow> rows = jdbcTemplate.query(SELECT_BATCH,
+					(rs, i) -> new TokenRow(rs.getString(1), rs.getString(2), rs.getString(3)),
+					lastKey, batchSize);
+			if (rows.isEmpty()) {
+				checkpoint.complete();
+				checkpointDao.save(checkpoint);
+				logger.info("Recifrado de tokens completado: {} revisados, {} recifrados, {} fallidos",
+						scanned.get(), reencrypted.get(), failed.get());
+				return;
+			}
+
+			List<Object[]> updates = new ArrayList<>();
+			for (TokenRow row : rows) {
+				if (TokenCipher.isCurrent(row.accessToken()) && TokenCipher.isCurrent(row.privateToken())) {
+					continue;
+				}
+				try {
+					updates.add(new Object[] {
+						reencrypt(row.accessToken()),
+						reencrypt(row.privateToken()),
+						row.email(),
+						row.accessToken() != null ? row.accessToken() : "",
+						row.privateToken() != null ? row.privateToken() : ""
+					});
+				} catch (Exception e) {
+					failed.incrementAndGet();
+					logger.warn("No se pudieron recifrar los tokens de {}: {}", row.email(), e.getMessage());
+				}
+			}
+
+			if (!updates.isEmpty()) {
+				int[] results = jdbcTemplate.batchUpdate(UPDATE_TOKENS, updates);
+				for (int result : results) {
+					if (result > 0) reencrypted.incrementAndGet();
+				}
+			}
+
+			scanned.addAndGet(rows.size());
+			lastKey = rows.get(rows.size() - 1).email();
+			checkpoint.advance(lastKey, rows.size());
+			checkpointDao.save(checkpoint);
+
+			Thread.sleep(pauseMs);
+		}
+		logger.info("Recifrado de tokens detenido en '{}'", lastKey);
+	}
+
+	private static String reencrypt(String value) throws Exception {
+		if (TokenCipher.isCurrent(value)) return value;
+		return TokenCipher.encrypt(TokenCipher.decrypt(value));
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("running", running.get());
+		stats.put("scanned", scanned.get());
+		stats.put("reencrypted", reencrypted.get());
+		stats.put("failed", failed.get());
+		stats.put("lastKey", lastKey);
+		return stats;
+	}
+}
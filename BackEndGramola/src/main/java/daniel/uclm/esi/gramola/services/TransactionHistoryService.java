@@ -0,0 +1,104 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.TransactionSummary;
+
+/**
+ * Historial de pagos de un bar, del más reciente al más antiguo. Se pagina por clave: el cursor
+ * es el (createdAt, id) de la última fila servida y la siguiente página empieza justo después,
+ * así que no hay OFFSET y no se saltan ni repiten filas aunque entren pagos nuevos.
+ */
+@Service
+public class TransactionHistoryService {
+
+	public static final int MAX_LIMIT = 200;
+	static final int EXPORT_BATCH_SIZE = 1000;
+
+	@Autowired
+	private StripeTransactionDao dao;
+
+	public record HistoryPage(List<TransactionSummary> items, String nextCursor) {
+	}
+
+	/**
+	 * @param kind null para todos los pagos
+	 * @param cursor null para la primera página; si no, el {@code nextCursor} de la anterior
+	 */
+	public HistoryPage page(String email, PaymentKind kind, String cursor, int limit) {
+		if (limit < 1 || limit > MAX_LIMIT) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit debe estar entre 1 y " + MAX_LIMIT);
+		}
+		// Una fila de más para saber si hay otra página sin contar
+		List<TransactionSummary> rows = fetch(email, kind, decodeCursor(cursor), limit + 1);
+		if (rows.size() <= limit) {
+			return new HistoryPage(rows, null);
+		}
+		List<TransactionSummary> items = rows.subList(0, limit);
+		return new HistoryPage(items, encodeCursor(items.get(limit - 1)));
+	}
+
+	/**
+	 * Recorre todo el historial por lotes de {@value #EXPORT_BATCH_SIZE}; en memoria solo hay
+	 * un lote y no se mantiene abierta ninguna transacción mientras el cliente lee.
+	 */
+	public long export(String email, PaymentKind kind, Consumer<TransactionSummary> sink) {
+		long total = 0;
+		Cursor after = null;
+		List<TransactionSummary> batch;
+		do {
+			batch = fetch(email, kind, after, EXPORT_BATCH_SIZE);
+			for (TransactionSummary row : batch) {
+				sink.accept(row);
+			}
+			total += batch.size();
+			if (!batch.isEmpty()) {
+				TransactionSummary last = batch.get(batch.size() - 1);
+				after = new Cursor(last.createdAt(), last.id());
+			}
+		} while (batch.size() == EXPORT_BATCH_SIZE);
+		return total;
+	}
+
+	private List<TransactionSummary> fetch(String email, PaymentKind kind, Cursor after, int limit) {
+		PageRequest page = PageRequest.of(0, limit);
+		if (kind == null) {
+			return after == null ? dao.findHistory(email, page)
+					: dao.findHistoryAfter(email, after.createdAt(), after.id(), page);
+		}
+		return after == null ? dao.findHistoryByKind(email, kind, page)
+				: dao.findHistoryByKindAfter(email, kind, after.createdAt(), after.id(), page);
+	}
+
+	private record Cursor(LocalDateTime createdAt, String id) {
+	}
+
+	static String encodeCursor(TransactionSummary last) {
+		String raw = last.createdAt() + "|" + last.id();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Cursor decodeCursor(String cursor) {
+		if (cursor == null || cursor.isBlank()) return null;
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			int sep = raw.indexOf('|');
+			return new Cursor(LocalDateTime.parse(raw.substring(0, sep)), raw.substring(sep + 1));
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor no válido");
+		}
+	}
+}
@@ -1,16 +1,29 @@
 package daniel.uclm.esi.gramola.services;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import daniel.uclm.esi.gramola.cache.SpotifyTokenCache;
+import daniel.uclm.esi.gramola.cache.UserCache;
 import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.geo.BarSpatialIndex;
+import daniel.uclm.esi.gramola.geo.Geofence;
+import daniel.uclm.esi.gramola.geo.GeofenceRegistry;
+import daniel.uclm.esi.gramola.mail.EmailTemplateRegistry;
+import daniel.uclm.esi.gramola.models.GeocodingStatus;
+import daniel.uclm.esi.gramola.models.SpotifyCredentials;
 import daniel.uclm.esi.gramola.models.User;
+import daniel.uclm.esi.gramola.models.UserProfile;
+import daniel.uclm.esi.gramola.subscription.SubscriptionIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,15 +34,46 @@ public class UserService {
     private UserDao userDao;
 
 	@Autowired
-	private EmailService emailService;
+	private UserCache userCache;
+
+	@Autowired
+	private SpotifyTokenCache spotifyTokenCache;
+
+	@Autowired
+	private EmailOutboxService emailOutboxService;
+
+	@Autowired
+	private EmailTemplateRegistry emailTemplates;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
 
 	@Autowired
 	private GeocodingService geocodingService;
 
+	@Autowired
+	private BarGeocodingWorker barGeocodingWorker;
+
+	@Autowired
+	private BarSpatialIndex spatialIndex;
+
+	@Autowired
+	private GeofenceRegistry geofences;
+
+	private static final double MIN_RADIO_GEOCERCA = 10;
+	private static final double MAX_RADIO_GEOCERCA = 5000;
+
+	// Precio máximo por canción en euros: un valor mayor es casi seguro un error (o céntimos)
+	public static final double MAX_COSTE_CANCION = 20;
+
 	@Value("${app.base.url}")
 	private String baseUrl;
 
-    private static final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+	@Autowired
+	private PasswordHasher passwordHasher;
+
+	@Autowired
+	private SubscriptionIndex subscriptionIndex;
 
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
@@ -40,7 +84,7 @@ public class UserService {
 		if (optUser.isEmpty()){
 			User user = new User();
 			user.setEmail(email);
-			user.setPwd(passwordEncoder.encode(pwd));
+			user.setPwd(passwordHasher.encode(pwd));
 			if (firma != null && !firma.isBlank()) {
 				user.setFirma(firma);
 			}
@@ -51,6 +95,7 @@ public class UserService {
 				user.setUbicacionBar(ubicacionBar);
 			}
 			if (costeCancion != null) {
+				validarCosteCancion(costeCancion);
 				user.setCosteCancion(costeCancion);
 			}
 			try {
@@ -74,35 +119,40 @@ public class UserService {
 				logger.error("Error setting API tokens during registration for {}: {}", email, ex.getMessage(), ex);
 				throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error al guardar los tokens");
 			}
-			this.userDao.save(user);
-			
-			// Enviar correo de activación
-			try {
-				String token = user.getCreationToken().getID();
-				String activationUrl = baseUrl + "/users/activate/" + email + "?token=" + token;
-				
-				String subject = "Activa tu cuenta en Gramola";
-				String htmlContent = buildActivationEmailHtml(email, activationUrl);
-				
-				emailService.sendHtmlEmail(email, subject, htmlContent);
-				logger.info("Correo de activación enviado a: {}", email);
-			} catch (Exception e) {
-				logger.error("Error al enviar correo de activación a {}: {}", email, e.getMessage(), e);
-				// No lanzamos excepción para no interrumpir el registro
-			}
+			String token = user.getCreationToken().getID();
+			String activationUrl = baseUrl + "/users/activate/" + email + "?token=" + token;
+			String subject = "Activa tu cuenta en Gramola";
+			String htmlContent = emailTemplates.render("activation", Map.of(
+				"email", email,
+				"activationUrl", activationUrl));
+
+			// El usuario y su correo de activación se guardan en la misma transacción;
+			// el envío SMTP lo hace después EmailOutboxService
+			transactionTemplate.executeWithoutResult(status -> {
+				this.userDao.save(user);
+				this.emailOutboxService.enqueueHtml(email, subject, htmlContent);
+			});
+			this.userCache.invalidate(email);
+			this.spotifyTokenCache.invalidate(email);
+			this.subscriptionIndex.put(email, user.getSubscriptionExpiry());
+			logger.info("Correo de activación encolado para: {}", email);
 		}else{
 			throw new ResponseStatusException(HttpStatus.CONFLICT, "El usuario ya existe");
 		}
 	}
 
     public void login(String email, String pwd) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()){
-			User user = optUser.get();
-			boolean matches = passwordEncoder.matches(pwd, user.getPwd());
+		Optional<String> optPwd = userDao.findPwdByEmail(email);
+		if (optPwd.isPresent()){
+			String currentPwd = optPwd.get();
+			boolean matches = passwordHasher.matches(pwd, currentPwd);
 			if (!matches) {
 				throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Contraseña incorrecta");
 			}
+			// Si el hash usa un coste antiguo se recalcula en segundo plano
+			if (passwordHasher.needsRehash(currentPwd)) {
+				passwordHasher.rehashInBackground(pwd, newPwd -> userDao.updatePwdIfUnchanged(email, currentPwd, newPwd));
+			}
 		}else{
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
@@ -133,41 +183,48 @@ public class UserService {
 		if (optUser.isPresent()) {
 			User user = optUser.get();
 			userDao.delete(user);
+			userCache.invalidate(email);
+			spatialIndex.remove(email);
+			geofences.remove(email);
+			subscriptionIndex.remove(email);
+			spotifyTokenCache.invalidate(email);
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
     }
 
+	@Transactional
 	public void activate(String email, String token){
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()){
-			User user = optUser.get();
-			if (user.getCreationToken().equals(token)){
-				user.setActivate();
-				userDao.save(user);
-			}else{
-				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Token incorrecto");
-			}
-		}else{
+		long now = System.currentTimeMillis();
+		if (userDao.activateCreationToken(email, token, now) == 1) {
+			userDao.markActivated(email, now);
+			userCache.invalidate(email);
+			return;
+		}
+		// Solo si el UPDATE no afectó a ninguna fila averiguamos el motivo
+		Optional<String> optToken = userDao.findCreationTokenIdByEmail(email);
+		if (optToken.isEmpty()){
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
+		if (!optToken.get().equals(token)){
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Token incorrecto");
+		}
+		// El token ya estaba usado: la cuenta ya está activa
 	}
 
 	public boolean isUserActive(String email) {
-		Optional<User> optUser = userDao.findById(email);
+		Optional<UserProfile> optUser = userCache.get(email);
 		if (optUser.isPresent()) {
-			User user = optUser.get();
-			return user.isActive();
+			return optUser.get().active();
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
 	}
 
 	public String getActivationUrl(String email) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()) {
-			User user = optUser.get();
-			String token = user.getCreationToken().getID();
+		Optional<String> optToken = userDao.findCreationTokenIdByEmail(email);
+		if (optToken.isPresent()) {
+			String token = optToken.get();
 			return baseUrl + "/users/activate/" + email + "?token=" + token;
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
@@ -175,120 +232,160 @@ public class UserService {
 	}
 
     public String getSpotifyAccessToken(String email) throws Exception {
-        Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()){
-			User user = optUser.get();
-			return user.getSpotifyAccessToken();
-		}else{
-			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
-		}
+        return getSpotifyCredentials(email).accessToken();
     }
 
     public String getSpotifyPrivateToken(String email) throws Exception {
-        Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()){
-			User user = optUser.get();
-			return user.getSpotifyPrivateToken();
+        return getSpotifyCredentials(email).privateToken();
+    }
+
+    /**
+     * Devuelve los dos tokens de Spotify descifrados, desde la caché si es posible.
+     */
+    public SpotifyCredentials getSpotifyCredentials(String email) {
+        Optional<SpotifyCredentials> optTokens = spotifyTokenCache.get(email);
+		if (optTokens.isPresent()){
+			return optTokens.get();
 		}else{
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
     }
 
 	/**
-	 * Devuelve true si el usuario tiene una suscripción activa (expiry > now).
+	 * Devuelve true si el usuario tiene una suscripción activa (expiry > now). Responde el
+	 * índice de suscripciones; solo se lee el perfil si el bar no está en él.
 	 */
 	public boolean hasActiveSubscription(String email) {
-		Optional<User> optUser = userDao.findById(email);
+		Boolean active = subscriptionIndex.isActive(email);
+		if (active != null) {
+			return active;
+		}
+		Optional<UserProfile> optUser = userCache.get(email);
 		if (optUser.isPresent()) {
-			User user = optUser.get();
-			return user.hasActiveSubscription();
+			return optUser.get().hasActiveSubscription();
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
 	}
 
 	public java.util.Map<String, Object> getUserData(String email) {
-		Optional<User> optUser = userDao.findById(email);
+		Optional<UserProfile> optUser = userCache.get(email);
 		if (optUser.isPresent()) {
-			User user = optUser.get();
+			UserProfile user = optUser.get();
 			java.util.Map<String, Object> userData = new java.util.HashMap<>();
-			userData.put("email", user.getEmail());
-			userData.put("isActive", user.isActive());
+			userData.put("email", user.email());
+			userData.put("isActive", user.active());
 			userData.put("hasActiveSubscription", user.hasActiveSubscription());
-			userData.put("subscriptionExpiry", user.getSubscriptionExpiry());
-			userData.put("ubicacionBar", user.getUbicacionBar());
-			userData.put("nombreBar", user.getNombreBar());
-			userData.put("costeCancion", user.getCosteCancion());
-			userData.put("latitud", user.getLatitud());
-			userData.put("longitud", user.getLongitud());
+			userData.put("subscriptionExpiry", user.subscriptionExpiry());
+			userData.put("ubicacionBar", user.ubicacionBar());
+			userData.put("nombreBar", user.nombreBar());
+			userData.put("costeCancion", user.costeCancion());
+			userData.put("latitud", user.latitud());
+			userData.put("longitud", user.longitud());
+			userData.put("geocodingStatus", user.geocodingStatusName());
+			userData.put("radioGeocerca", user.radioGeocerca() != null ? user.radioGeocerca() : geofences.getDefaultRadius());
+			userData.put("geocercaPoligono", GeofenceRegistry.parsePolygon(user.geocercaPoligono()));
 			return userData;
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
 	}
 
-	public void setBarData(String email, String ubicacionBar, String nombreBar) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()) {
-			User user = optUser.get();
-			user.setUbicacionBar(ubicacionBar);
-			user.setNombreBar(nombreBar);
-			
-			// Obtener coordenadas de la ubicación
-			try {
-				double[] coordenadas = geocodingService.obtenerCoordenadas(ubicacionBar);
-				user.setLatitud(coordenadas[0]);
-				user.setLongitud(coordenadas[1]);
-				logger.info("Coordenadas actualizadas para el bar '{}': lat={}, lon={}", 
-					nombreBar, coordenadas[0], coordenadas[1]);
-			} catch (Exception e) {
-				logger.error("Error al obtener coordenadas para '{}': {}", ubicacionBar, e.getMessage());
-				// No lanzamos excepción para permitir guardar los datos del bar sin coordenadas
-				// Opcionalmente podrías descomentar la siguiente línea si quieres que falle:
-				// throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No se pudieron obtener las coordenadas: " + e.getMessage());
-			}
-			
-			userDao.save(user);
+	/**
+	 * Guarda los datos del bar sin esperar a Photon. Si la dirección ya está en la caché de
+	 * geocodificación se guardan también las coordenadas; si no, quedan pendientes y las
+	 * calcula {@link BarGeocodingWorker}.
+	 * 
+	 * @return estado de las coordenadas tras el cambio ("NONE" si no hay dirección)
+	 */
+	public String setBarData(String email, String ubicacionBar, String nombreBar) {
+		// Si el usuario no existe ningún UPDATE afecta a filas
+		int updated;
+		boolean pendiente = false;
+		double[] coordenadas = null;
+		boolean conservaCoordenadas = false;
+		if (ubicacionBar == null || ubicacionBar.isBlank()) {
+			updated = userDao.updateBarData(email, ubicacionBar, nombreBar);
+			conservaCoordenadas = true;
+		} else if (userDao.updateBarNameIfSameAddress(email, ubicacionBar, nombreBar) == 1) {
+			// Misma dirección que la guardada en BD (el perfil en caché puede estar atrasado):
+			// las coordenadas siguen valiendo
+			updated = 1;
+			conservaCoordenadas = true;
 		} else {
+			coordenadas = geocodingService.obtenerCoordenadasCacheadas(ubicacionBar);
+			if (coordenadas != null) {
+				updated = userDao.updateBarDataWithCoordinates(email, ubicacionBar, nombreBar, coordenadas[0], coordenadas[1]);
+			} else {
+				updated = userDao.updateBarDataPendingGeocoding(email, ubicacionBar, nombreBar, java.time.LocalDateTime.now());
+				pendiente = true;
+			}
+		}
+		userCache.invalidate(email);
+		if (updated == 0) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
+		if (conservaCoordenadas) {
+			// Las coordenadas que quedaron en BD, no las del perfil que había en caché
+			coordenadas = userCache.get(email).filter(UserProfile::hasCoordinates)
+				.map(u -> new double[]{u.latitud(), u.longitud()}).orElse(null);
+		}
+		if (coordenadas != null) {
+			spatialIndex.put(email, nombreBar, coordenadas[0], coordenadas[1]);
+		} else {
+			spatialIndex.remove(email);
+		}
+		if (pendiente) {
+			barGeocodingWorker.wakeUp();
+			return GeocodingStatus.PENDING.name();
+		}
+		if (ubicacionBar == null || ubicacionBar.isBlank()) {
+			return "NONE";
+		}
+		return GeocodingStatus.RESOLVED.name();
 	}
 
 	public void setCosteCancion(String email, Double costeCancion) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()) {
-			User user = optUser.get();
-			user.setCosteCancion(costeCancion);
-			userDao.save(user);
+		validarCosteCancion(costeCancion);
+		if (userDao.updateCosteCancion(email, costeCancion) == 1) {
+			userCache.invalidate(email);
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
 	}
 
+	private static void validarCosteCancion(Double costeCancion) {
+		if (costeCancion == null || !(costeCancion >= 0 && costeCancion <= MAX_COSTE_CANCION)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+				"El coste de la canción debe estar entre 0 y " + (int) MAX_COSTE_CANCION + " euros");
+		}
+	}
+
 	public Double getCosteCancion(String email) {
-		Optional<User> optUser = userDao.findById(email);
+		Optional<UserProfile> optUser = userCache.get(email);
 		if (optUser.isPresent()) {
-			User user = optUser.get();
-			return user.getCosteCancion();
+			return optUser.get().costeCancion();
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
 	}
 
 	public void updatePassword(String email, String oldPassword, String newPassword) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()) {
-			User user = optUser.get();
+		Optional<String> optPwd = userDao.findPwdByEmail(email);
+		if (optPwd.isPresent()) {
+			String currentPwd = optPwd.get();
 			
 			// Verificar que la contraseña antigua es correcta
-			boolean matches = passwordEncoder.matches(oldPassword, user.getPwd());
+			boolean matches = passwordHasher.matches(oldPassword, currentPwd);
 			if (!matches) {
 				throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "La contraseña actual es incorrecta");
 			}
 			
 			// Actualizar a la nueva contraseña
-			user.setPwd(passwordEncoder.encode(newPassword));
-			userDao.save(user);
+			// Si otra petición cambió la contraseña entretanto, el UPDATE no afecta a ninguna fila
+			if (userDao.updatePwdIfUnchanged(email, currentPwd, passwordHasher.encode(newPassword)) == 0) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT, "La contraseña se ha modificado simultáneamente, inténtalo de nuevo");
+			}
 			logger.info("Contraseña actualizada para usuario: {}", email);
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
@@ -296,124 +393,64 @@ public class UserService {
 	}
 
 	/**
-	 * Verifica si unas coordenadas están dentro del radio de 100 metros de las coordenadas del bar del usuario.
-	 * Usa la fórmula de Haversine para calcular la distancia entre dos puntos geográficos.
-	 * 
-	 * @param email Email del usuario
-	 * @param latitud Latitud de la ubicación a verificar
-	 * @param longitud Longitud de la ubicación a verificar
-	 * @return true si está dentro del radio de 100 metros, false en caso contrario
+	 * Geocerca compilada del bar: su radio (o polígono) con la caja envolvente y los cosenos ya
+	 * calculados. Se reutiliza entre peticiones mientras el usuario no cambie.
 	 */
-	public boolean checkProximity(String email, Double latitud, Double longitud) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()) {
-			User user = optUser.get();
-			
-			// Verificar que el usuario tiene coordenadas guardadas
-			if (user.getLatitud() == null || user.getLongitud() == null) {
-				throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no tiene coordenadas de bar registradas");
-			}
-			
-			// Calcular distancia usando fórmula de Haversine
-			double distancia = calcularDistanciaHaversine(
-				user.getLatitud(), 
-				user.getLongitud(), 
-				latitud, 
-				longitud
-			);
-			
-			logger.info("Distancia calculada para usuario {}: {} metros", email, distancia);
-			
-			// Verificar si está dentro del radio de 100 metros
-			return distancia <= 100.0;
-		} else {
+	public Geofence getGeofence(String email) {
+		Optional<UserProfile> optUser = userCache.get(email);
+		if (optUser.isEmpty()) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
 		}
+		return getGeofence(optUser.get());
+	}
+
+	/** Igual que {@link #getGeofence(String)} para quien ya tiene el perfil cargado. */
+	public Geofence getGeofence(UserProfile user) {
+		// Verificar que el usuario tiene coordenadas guardadas
+		if (!user.hasCoordinates() && user.geocodingStatus() == GeocodingStatus.PENDING) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "Las coordenadas del bar todavía se están calculando");
+		}
+		if (!user.hasCoordinates()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no tiene coordenadas de bar registradas");
+		}
+		return geofences.get(user);
 	}
 
 	/**
-	 * Calcula la distancia entre dos puntos geográficos usando la fórmula de Haversine.
+	 * Comprueba muchas muestras de posición de una vez contra la misma geocerca.
 	 * 
-	 * @param lat1 Latitud del primer punto
-	 * @param lon1 Longitud del primer punto
-	 * @param lat2 Latitud del segundo punto
-	 * @param lon2 Longitud del segundo punto
-	 * @return Distancia en metros
+	 * @return para cada muestra, si está dentro
 	 */
-	private double calcularDistanciaHaversine(double lat1, double lon1, double lat2, double lon2) {
-		final int RADIO_TIERRA = 6371000; // Radio de la Tierra en metros
-		
-		// Convertir grados a radianes
-		double lat1Rad = Math.toRadians(lat1);
-		double lat2Rad = Math.toRadians(lat2);
-		double deltaLatRad = Math.toRadians(lat2 - lat1);
-		double deltaLonRad = Math.toRadians(lon2 - lon1);
-		
-		// Aplicar fórmula de Haversine
-		double a = Math.sin(deltaLatRad / 2) * Math.sin(deltaLatRad / 2) +
-				   Math.cos(lat1Rad) * Math.cos(lat2Rad) *
-				   Math.sin(deltaLonRad / 2) * Math.sin(deltaLonRad / 2);
-		
-		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-		
-		// Calcular distancia
-		double distancia = RADIO_TIERRA * c;
-		
-		return distancia;
+	public boolean[] checkProximityBatch(String email, double[] latitudes, double[] longitudes) {
+		Geofence fence = getGeofence(email);
+		boolean[] dentro = new boolean[latitudes.length];
+		for (int i = 0; i < latitudes.length; i++) {
+			dentro[i] = fence.contains(latitudes[i], longitudes[i]);
+		}
+		return dentro;
 	}
 
 	/**
-	 * Construye el contenido HTML del correo de activación
+	 * Cambia la geocerca del bar: un radio en metros o, si se da, un polígono [[lat, lon], ...].
 	 */
-	private String buildActivationEmailHtml(String email, String activationUrl) {
-		return """
-			<!DOCTYPE html>
-			<html>
-			<head>
-				<meta charset="UTF-8">
-				<style>
-					body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }
-					.container { max-width: 600px; margin: 0 auto; padding: 20px; }
-					.header { background-color: #4CAF50; color: white; padding: 20px; text-align: center; border-radius: 5px 5px 0 0; }
-					.content { background-color: #f9f9f9; padding: 30px; border: 1px solid #ddd; border-radius: 0 0 5px 5px; }
-					.button { display: inline-block; padding: 12px 30px; background-color: #4CAF50; color: white; text-decoration: none; border-radius: 5px; margin: 20px 0; }
-					.button:hover { background-color: #45a049; }
-					.footer { text-align: center; margin-top: 20px; color: #777; font-size: 12px; }
-				</style>
-			</head>
-			<body>
-				<div class="container">
-					<div class="header">
-						<h1>¡Bienvenido a Gramola!</h1>
-					</div>
-					<div class="content">
-						<h2>Hola,</h2>
-						<p>Gracias por registrarte en Gramola con el email: <strong>%s</strong></p>
-						<p>Para activar tu cuenta, por favor haz clic en el siguiente enlace:</p>
-						<p style="text-align: center;">
-							<a href="%s" class="button">Activar mi cuenta</a>
-						</p>
-						<p>O copia y pega este enlace en tu navegador:</p>
-						<p style="word-break: break-all; background-color: #e9e9e9; padding: 10px; border-radius: 3px;">
-							%s
-						</p>
-						<p><strong>Nota:</strong> Este enlace es único y solo puede usarse una vez.</p>
-					</div>
-					<div class="footer">
-						<p>Este es un correo automático, por favor no responder.</p>
-						<p>&copy; 2026 Gramola - Sistema de música para bares</p>
-					</div>
-				</div>
-			</body>
-			</html>
-			""".formatted(email, activationUrl, activationUrl);
+	public void setGeofence(String email, Double radio, List<double[]> poligono) {
+		if (radio != null && (radio < MIN_RADIO_GEOCERCA || radio > MAX_RADIO_GEOCERCA)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+				"El radio debe estar entre " + (int) MIN_RADIO_GEOCERCA + " y " + (int) MAX_RADIO_GEOCERCA + " metros");
+		}
+		if (userDao.updateGeofence(email, radio, GeofenceRegistry.toJson(poligono)) == 0) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "El usuario no existe");
+		}
+		userCache.invalidate(email);
 	}
 
 	public String getFirma(String email) {
-		Optional<User> optUser = userDao.findById(email);
-		if (optUser.isPresent()) {
-			User user = optUser.get();
-			return user.getFirma();
+		// La firma no pasa por la caché: se lee solo esa columna
+		Optional<String> optFirma = userDao.findFirmaByEmail(email);
+		if (optFirma.isPresent()) {
+			return optFirma.get();
+		} else if (userCache.get(email).isPresent()) {
+			return null;
 		} else {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuario no encontrado");
 		}
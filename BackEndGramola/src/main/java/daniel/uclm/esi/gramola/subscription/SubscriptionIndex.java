@@ -0,0 +1,163 @@
+package daniel.uclm.esi.gramola.subscription;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.SubscriptionExpiry;
+
+/**
+ * Caducidad de la suscripción de cada bar (email → epoch en ms) en memoria. Se carga al arrancar
+ * y lo mantienen al día {@code UserService} y {@code PaymentService} cada vez que escriben
+ * {@code subscriptionExpiry}, así que saber si una suscripción está activa no toca la BD.
+ *
+ * Las suscripciones vigentes están además en una {@link TimerWheel}: cada {@code tick-ms} se
+ * avanza la rueda y se avisa a los oyentes de las que acaban de caducar, sin recorrer la tabla.
+ * Solo se avisa de las que caducan con la aplicación en marcha.
+ */
+@Component
+public class SubscriptionIndex implements ApplicationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(SubscriptionIndex.class);
+
+	@Autowired
+	private UserDao userDao;
+
+	@Value("${app.subscriptions.tick-ms:1000}")
+	private long tickMs;
+
+	private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+	private final List<BiConsumer<String, LocalDateTime>> listeners = new CopyOnWriteArrayList<>();
+	private TimerWheel<String> wheel;
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong listenerErrors = new AtomicLong();
+
+	@Override
+	public void run(ApplicationArguments args) {
+		rebuild();
+	}
+
+	public void rebuild() {
+		List<SubscriptionExpiry> rows = userDao.findSubscriptionExpiries();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			expiries.clear();
+			wheel = new TimerWheel<>(tickMs, now);
+			for (SubscriptionExpiry row : rows) {
+				store(row.getEmail(), toEpochMilli(row.getSubscriptionExpiry()), now);
+			}
+		}
+		logger.info("Índice de suscripciones cargado con {} bares ({} vigentes)", rows.size(), wheel.size());
+	}
+
+	/** Registra una función a la que se llama con (email, caducidad) cuando caduca una suscripción. */
+	public void addExpiryListener(BiConsumer<String, LocalDateTime> listener) {
+		listeners.add(listener);
+	}
+
+	/** Tras escribir la caducidad en BD; {@code null} la quita del índice. */
+	public void put(String email, LocalDateTime expiry) {
+		if (expiry == null) {
+			remove(email);
+			return;
+		}
+		synchronized (this) {
+			store(email, toEpochMilli(expiry), System.currentTimeMillis());
+		}
+	}
+
+	public synchronized void remove(String email) {
+		expiries.remove(email);
+		if (wheel != null) wheel.cancel(email);
+	}
+
+	// Llamar con el monitor tomado
+	private void store(String email, long expiryMillis, long now) {
+		expiries.put(email, expiryMillis);
+		if (wheel == null) return;
+		if (expiryMillis > now) {
+			wheel.schedule(email, expiryMillis);
+		} else {
+			wheel.cancel(email);
+		}
+	}
+
+	/**
+	 * @return si la suscripción está activa, o null si el bar no está en el índice (no existe o
+	 *         nunca ha tenido caducidad) y hay que preguntar a la BD
+	 */
+	public Boolean isActive(String email) {
+		lookups.incrementAndGet();
+		Long expiry = expiries.get(email);
+		if (expiry == null) return null;
+		return expiry > System.currentTimeMillis();
+	}
+
+	@Scheduled(fixedDelayString = "${app.subscriptions.tick-ms:1000}")
+	public void tick() {
+		advance(System.currentTimeMillis());
+	}
+
+	void advance(long now) {
+		Map<String, Long> fired = new LinkedHashMap<>();
+		synchronized (this) {
+			if (wheel == null) return;
+			for (String email : wheel.advance(now)) {
+				Long expiry = expiries.get(email);
+				if (expiry != null) fired.put(email, expiry);
+			}
+		}
+		// Los oyentes pueden escribir en BD: se les llama fuera del monitor
+		fired.forEach((email, expiry) -> {
+			expired.incrementAndGet();
+			LocalDateTime at = LocalDateTime.ofInstant(Instant.ofEpochMilli(expiry), ZoneId.systemDefault());
+			for (BiConsumer<String, LocalDateTime> listener : listeners) {
+				try {
+					listener.accept(email, at);
+				} catch (RuntimeException e) {
+					listenerErrors.incrementAndGet();
+					logger.warn("Error al procesar la caducidad de la suscripción de {}: {}", email, e.getMessage());
+				}
+			}
+		});
+	}
+
+	private static long toEpochMilli(LocalDateTime dateTime) {
+		return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	public int size() {
+		return expiries.size();
+	}
+
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("bars", size());
+		synchronized (this) {
+			stats.put("scheduled", wheel != null ? wheel.size() : 0);
+		}
+		stats.put("lookups", lookups.get());
+		stats.put("expired", expired.get());
+		stats.put("listenerErrors", listenerErrors.get());
+		return stats;
+	}
+}
@@ -0,0 +1,134 @@
+package daniel.uclm.esi.gramola.subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rueda de temporizadores jerárquica: {@value #LEVELS} niveles de {@value #SLOTS} ranuras, donde
+ * cada ranura del nivel n abarca {@code SLOTS^n} ticks. Un temporizador se guarda en el nivel
+ * más bajo cuyo alcance cubre su plazo y baja de nivel cuando la rueda llega a su ranura, así
+ * que programar, cancelar y avanzar un tick cuestan O(1) sin recorrer todos los plazos.
+ * <p>
+ * Con ticks de un segundo cubre unos 194 días; los plazos más lejanos esperan en la última
+ * ranura del nivel superior y se recolocan al pasar por ella. No es thread-safe.
+ */
+public class TimerWheel<K> {
+
+	static final int LEVELS = 4;
+	static final int SLOTS = 64;
+	private static final int BITS = 6;
+	private static final long SPAN = 1L << (BITS * LEVELS);
+
+	private record Position(int level, int slot) {
+	}
+
+	private final long tickMs;
+	private final List<Map<K, Long>> slots = new ArrayList<>(LEVELS * SLOTS);
+	private final Map<K, Position> positions = new HashMap<>();
+	private long currentTick;
+
+	public TimerWheel(long tickMs, long startMs) {
+		if (tickMs <= 0) throw new IllegalArgumentException("tickMs debe ser positivo");
+		this.tickMs = tickMs;
+		this.currentTick = startMs / tickMs;
+		for (int i = 0; i < LEVELS * SLOTS; i++) {
+			slots.add(new HashMap<>());
+		}
+	}
+
+	/** Programa (o reprograma) {@code key} para {@code deadlineMs}. */
+	public void schedule(K key, long deadlineMs) {
+		cancel(key);
+		// Redondeo hacia arriba: nunca vence antes de su plazo. Los ya vencidos saltan en el
+		// siguiente tick, porque la ranura del tick actual ya se ha procesado
+		place(key, Math.floorDiv(deadlineMs + tickMs - 1, tickMs), currentTick + 1);
+	}
+
+	public boolean cancel(K key) {
+		Position position = positions.remove(key);
+		if (position == null) return false;
+		slots.get(position.level() * SLOTS + position.slot()).remove(key);
+		return true;
+	}
+
+	public boolean contains(K key) {
+		return positions.containsKey(key);
+	}
+
+	public int size() {
+		return positions.size();
+	}
+
+	/**
+	 * Avanza la rueda hasta {@code nowMs} y devuelve las claves vencidas, en el orden en que
+	 * vencieron. El coste es proporcional a los ticks transcurridos, no a los temporizadores.
+	 */
+	public List<K> advance(long nowMs) {
+		long target = Math.floorDiv(nowMs, tickMs);
+		List<K> expired = new ArrayList<>();
+		if (positions.isEmpty()) {
+			currentTick = Math.max(currentTick, target);
+			return expired;
+		}
+		while (currentTick < target) {
+			currentTick++;
+			// Al empezar una vuelta de un nivel se baja la ranura que toca del nivel superior,
+			// de arriba abajo para que lo que cae de un nivel se reparta en el siguiente
+			int top = 0;
+			while (top + 1 < LEVELS && (currentTick & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+				top++;
+			}
+			for (int level = top; level >= 1; level--) {
+				cascade(level, slotIndex(currentTick, level));
+			}
+			Map<K, Long> due = slots.get(slotIndex(currentTick, 0));
+			if (!due.isEmpty()) {
+				for (K key : due.keySet()) {
+					positions.remove(key);
+					expired.add(key);
+				}
+				due.clear();
+			}
+			if (positions.isEmpty()) {
+				currentTick = target;
+			}
+		}
+		return expired;
+	}
+
+	private void cascade(int level, int slot) {
+		Map<K, Long> bucket = slots.get(level * SLOTS + slot);
+		if (bucket.isEmpty()) return;
+		Map<K, Long> moved = new HashMap<>(bucket);
+		bucket.clear();
+		// Se está procesando currentTick: lo que vence ahora va a su ranura, que se lee a continuación
+		moved.forEach((key, deadlineTick) -> place(key, deadlineTick, currentTick));
+	}
+
+	private void place(K key, long deadlineTick, long earliestTick) {
+		long delta = deadlineTick - currentTick;
+		int level;
+		int slot;
+		if (delta < SLOTS) {
+			level = 0;
+			slot = slotIndex(Math.max(deadlineTick, earliestTick), 0);
+		} else if (delta >= SPAN) {
+			level = LEVELS - 1;
+			slot = slotIndex(currentTick + SPAN - 1, level);
+		} else {
+			level = 1;
+			while (delta >= 1L << (BITS * (level + 1))) {
+				level++;
+			}
+			slot = slotIndex(deadlineTick, level);
+		}
+		slots.get(level * SLOTS + slot).put(key, deadlineTick);
+		positions.put(key, new Position(level, slot));
+	}
+
+	private static int slotIndex(long tick, int level) {
+		return (int) ((tick >>> (BITS * level)) & (SLOTS - 1));
+	}
+}
@@ -0,0 +1,89 @@
+package daniel.uclm.esi.gramola.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import daniel.uclm.esi.gramola.geo.BarSpatialIndex;
+import daniel.uclm.esi.gramola.geo.GeoMath;
+
+/**
+ * Búsqueda de los 10 bares más cercanos con el índice espacial frente a recorrer todos los bares
+ * calculando el Haversine, con bares repartidos uniformemente por la península.
+ *
+ * Se ejecuta igual que {@link EmailTemplateBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class BarSpatialIndexBenchmark {
+
+	@Param({ "10000", "1000000" })
+	private int bars;
+
+	private BarSpatialIndex index;
+	private double[] lats;
+	private double[] lons;
+	private double[][] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		index = new BarSpatialIndex();
+		ReflectionTestUtils.setField(index, "cellDegrees", 0.01);
+		Random random = new Random(42);
+		lats = new double[bars];
+		lons = new double[bars];
+		for (int i = 0; i < bars; i++) {
+			lats[i] = 36.0 + random.nextDouble() * 7.5;
+			lons[i] = -9.0 + random.nextDouble() * 12.0;
+			index.put("bar" + i, "Bar " + i, lats[i], lons[i]);
+		}
+		queries = new double[1024][];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = new double[] { 36.0 + random.nextDouble() * 7.5, -9.0 + random.nextDouble() * 12.0 };
+		}
+	}
+
+	@Benchmark
+	public Object indexed() {
+		double[] q = queries[next++ & 1023];
+		return index.nearest(q[0], q[1], 10, 200_000);
+	}
+
+	@Benchmark
+	public double fullScan() {
+		double[] q = queries[next++ & 1023];
+		// Solo el más cercano: es una cota inferior del coste de cualquier k por fuerza bruta
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < bars; i++) {
+			best = Math.min(best, GeoMath.distanciaMetros(q[0], q[1], lats[i], lons[i]));
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(BarSpatialIndexBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,76 @@
+package daniel.uclm.esi.gramola.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import daniel.uclm.esi.gramola.mail.EmailTemplate;
+
+/**
+ * Compara el renderizado de la plantilla de activación precompilada con el antiguo
+ * {@code String.formatted} sobre el HTML completo.
+ *
+ * Ejecución: {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}
+ * y después {@code java -cp target/test-classes:target/classes:$(cat cp.txt)
+ * daniel.uclm.esi.gramola.benchmark.EmailTemplateBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+	private EmailTemplate template;
+	private String formatSource;
+	private Map<String, String> values;
+
+	@Setup
+	public void setup() throws IOException {
+		String source;
+		try (InputStream in = EmailTemplateBenchmark.class.getResourceAsStream("/email-templates/activation.html")) {
+			source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		template = EmailTemplate.compile("activation", source);
+		// Versión equivalente con formatted, como se generaba antes
+		formatSource = source.replace("%", "%%")
+			.replace("{{email}}", "%1$s")
+			.replace("{{activationUrl}}", "%2$s");
+		values = Map.of(
+			"email", "bar@example.com",
+			"activationUrl", "http://localhost:8080/users/activate/bar@example.com?token=3f2b8c1e-7d4a-4e9b-a1c2-9f0e8d7c6b5a");
+	}
+
+	@Benchmark
+	public String formatted() {
+		return formatSource.formatted(values.get("email"), values.get("activationUrl"));
+	}
+
+	@Benchmark
+	public String precompiled() {
+		return template.render(values);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(EmailTemplateBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
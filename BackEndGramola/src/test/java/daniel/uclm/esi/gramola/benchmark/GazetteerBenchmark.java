@@ -0,0 +1,114 @@
+package daniel.uclm.esi.gramola.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+import daniel.uclm.esi.gramola.geocoding.GazetteerIndex;
+
+/**
+ * Latencia de búsqueda en el nomenclátor local (exacta, por prefijo y aproximada) y tamaño del
+ * índice mapeado, sobre un nomenclátor sintético de {@code entries} direcciones.
+ *
+ * Se ejecuta igual que {@link EmailTemplateBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class GazetteerBenchmark {
+
+	private static final String[] VIAS = { "Calle", "Avenida", "Plaza", "Paseo", "Camino", "Ronda" };
+	private static final String[] NOMBRES = { "Mayor", "Toledo", "Alarcos", "Ciruela", "Libertad", "Cervantes",
+			"Real", "Nueva", "Estación", "Castilla", "Mancha", "Quijote", "Sancho", "Dulcinea", "Molinos", "Feria" };
+	private static final String[] MUNICIPIOS = { "Ciudad Real", "Almagro", "Valdepeñas", "Puertollano", "Tomelloso",
+			"Alcázar de San Juan", "Manzanares", "Daimiel", "Miguelturra", "Bolaños de Calatrava" };
+
+	@Param({ "10000", "100000" })
+	private int entries;
+
+	private GazetteerIndex index;
+	private String[] exact;
+	private String[] prefix;
+	private String[] typo;
+	private int next;
+
+	private static String direccion(Random random) {
+		return VIAS[random.nextInt(VIAS.length)] + " " + NOMBRES[random.nextInt(NOMBRES.length)] + " "
+				+ (1 + random.nextInt(400)) + ", " + MUNICIPIOS[random.nextInt(MUNICIPIOS.length)] + ", España";
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Path dir = Files.createTempDirectory("gazetteer");
+		Path source = dir.resolve("es.tsv");
+		Random random = new Random(42);
+		try (BufferedWriter out = Files.newBufferedWriter(source)) {
+			for (int i = 0; i < entries; i++) {
+				out.write(direccion(random) + " " + i + "\t" + (38 + random.nextDouble()) + "\t" + (-4 + random.nextDouble()) + "\n");
+			}
+		}
+		long start = System.nanoTime();
+		GazetteerIndex.build(source, dir.resolve("es.idx"));
+		long buildMillis = (System.nanoTime() - start) / 1_000_000;
+		index = GazetteerIndex.open(dir.resolve("es.idx"));
+		System.out.printf("%n[gazetteer] %d direcciones: índice de %.1f MB mapeados, generado en %d ms%n",
+				index.size(), index.mappedBytes() / 1024.0 / 1024.0, buildMillis);
+
+		random = new Random(42);
+		exact = new String[1024];
+		prefix = new String[1024];
+		typo = new String[1024];
+		for (int i = 0; i < exact.length; i++) {
+			String dir0 = direccion(random) + " " + i;
+			random.nextDouble();
+			random.nextDouble();
+			exact[i] = GeocodingCache.normalizar(dir0);
+			prefix[i] = exact[i].substring(0, exact[i].lastIndexOf(" spain"));
+			typo[i] = exact[i].substring(0, 4) + exact[i].charAt(5) + exact[i].charAt(4) + exact[i].substring(6);
+		}
+	}
+
+	@Benchmark
+	public Object exactLookup() {
+		return index.lookup(exact[next++ & 1023], 0.75);
+	}
+
+	@Benchmark
+	public Object prefixLookup() {
+		return index.lookup(prefix[next++ & 1023], 0.75);
+	}
+
+	@Benchmark
+	public Object approximateLookup() {
+		return index.lookup(typo[next++ & 1023], 0.75);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(GazetteerBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,112 @@
+package daniel.uclm.esi.gramola.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import daniel.uclm.esi.gramola.services.SmtpTransportPool;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Envío de un correo a un servidor SMTP local (GreenMail) abriendo una conexión por mensaje,
+ * como hace {@code JavaMailSender}, frente a reutilizar una conexión de {@link SmtpTransportPool}.
+ *
+ * Se ejecuta igual que {@link EmailTemplateBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmtpPoolBenchmark {
+
+	private GreenMail greenMail;
+	private JavaMailSenderImpl mailSender;
+	private SmtpTransportPool pool;
+
+	@Setup
+	public void setup() {
+		greenMail = new GreenMail(ServerSetupTest.SMTP);
+		greenMail.start();
+		mailSender = new JavaMailSenderImpl();
+		mailSender.setHost("localhost");
+		mailSender.setPort(ServerSetupTest.SMTP.getPort());
+
+		pool = new SmtpTransportPool();
+		ReflectionTestUtils.setField(pool, "mailSender", mailSender);
+		ReflectionTestUtils.setField(pool, "size", 1);
+		ReflectionTestUtils.setField(pool, "idleTimeoutMs", 60_000L);
+		ReflectionTestUtils.setField(pool, "validateAfterMs", 5_000L);
+		ReflectionTestUtils.setField(pool, "borrowTimeoutMs", 10_000L);
+		ReflectionTestUtils.invokeMethod(pool, "init");
+	}
+
+	// GreenMail guarda todo lo recibido en memoria
+	@TearDown(Level.Iteration)
+	public void purge() throws Exception {
+		greenMail.purgeEmailFromAllMailboxes();
+	}
+
+	@TearDown
+	public void tearDown() {
+		ReflectionTestUtils.invokeMethod(pool, "shutdown");
+		greenMail.stop();
+	}
+
+	private MimeMessage message(String subject) throws MessagingException {
+		MimeMessage message = mailSender.createMimeMessage();
+		MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+		helper.setFrom("gramola@test.local");
+		helper.setTo("bar@gramola.test");
+		helper.setSubject(subject);
+		helper.setText("<p>Hola</p>", true);
+		return message;
+	}
+
+	@Benchmark
+	public void unpooled() throws MessagingException {
+		mailSender.send(message("Sin pool"));
+	}
+
+	@Benchmark
+	public void pooled() throws MessagingException {
+		MimeMessage message = message("Con pool");
+		message.saveChanges();
+		SmtpTransportPool.PooledTransport pooled = pool.borrow();
+		boolean broken = true;
+		try {
+			pooled.transport().sendMessage(message, message.getAllRecipients());
+			broken = false;
+		} finally {
+			pool.release(pooled, broken);
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+			.include(SmtpPoolBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
@@ -0,0 +1,88 @@
+package daniel.uclm.esi.gramola.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+class IdempotencyCacheTest {
+
+	private IdempotencyCache cache;
+
+	@BeforeEach
+	void setUp() {
+		cache = new IdempotencyCache();
+		ReflectionTestUtils.setField(cache, "maxSize", 100);
+		ReflectionTestUtils.setField(cache, "ttlMinutes", 10L);
+		cache.init();
+	}
+
+	@Test
+	void retryWithSameKeyReplaysFirstResponse() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		assertEquals(1, (int) cache.execute("op", "k", calls::incrementAndGet));
+		assertEquals(1, (int) cache.execute("op", "k", calls::incrementAndGet));
+		// Otra operación o ninguna clave: se ejecuta
+		assertEquals(2, (int) cache.execute("otra", "k", calls::incrementAndGet));
+		assertEquals(3, (int) cache.execute("op", null, calls::incrementAndGet));
+	}
+
+	@Test
+	void concurrentDuplicateWaitsForFirst() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cache.execute("op", "k", () -> {
+					running.countDown();
+					release.await();
+					return calls.incrementAndGet();
+				});
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		running.await(5, TimeUnit.SECONDS);
+		CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cache.execute("op", "k", calls::incrementAndGet);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(50);
+		release.countDown();
+
+		assertEquals(1, first.get(5, TimeUnit.SECONDS));
+		assertEquals(1, second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void sameKeyFromAnotherRequestIsRejected() throws Exception {
+		assertEquals("tx-bar1", cache.execute("op", "k", "bar1@gramola.test|1.5", () -> "tx-bar1"));
+		assertEquals("tx-bar1", cache.execute("op", "k", "bar1@gramola.test|1.5", () -> "tx-otra"));
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> cache.execute("op", "k", "bar2@gramola.test|1.5", () -> "tx-bar2"));
+		assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatusCode());
+	}
+
+	@Test
+	void failuresAreNotCached() throws Exception {
+		assertThrows(IllegalStateException.class, () -> cache.execute("op", "k", () -> {
+			throw new IllegalStateException("Stripe caído");
+		}));
+		assertEquals("ok", cache.execute("op", "k", () -> "ok"));
+	}
+}
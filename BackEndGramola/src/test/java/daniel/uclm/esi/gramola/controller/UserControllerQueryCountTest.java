@@ -0,0 +1,167 @@
+package daniel.uclm.esi.gramola.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+import daniel.uclm.esi.gramola.cache.SpotifyTokenCache;
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.User;
+import daniel.uclm.esi.gramola.services.PasswordHasher;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Comprueba cuántas sentencias SQL lanza cada endpoint /users/{email}/... con la caché vacía.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserControllerQueryCountTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private SpotifyTokenCache spotifyTokenCache;
+
+	@Autowired
+	private GeocodingCache geocodingCache;
+
+	@Autowired
+	private PasswordHasher passwordHasher;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		userDao.deleteAll();
+		User user = new User();
+		user.setEmail(EMAIL);
+		user.setPwd("$2a$10$abcdefghijklmnopqrstuv");
+		user.setNombreBar("Bar de prueba");
+		user.setUbicacionBar("Calle Mayor 1, Ciudad Real");
+		user.setCosteCancion(0.5);
+		user.setLatitud(38.9848);
+		user.setLongitud(-3.9274);
+		user.setFirma("data:image/png;base64,AAAA");
+		user.setActivate();
+		userDao.save(user);
+
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	private long countStatements(RequestBuilder request) throws Exception {
+		userCache.invalidate(EMAIL);
+		spotifyTokenCache.invalidate(EMAIL);
+		statistics.clear();
+		mockMvc.perform(request).andExpect(status().is2xxSuccessful());
+		return statistics.getPrepareStatementCount();
+	}
+
+	@Test
+	void readEndpointsUseOneQuery() throws Exception {
+		String base = "/users/" + EMAIL;
+		assertEquals(1, countStatements(get(base + "/is-active")));
+		assertEquals(1, countStatements(get(base + "/activation-url")));
+		assertEquals(1, countStatements(get(base + "/spotify/access")));
+		assertEquals(1, countStatements(get(base + "/spotify/private")));
+		assertEquals(1, countStatements(get(base + "/spotify")));
+		assertEquals(1, countStatements(get(base + "/subscription/active")));
+		assertEquals(1, countStatements(get(base + "/data")));
+		assertEquals(1, countStatements(get(base + "/bar-data")));
+		assertEquals(1, countStatements(get(base + "/coste-cancion")));
+		assertEquals(1, countStatements(get(base + "/firma")));
+		assertEquals(1, countStatements(post(base + "/check-proximity")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"latitud\": 38.9848, \"longitud\": -3.9274}")));
+	}
+
+	@Test
+	void cachedReadsDoNotHitTheDatabase() throws Exception {
+		String base = "/users/" + EMAIL;
+		mockMvc.perform(get(base + "/data")).andExpect(status().isOk());
+		statistics.clear();
+		mockMvc.perform(get(base + "/is-active")).andExpect(status().isOk());
+		mockMvc.perform(get(base + "/coste-cancion")).andExpect(status().isOk());
+		assertEquals(0, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void activationIsReadFromTheUserRow() throws Exception {
+		User user = new User();
+		user.setEmail("nuevo@gramola.test");
+		user.setPwd("$2a$10$abcdefghijklmnopqrstuv");
+		userDao.save(user);
+		String token = user.getCreationToken().getID();
+
+		statistics.clear();
+		mockMvc.perform(get("/users/activate/nuevo@gramola.test").param("token", token))
+				.andExpect(status().is3xxRedirection());
+		// UPDATE del token + UPDATE de activated_at, sin SELECT previos
+		assertEquals(2, statistics.getPrepareStatementCount());
+
+		userCache.invalidate("nuevo@gramola.test");
+		statistics.clear();
+		mockMvc.perform(get("/users/nuevo@gramola.test/is-active"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("true"));
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void costeCancionUpdateIsSingleStatement() throws Exception {
+		assertEquals(1, countStatements(put("/users/" + EMAIL + "/coste-cancion")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"costeCancion\": 1.0}")));
+	}
+
+	@Test
+	void barDataUpdateIsConditionalUpdatePlusReload() throws Exception {
+		String url = "/users/" + EMAIL + "/bar-data";
+		// Misma dirección: UPDATE condicionado a la dirección guardada + SELECT de las coordenadas
+		assertEquals(2, countStatements(put(url)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"ubicacionBar\": \"Calle Mayor 1, Ciudad Real\", \"nombreBar\": \"Otro nombre\"}")));
+
+		// Dirección nueva ya geocodificada: el UPDATE condicionado no afecta a nada + UPDATE con coordenadas
+		geocodingCache.store(GeocodingCache.normalizar("Plaza Mayor 1, Almagro"), 38.889, -3.711, false);
+		assertEquals(2, countStatements(put(url)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"ubicacionBar\": \"Plaza Mayor 1, Almagro\", \"nombreBar\": \"Otro nombre\"}")));
+	}
+
+	@Test
+	void passwordUpdateIsSelectPlusConditionalUpdate() throws Exception {
+		userDao.updatePwdIfUnchanged(EMAIL, "$2a$10$abcdefghijklmnopqrstuv", passwordHasher.encode("antigua123"));
+		// SELECT del hash + UPDATE condicionado a que no haya cambiado
+		assertEquals(2, countStatements(put("/users/" + EMAIL + "/password")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"oldPassword\": \"antigua123\", \"newPassword\": \"nueva12345\"}")));
+	}
+}
@@ -0,0 +1,87 @@
+package daniel.uclm.esi.gramola.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TokenCipherTest {
+
+	static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+	private String previousK2;
+
+	@BeforeAll
+	static void setKey() {
+		System.setProperty("AES_256_SECRET", SECRET);
+	}
+
+	@BeforeEach
+	void saveK2() {
+		previousK2 = System.getProperty("AES_256_SECRET_K2");
+	}
+
+	// Las propiedades son globales de la JVM: no deben llegar a otros tests
+	@AfterEach
+	void restoreK2() {
+		if (previousK2 == null) {
+			System.clearProperty("AES_256_SECRET_K2");
+		} else {
+			System.setProperty("AES_256_SECRET_K2", previousK2);
+		}
+	}
+
+	/** Cifra como lo hacía la versión anterior (AES/ECB sin prefijo). */
+	static String legacyEncrypt(String token) throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "AES"));
+		return Base64.getEncoder().encodeToString(cipher.doFinal(token.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void roundTripUsesVersionedGcmFormat() throws Exception {
+		String encrypted = TokenCipher.encrypt("client-id-123");
+		assertTrue(encrypted.startsWith("v1:k1:"));
+		assertTrue(TokenCipher.isCurrent(encrypted));
+		assertEquals("client-id-123", TokenCipher.decrypt(encrypted));
+	}
+
+	@Test
+	void nonceIsRandomPerValue() throws Exception {
+		assertNotEquals(TokenCipher.encrypt("same"), TokenCipher.encrypt("same"));
+	}
+
+	@Test
+	void legacyValuesAreStillReadable() throws Exception {
+		String legacy = legacyEncrypt("client-secret-456");
+		assertFalse(TokenCipher.isCurrent(legacy));
+		assertEquals("client-secret-456", TokenCipher.decrypt(legacy));
+	}
+
+	@Test
+	void tamperedHeaderIsRejected() throws Exception {
+		String encrypted = TokenCipher.encrypt("client-id-123");
+		String tampered = "v1:k2:" + encrypted.substring("v1:k1:".length());
+		System.setProperty("AES_256_SECRET_K2", SECRET);
+		assertThrows(GeneralSecurityException.class, () -> TokenCipher.decrypt(tampered));
+	}
+
+	@Test
+	void blankValuesAreKept() throws Exception {
+		assertEquals(null, TokenCipher.encrypt(""));
+		assertEquals("", TokenCipher.decrypt(null));
+	}
+}
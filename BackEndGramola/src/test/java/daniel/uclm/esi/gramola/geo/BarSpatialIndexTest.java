@@ -0,0 +1,71 @@
+package daniel.uclm.esi.gramola.geo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class BarSpatialIndexTest {
+
+	private BarSpatialIndex index;
+	private final List<double[]> bars = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		index = new BarSpatialIndex();
+		ReflectionTestUtils.setField(index, "cellDegrees", 0.01);
+		Random random = new Random(7);
+		for (int i = 0; i < 5000; i++) {
+			// Alrededor de Ciudad Real, en un cuadrado de ~50 km
+			double lat = 38.98 + (random.nextDouble() - 0.5) * 0.45;
+			double lon = -3.93 + (random.nextDouble() - 0.5) * 0.6;
+			bars.add(new double[] { lat, lon, i });
+			index.put("bar" + i + "@gramola.test", "Bar " + i, lat, lon);
+		}
+	}
+
+	private List<String> bruteForce(double lat, double lon, int k, double radio) {
+		return bars.stream()
+				.map(b -> new NearbyBar("bar" + (int) b[2] + "@gramola.test", null, b[0], b[1],
+						GeoMath.distanciaMetros(lat, lon, b[0], b[1])))
+				.filter(b -> b.distanciaMetros() <= radio)
+				.sorted(Comparator.comparingDouble(NearbyBar::distanciaMetros))
+				.limit(k)
+				.map(NearbyBar::email)
+				.toList();
+	}
+
+	@Test
+	void matchesBruteForce() {
+		Random random = new Random(11);
+		for (int q = 0; q < 200; q++) {
+			double lat = 38.98 + (random.nextDouble() - 0.5) * 0.6;
+			double lon = -3.93 + (random.nextDouble() - 0.5) * 0.8;
+			int k = 1 + random.nextInt(20);
+			double radio = 500 + random.nextDouble() * 5000;
+
+			List<String> expected = bruteForce(lat, lon, k, radio);
+			List<String> actual = index.nearest(lat, lon, k, radio).stream().map(NearbyBar::email).toList();
+			assertEquals(expected, actual, "consulta " + q);
+		}
+	}
+
+	@Test
+	void updatesAndRemovalsAreVisible() {
+		index.put("bar0@gramola.test", "Bar movido", 40.4168, -3.7038);
+		List<NearbyBar> madrid = index.nearest(40.4168, -3.7038, 5, 1000);
+		assertEquals(1, madrid.size());
+		assertEquals("Bar movido", madrid.get(0).nombreBar());
+
+		index.remove("bar0@gramola.test");
+		assertTrue(index.nearest(40.4168, -3.7038, 5, 1000).isEmpty());
+		assertEquals(4999, index.size());
+	}
+}
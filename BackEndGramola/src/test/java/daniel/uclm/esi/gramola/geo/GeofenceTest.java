@@ -0,0 +1,57 @@
+package daniel.uclm.esi.gramola.geo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+class GeofenceTest {
+
+	private static final double LAT = 38.9848;
+	private static final double LON = -3.9274;
+
+	@Test
+	void circleMatchesHaversine() {
+		Geofence fence = Geofence.circle(LAT, LON, 100);
+		Random random = new Random(3);
+		for (int i = 0; i < 10_000; i++) {
+			double lat = LAT + (random.nextDouble() - 0.5) * 0.004;
+			double lon = LON + (random.nextDouble() - 0.5) * 0.004;
+			double distancia = GeoMath.distanciaMetros(LAT, LON, lat, lon);
+			assertEquals(distancia <= 100, fence.contains(lat, lon), "lat=" + lat + " lon=" + lon);
+			assertEquals(distancia, fence.distanciaMetros(lat, lon), 1e-6);
+		}
+	}
+
+	@Test
+	void polygonUsesVerticesInsteadOfRadius() {
+		// Rectángulo alargado hacia el este: ~20 m de alto y ~400 m de ancho
+		Geofence fence = Geofence.polygon(LAT, LON,
+				new double[] { LAT - 0.0001, LAT - 0.0001, LAT + 0.0001, LAT + 0.0001 },
+				new double[] { LON, LON + 0.0046, LON + 0.0046, LON });
+
+		assertTrue(fence.isPolygon());
+		assertTrue(fence.contains(LAT, LON + 0.004));
+		assertFalse(fence.contains(LAT + 0.0005, LON + 0.001));
+		assertFalse(fence.contains(LAT, LON - 0.0001));
+	}
+
+	@Test
+	void polygonJsonRoundTripAndValidation() {
+		List<double[]> vertices = List.of(new double[] { 1, 2 }, new double[] { 3, 4 }, new double[] { 5, 6 });
+		List<double[]> parsed = GeofenceRegistry.parsePolygon(GeofenceRegistry.toJson(vertices));
+		assertEquals(3, parsed.size());
+		assertEquals(5, parsed.get(2)[0]);
+
+		assertThrows(ResponseStatusException.class,
+				() -> GeofenceRegistry.toJson(List.of(new double[] { 1, 2 }, new double[] { 3, 4 })));
+		assertThrows(ResponseStatusException.class,
+				() -> GeofenceRegistry.toJson(List.of(new double[] { 91, 2 }, new double[] { 3, 4 }, new double[] { 5, 6 })));
+	}
+}
@@ -0,0 +1,89 @@
+package daniel.uclm.esi.gramola.geocoding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+
+class GazetteerIndexTest {
+
+	@TempDir
+	Path dir;
+
+	private GazetteerIndex index;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		Path source = dir.resolve("es.tsv");
+		Files.write(source, List.of(
+				"# dirección\tlatitud\tlongitud",
+				"Calle Mayor 1, Almagro, Ciudad Real, España\t38.8890\t-3.7110",
+				"Calle Mayor 10, Almagro, Ciudad Real, España\t38.8895\t-3.7120",
+				"Calle Toledo 12, Ciudad Real, España\t38.9850\t-3.9290",
+				"Plaza de España 3, Valdepeñas, España\t38.7620\t-3.3850",
+				"Calle Toledo 12, Ciudad Real, España\t0\t0",
+				"línea rota"));
+		Path idx = dir.resolve("es.tsv.idx");
+		assertEquals(4, GazetteerIndex.build(source, idx));
+		index = GazetteerIndex.open(idx);
+	}
+
+	private GazetteerIndex.Match lookup(String direccion) {
+		return index.lookup(GeocodingCache.normalizar(direccion), 0.75);
+	}
+
+	@Test
+	void exactMatchIgnoresAccentsCaseAndPunctuation() {
+		GazetteerIndex.Match match = lookup("plaza de espana, 3 - VALDEPEÑAS (España)");
+		assertNotNull(match);
+		assertEquals(38.762, match.latitud());
+		assertEquals(1.0, match.score());
+		// Ante duplicados gana la primera línea
+		assertEquals(38.985, lookup("Calle Toledo 12, Ciudad Real, España").latitud());
+	}
+
+	@Test
+	void prefixMatchStopsAtWordBoundaries() {
+		GazetteerIndex.Match match = lookup("Calle Mayor 1, Almagro, Ciudad Real");
+		assertNotNull(match);
+		assertEquals(-3.711, match.longitud());
+		assertTrue(match.score() < 1.0);
+	}
+
+	@Test
+	void prefixMatchNeedsToCoverMostOfTheEntry() {
+		// Prefijos válidos, pero cubren muy poco de la entrada: podrían ser de cualquier pueblo
+		assertNull(lookup("Calle Mayor"));
+		assertNull(lookup("Calle Mayor 1, Almagro"));
+	}
+
+	@Test
+	void trigramsToleratesTyposButNotUnrelatedAddresses() {
+		GazetteerIndex.Match match = lookup("Calle Toldeo 12, Ciudad Real, Espana");
+		assertNotNull(match);
+		assertEquals(38.985, match.latitud());
+
+		assertNull(lookup("Avenida de la Constitución 40, Sevilla"));
+	}
+
+	@Test
+	void indexIsOnlyRebuiltWhenTheSourceChanges() throws IOException {
+		Path source = dir.resolve("es.tsv");
+		Path idx = dir.resolve("es.tsv.idx");
+		assertFalse(GazetteerIndex.needsRebuild(source, idx));
+		Files.setLastModifiedTime(source, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+		assertTrue(GazetteerIndex.needsRebuild(source, idx));
+	}
+}
@@ -0,0 +1,112 @@
+package daniel.uclm.esi.gramola.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+class OutboundHttpClientTest {
+
+	private HttpServer server;
+	private OutboundHttpClient client;
+	private String base;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+		server.createContext("/ok", exchange -> reply(exchange, 200, "hola"));
+		server.createContext("/error", exchange -> reply(exchange, 503, "caído"));
+		server.createContext("/slow", exchange -> {
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			reply(exchange, 200, "tarde");
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+		client = new OutboundHttpClient();
+		ReflectionTestUtils.setField(client, "connectTimeoutMs", 1000L);
+		ReflectionTestUtils.setField(client, "requestTimeoutMs", 2000L);
+		ReflectionTestUtils.setField(client, "maxPerHost", 1);
+		ReflectionTestUtils.setField(client, "acquireTimeoutMs", 50L);
+		ReflectionTestUtils.setField(client, "userAgent", "test");
+		client.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	private static void reply(com.sun.net.httpserver.HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> hostStats() {
+		return (Map<String, Object>) ((Map<String, Object>) client.stats().get("hosts")).get("127.0.0.1");
+	}
+
+	@Test
+	void recordsLatencyAndSurfacesErrorStatuses() throws IOException {
+		assertEquals("hola", client.getString(URI.create(base + "/ok")));
+		OutboundHttpException e = assertThrows(OutboundHttpException.class,
+				() -> client.getString(URI.create(base + "/error")));
+		assertEquals(503, e.getStatusCode());
+
+		Map<String, Object> stats = hostStats();
+		assertEquals(2L, stats.get("requests"));
+		assertEquals(1L, stats.get("errors"));
+		assertEquals(2L, ((Map<?, ?>) stats.get("latency")).get("count"));
+	}
+
+	@Test
+	void limitsConcurrentRequestsPerHost() throws Exception {
+		CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+			try {
+				return client.getString(URI.create(base + "/slow"));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread.sleep(100);
+
+		IOException rejected = assertThrows(IOException.class, () -> client.getString(URI.create(base + "/ok")));
+		assertTrue(rejected.getMessage().contains("Demasiadas peticiones"));
+		assertEquals("tarde", slow.get());
+		assertEquals(1L, hostStats().get("rejected"));
+	}
+
+	@Test
+	void histogramPercentilesUseBucketUpperBounds() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 90; i++) histogram.record(3);
+		for (int i = 0; i < 10; i++) histogram.record(400);
+
+		assertEquals(5, histogram.percentile(0.50));
+		assertEquals(500, histogram.percentile(0.95));
+		assertEquals(100, histogram.count());
+	}
+}
@@ -0,0 +1,33 @@
+package daniel.uclm.esi.gramola.mail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class EmailTemplateTest {
+
+	@Test
+	void rendersVariablesEscapingHtml() {
+		EmailTemplate template = EmailTemplate.compile("t", "<p>Hola {{ nombre }}, pulsa <a href=\"{{url}}\">aquí</a></p>");
+
+		String html = template.render(Map.of("nombre", "Bar <Pepe> & 'Cía'", "url", "http://x/?a=1&b=\"2\""));
+
+		assertEquals("<p>Hola Bar &lt;Pepe&gt; &amp; &#39;Cía&#39;, pulsa "
+			+ "<a href=\"http://x/?a=1&amp;b=&quot;2&quot;\">aquí</a></p>", html);
+	}
+
+	@Test
+	void missingVariableFails() {
+		EmailTemplate template = EmailTemplate.compile("t", "{{a}}-{{b}}");
+
+		assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("a", "1")));
+	}
+
+	@Test
+	void unclosedPlaceholderFailsAtCompileTime() {
+		assertThrows(IllegalArgumentException.class, () -> EmailTemplate.compile("t", "Hola {{nombre"));
+	}
+}
@@ -0,0 +1,43 @@
+package daniel.uclm.esi.gramola.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+	@Test
+	void opensAfterConsecutiveFailuresAndClosesAfterASuccessfulProbe() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker("test", 2, Duration.ofMillis(50));
+
+		breaker.recordFailure();
+		assertTrue(breaker.allowRequest());
+		breaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+
+		Thread.sleep(60);
+		// Semiabierto: una sola llamada de prueba
+		assertTrue(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+		breaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	void failedProbeReopens() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ofMillis(20));
+		breaker.recordFailure();
+		Thread.sleep(30);
+
+		assertTrue(breaker.allowRequest());
+		breaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+}
@@ -0,0 +1,129 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.dao.GeocodeCacheDao;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.geo.BarSpatialIndex;
+import daniel.uclm.esi.gramola.models.GeocodingStatus;
+import daniel.uclm.esi.gramola.models.User;
+import daniel.uclm.esi.gramola.models.UserProfile;
+
+@SpringBootTest
+class BarGeocodingWorkerTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+
+	@Autowired
+	private BarGeocodingWorker worker;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private GeocodingCache geocodingCache;
+
+	@Autowired
+	private GeocodeCacheDao geocodeCacheDao;
+
+	@Autowired
+	private BarSpatialIndex spatialIndex;
+
+	@BeforeEach
+	void setUp() {
+		userDao.deleteAll();
+		geocodeCacheDao.deleteAll();
+		geocodingCache.clearMemory();
+		User user = new User();
+		user.setEmail(EMAIL);
+		user.setPwd("$2a$10$abcdefghijklmnopqrstuv");
+		user.setActivate();
+		userDao.save(user);
+		userCache.invalidate(EMAIL);
+	}
+
+	private UserProfile profile() {
+		return userCache.get(EMAIL).orElseThrow();
+	}
+
+	@Test
+	void unknownAddressIsSavedAsPendingAndResolvedInBackground() {
+		String status = userService.setBarData(EMAIL, "Calle Alarcos 5, Ciudad Real, España", "El Rincón");
+
+		assertEquals("PENDING", status);
+		assertEquals("El Rincón", profile().nombreBar());
+		assertNull(profile().latitud());
+		assertEquals(GeocodingStatus.PENDING, profile().geocodingStatus());
+
+		// Photon ya respondió para esta dirección (otro bar); el proceso no sale a la red
+		geocodingCache.store(GeocodingCache.normalizar("Calle Alarcos 5, Ciudad Real, Spain"), 38.985, -3.929, false);
+		assertEquals(1, worker.processPending());
+
+		assertEquals(GeocodingStatus.RESOLVED, profile().geocodingStatus());
+		assertEquals(38.985, profile().latitud());
+		assertEquals(-3.929, profile().longitud());
+		// El índice espacial se actualiza con el resultado
+		assertEquals(EMAIL, spatialIndex.nearest(38.985, -3.929, 1, 100).get(0).email());
+	}
+
+	@Test
+	void cachedAddressIsResolvedInline() {
+		geocodingCache.store(GeocodingCache.normalizar("Plaza Mayor 1, Almagro, Spain"), 38.889, -3.711, false);
+
+		assertEquals("RESOLVED", userService.setBarData(EMAIL, "Plaza Mayor 1, Almagro, España", "La Plaza"));
+		assertEquals(38.889, profile().latitud());
+		assertEquals(0, worker.processPending());
+	}
+
+	@Test
+	void staleResultIsDiscardedWhenTheAddressChanged() {
+		userService.setBarData(EMAIL, "Calle Antigua 1, Ciudad Real", "Bar");
+		userService.setBarData(EMAIL, "Calle Nueva 2, Ciudad Real", "Bar");
+
+		assertEquals(0, userDao.resolveGeocoding(EMAIL, "Calle Antigua 1, Ciudad Real", 1.0, 1.0));
+		userCache.invalidate(EMAIL);
+		assertEquals(GeocodingStatus.PENDING, profile().geocodingStatus());
+		assertNull(profile().latitud());
+	}
+
+	@Test
+	void resolvingResetsTheAttempts() {
+		userService.setBarData(EMAIL, "Calle Alarcos 5, Ciudad Real", "Bar");
+		userDao.updateGeocodingAttempt(EMAIL, "Calle Alarcos 5, Ciudad Real", GeocodingStatus.PENDING, 3,
+				java.time.LocalDateTime.now());
+
+		assertEquals(1, userDao.resolveGeocoding(EMAIL, "Calle Alarcos 5, Ciudad Real", 38.985, -3.929));
+		assertEquals(0, userDao.findById(EMAIL).orElseThrow().getGeocodingAttempts());
+	}
+
+	@Test
+	void sameAddressIsCheckedAgainstTheStoredRow() {
+		geocodingCache.store(GeocodingCache.normalizar("Plaza Mayor 1, Almagro"), 38.889, -3.711, false);
+		userService.setBarData(EMAIL, "Plaza Mayor 1, Almagro", "La Plaza");
+		assertEquals(38.889, profile().latitud());
+
+		// Otra instancia cambia la dirección; el perfil en caché de esta sigue con la antigua
+		userDao.updateBarDataPendingGeocoding(EMAIL, "Calle Nueva 2, Ciudad Real", "La Plaza",
+				java.time.LocalDateTime.now());
+		assertEquals("Plaza Mayor 1, Almagro", profile().ubicacionBar());
+
+		assertEquals("RESOLVED", userService.setBarData(EMAIL, "Plaza Mayor 1, Almagro", "La Plaza"));
+		assertEquals("Plaza Mayor 1, Almagro", profile().ubicacionBar());
+		assertEquals(GeocodingStatus.RESOLVED, profile().geocodingStatus());
+		assertEquals(38.889, profile().latitud());
+	}
+}
@@ -0,0 +1,77 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import daniel.uclm.esi.gramola.dao.EmailOutboxDao;
+import daniel.uclm.esi.gramola.models.EmailOutbox;
+
+@SpringBootTest
+class EmailOutboxServiceTest {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	@Autowired
+	private EmailOutboxService outboxService;
+
+	@Autowired
+	private EmailOutboxDao outboxDao;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		outboxDao.deleteAll();
+		ReflectionTestUtils.setField(outboxService, "maxAttempts", 2);
+	}
+
+	@Test
+	void dispatchSendsPendingEmailsInOneBatch() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			outboxService.enqueueHtml("bar" + i + "@gramola.test", "Asunto " + i, "<p>Hola " + i + "</p>");
+		}
+
+		assertEquals(3, outboxService.dispatchPending());
+
+		assertEquals(3, greenMail.getReceivedMessages().length);
+		assertTrue(outboxDao.findAll().stream().allMatch(e -> e.getStatus() == EmailOutbox.Status.SENT));
+		// Ya no queda nada pendiente
+		assertEquals(0, outboxService.dispatchPending());
+	}
+
+	@Test
+	void failedEmailsAreRetriedWithBackoffAndThenDeadLettered() throws Exception {
+		greenMail.stop();
+		EmailOutbox email = outboxService.enqueueHtml("bar@gramola.test", "Asunto", "<p>Hola</p>");
+
+		assertEquals(0, outboxService.dispatchPending());
+		EmailOutbox afterFirst = outboxDao.findById(email.getId()).orElseThrow();
+		assertEquals(EmailOutbox.Status.PENDING, afterFirst.getStatus());
+		assertEquals(1, afterFirst.getAttempts());
+		assertTrue(afterFirst.getNextAttemptAt().isAfter(afterFirst.getCreatedAt()));
+
+		// El siguiente intento aún no ha vencido
+		assertEquals(0, outboxService.dispatchPending());
+		assertEquals(1, outboxDao.findById(email.getId()).orElseThrow().getAttempts());
+
+		// Se adelanta el siguiente intento: al fallar de nuevo agota max-attempts
+		jdbcTemplate.update("UPDATE email_outbox SET next_attempt_at = created_at WHERE id = ?", email.getId());
+		assertEquals(0, outboxService.dispatchPending());
+		EmailOutbox afterSecond = outboxDao.findById(email.getId()).orElseThrow();
+		assertEquals(EmailOutbox.Status.DEAD, afterSecond.getStatus());
+		assertEquals(2, afterSecond.getAttempts());
+	}
+}
@@ -0,0 +1,65 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import jakarta.mail.Message;
+import jakarta.mail.internet.MimeMessage;
+
+@SpringBootTest
+class EmailServiceTest {
+
+	private static final int MESSAGES = 20;
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	@Autowired
+	private EmailService emailService;
+
+	@Autowired
+	private SmtpTransportPool transportPool;
+
+	@Test
+	void pooledSendReusesConnections() throws Exception {
+		long createdBefore = (long) transportPool.stats().get("created");
+		for (int i = 0; i < MESSAGES; i++) {
+			emailService.sendHtmlEmail("bar" + i + "@gramola.test", "Con pool " + i, "<p>Hola</p>");
+		}
+
+		assertEquals(MESSAGES, greenMail.getReceivedMessages().length);
+		// Envíos secuenciales: basta una única conexión
+		assertTrue((long) transportPool.stats().get("created") - createdBefore <= 1);
+	}
+
+	@Test
+	void largeRecipientListsAreChunked() throws Exception {
+		String[] recipients = new String[120];
+		for (int i = 0; i < recipients.length; i++) {
+			recipients[i] = "bar" + i + "@gramola.test";
+		}
+
+		emailService.sendEmailToMultipleRecipients(recipients, "Aviso", "Hola a todos");
+
+		// GreenMail entrega una copia por destinatario: cada trozo es un mensaje distinto
+		MimeMessage[] received = greenMail.getReceivedMessages();
+		assertEquals(120, received.length);
+		Set<String> messageIds = new HashSet<>();
+		for (MimeMessage message : received) {
+			messageIds.add(message.getMessageID());
+			assertTrue(message.getRecipients(Message.RecipientType.TO).length <= 50);
+		}
+		assertEquals(3, messageIds.size());
+	}
+}
@@ -0,0 +1,121 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.sun.net.httpserver.HttpServer;
+
+import daniel.uclm.esi.gramola.cache.GeocodingCache;
+import daniel.uclm.esi.gramola.dao.GeocodeCacheDao;
+
+@SpringBootTest
+class GeocodingServiceTest {
+
+	@Autowired
+	private GeocodingService geocodingService;
+
+	@Autowired
+	private GeocodingCache geocodingCache;
+
+	@Autowired
+	private GeocodeCacheDao geocodeCacheDao;
+
+	@BeforeEach
+	void setUp() {
+		geocodeCacheDao.deleteAll();
+		geocodingCache.clearMemory();
+	}
+
+	@Test
+	void normalizesEquivalentAddressesToTheSameKey() {
+		assertEquals("calle mayor 1 13001 ciudad real spain",
+			GeocodingCache.normalizar("  Calle Mayor, 1 ,13001  Ciudad Real,Spain "));
+		assertEquals(GeocodingCache.normalizar("Plaza de España 3, Almagro"),
+			GeocodingCache.normalizar("plaza de espana 3 ,  ALMAGRO."));
+	}
+
+	@Test
+	void cachedAddressSkipsTheNetwork() {
+		// Resuelta antes por otro bar y guardada en BD; la memoria está vacía
+		geocodingCache.store(GeocodingCache.normalizar("Calle Toledo 12, Ciudad Real, Spain"), 38.98, -3.92, false);
+		geocodingCache.clearMemory();
+		Map<String, Object> before = geocodingCache.stats();
+
+		double[] first = geocodingService.obtenerCoordenadas("calle toledo, 12, Ciudad Real, España");
+		double[] second = geocodingService.obtenerCoordenadas("Calle Toledo 12,Ciudad Real, España");
+
+		assertArrayEquals(new double[] { 38.98, -3.92 }, first);
+		assertArrayEquals(first, second);
+		Map<String, Object> after = geocodingCache.stats();
+		assertEquals(1L, delta(before, after, "databaseHits"));
+		assertEquals(1L, delta(before, after, "memoryHits"));
+		assertEquals(0L, delta(before, after, "misses"));
+	}
+
+	@Test
+	void missQueriesPhotonOnceAndStoresTheResult() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		HttpServer photon = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		photon.createContext("/api/", exchange -> {
+			calls.incrementAndGet();
+			byte[] body = "{\"features\":[{\"geometry\":{\"coordinates\":[-3.93,38.99]}}]}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		photon.start();
+		Object original = ReflectionTestUtils.getField(geocodingService, "photonUrl");
+		ReflectionTestUtils.setField(geocodingService, "photonUrl", "http://127.0.0.1:" + photon.getAddress().getPort() + "/api/");
+		try {
+			double[] first = geocodingService.obtenerCoordenadas("Calle Ciruela 3, Ciudad Real, España");
+			geocodingCache.clearMemory();
+			double[] second = geocodingService.obtenerCoordenadas("calle ciruela 3 ciudad real españa");
+
+			assertArrayEquals(new double[] { 38.99, -3.93 }, first);
+			assertArrayEquals(first, second);
+			assertEquals(1, calls.get());
+		} finally {
+			ReflectionTestUtils.setField(geocodingService, "photonUrl", original);
+			photon.stop(0);
+		}
+	}
+
+	@Test
+	void photonClientErrorIsReportedAsPermanent() throws Exception {
+		HttpServer photon = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		photon.createContext("/api/", exchange -> {
+			exchange.sendResponseHeaders(400, -1);
+			exchange.close();
+		});
+		photon.start();
+		Object original = ReflectionTestUtils.getField(geocodingService, "photonUrl");
+		ReflectionTestUtils.setField(geocodingService, "photonUrl", "http://127.0.0.1:" + photon.getAddress().getPort() + "/api/");
+		try {
+			// BarGeocodingWorker marca como fallidos los 4xx en vez de reintentarlos
+			ResponseStatusException e = assertThrows(ResponseStatusException.class,
+					() -> geocodingService.obtenerCoordenadas("Calle Imposible 0, Ciudad Real"));
+			assertTrue(e.getStatusCode().is4xxClientError());
+		} finally {
+			ReflectionTestUtils.setField(geocodingService, "photonUrl", original);
+			photon.stop(0);
+		}
+	}
+
+	private static long delta(Map<String, Object> before, Map<String, Object> after, String key) {
+		return (Long) after.get(key) - (Long) before.get(key);
+	}
+}
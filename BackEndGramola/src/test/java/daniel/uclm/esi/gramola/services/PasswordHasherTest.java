@@ -0,0 +1,69 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.User;
+
+@SpringBootTest
+class PasswordHasherTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+
+	@Autowired
+	private PasswordHasher passwordHasher;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserDao userDao;
+
+	@BeforeEach
+	void setUp() {
+		userDao.deleteAll();
+	}
+
+	@Test
+	void encodedPasswordsMatchOnlyTheOriginal() {
+		String hash = passwordHasher.encode("secreto");
+
+		assertNotEquals("secreto", hash);
+		assertTrue(passwordHasher.matches("secreto", hash));
+		assertFalse(passwordHasher.matches("otro", hash));
+		// La sal hace que cada hash sea distinto
+		assertNotEquals(hash, passwordHasher.encode("secreto"));
+		assertFalse(passwordHasher.needsRehash(hash));
+	}
+
+	@Test
+	void legacyHashIsUpgradedOnLogin() throws Exception {
+		String legacy = new BCryptPasswordEncoder(4).encode("secreto");
+		assertTrue(passwordHasher.needsRehash(legacy));
+		User user = new User();
+		user.setEmail(EMAIL);
+		user.setPwd(legacy);
+		user.setActivate();
+		userDao.save(user);
+
+		userService.login(EMAIL, "secreto");
+
+		// El nuevo hash se calcula en segundo plano
+		String current = legacy;
+		for (int i = 0; i < 100 && current.equals(legacy); i++) {
+			Thread.sleep(50);
+			current = userDao.findPwdByEmail(EMAIL).orElseThrow();
+		}
+		assertNotEquals(legacy, current);
+		assertFalse(passwordHasher.needsRehash(current));
+		assertTrue(passwordHasher.matches("secreto", current));
+	}
+}
@@ -0,0 +1,298 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.config.CosteCancionMigration;
+import daniel.uclm.esi.gramola.config.StripeTransactionMigration;
+import daniel.uclm.esi.gramola.dao.EmailOutboxDao;
+import daniel.uclm.esi.gramola.dao.RevenueRollupDao;
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.RevenueRollup;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.User;
+
+@SpringBootTest
+class PaymentServiceTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+	private static final double LAT = 38.9848;
+	private static final double LON = -3.9274;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private StripeTransactionDao transactionDao;
+
+	@Autowired
+	private StripeWebhookService webhookService;
+
+	@Autowired
+	private EmailOutboxDao outboxDao;
+
+	@Autowired
+	private StripeTransactionMigration migration;
+
+	@Autowired
+	private CosteCancionMigration costeMigration;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private RevenueRollupDao revenueRollupDao;
+
+	@Autowired
+	private TransactionHistoryService historyService;
+
+	private StripeStub stripe;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		transactionDao.deleteAll();
+		revenueRollupDao.deleteAll();
+		userDao.deleteAll();
+		User user = new User();
+		user.setEmail(EMAIL);
+		user.setPwd("$2a$10$abcdefghijklmnopqrstuv");
+		user.setActivate();
+		user.setCosteCancion(1.5);
+		userDao.save(user);
+		userDao.updateBarDataWithCoordinates(EMAIL, "Plaza Mayor, Ciudad Real", "Bar Test", LAT, LON);
+		userCache.invalidate(EMAIL);
+		stripe = StripeStub.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		stripe.close();
+	}
+
+	@Test
+	void purchaseUsesServerPriceAndStoresTrack() throws Exception {
+		PaymentService.SongPurchase purchase = paymentService.purchaseSong(EMAIL, LAT + 0.0002, LON, "spotify:track:1", null);
+
+		assertEquals(150, purchase.amountCents());
+		assertEquals(150, stripe.intents.get(purchase.paymentIntentId()).get("amount").asLong());
+		assertEquals(purchase.paymentIntentId() + "_secret_stub", purchase.clientSecret());
+		StripeTransaction stored = transactionDao.findById(purchase.transaction().getId()).orElseThrow();
+		assertEquals(EMAIL, stored.getEmail());
+		assertEquals("spotify:track:1", stored.getTrackUri());
+		assertEquals(purchase.paymentIntentId(), stored.getPaymentIntentId());
+		assertEquals(150L, stored.getAmount());
+		assertEquals("eur", stored.getCurrency());
+		assertNotNull(stored.getCreatedAt());
+	}
+
+	@Test
+	void legacyTransactionsAreBackfilledFromJson() {
+		jdbcTemplate.update("INSERT INTO stripe_transaction (id, data, email, version) VALUES (?, ? FORMAT JSON, ?, 0)",
+				"legacy-1", "{\"id\":\"pi_legacy\",\"amount\":999,\"currency\":\"eur\",\"status\":\"succeeded\",\"created\":1700000000}",
+				EMAIL);
+
+		migration.run(null);
+
+		StripeTransaction legacy = transactionDao.findByPaymentIntentId("pi_legacy").orElseThrow();
+		assertEquals("legacy-1", legacy.getId());
+		assertEquals(999L, legacy.getAmount());
+		assertEquals("eur", legacy.getCurrency());
+		assertTrue(legacy.isSucceeded());
+		assertEquals(2023, legacy.getCreatedAt().getYear());
+		// Con email y el importe de la suscripción
+		assertEquals(PaymentKind.SUBSCRIPTION, legacy.getKind());
+		// Las suscripciones solo tenían email una vez confirmadas
+		assertEquals(legacy.getCreatedAt(), legacy.getConfirmedAt());
+	}
+
+	@Test
+	void legacySongsWithoutTrackAndUnreadableRowsAreBackfilled() throws Exception {
+		jdbcTemplate.update("INSERT INTO stripe_transaction (id, data, email, version) VALUES (?, ? FORMAT JSON, ?, 0)",
+				"legacy-song", "{\"id\":\"pi_song\",\"amount\":150,\"status\":\"succeeded\",\"created\":1700000000}",
+				EMAIL);
+		jdbcTemplate.update("INSERT INTO stripe_transaction (id, data, email, track_uri, version) VALUES (?, ? FORMAT JSON, ?, ?, 0)",
+				"legacy-track", "{\"id\":\"pi_track\",\"amount\":150,\"status\":\"requires_payment_method\",\"created\":1700000100}",
+				EMAIL, "spotify:track:1");
+		jdbcTemplate.update("INSERT INTO stripe_transaction (id, email, version) VALUES (?, ?, 0)", "legacy-rota", EMAIL);
+
+		migration.run(null);
+
+		StripeTransaction song = transactionDao.findById("legacy-song").orElseThrow();
+		assertEquals(PaymentKind.SONG, song.getKind());
+		assertNull(song.getConfirmedAt());
+		// La confirmación de una canción guardaba su trackUri: cuenta para los ingresos
+		assertNotNull(transactionDao.findById("legacy-track").orElseThrow().getConfirmedAt());
+		StripeTransaction rota = transactionDao.findById("legacy-rota").orElseThrow();
+		assertEquals(StripeTransactionMigration.FECHA_DESCONOCIDA, rota.getCreatedAt());
+
+		// La fila sin fecha legible no rompe la paginación del historial
+		TransactionHistoryService.HistoryPage first = historyService.page(EMAIL, null, null, 2);
+		assertNotNull(first.nextCursor());
+		TransactionHistoryService.HistoryPage second = historyService.page(EMAIL, null, first.nextCursor(), 2);
+		assertEquals("legacy-rota", second.items().get(0).id());
+	}
+
+	@Test
+	void purchaseOutsideGeofenceNeverReachesStripe() {
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> paymentService.purchaseSong(EMAIL, LAT + 0.01, LON, "spotify:track:1", null));
+
+		assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+		assertEquals(0, stripe.requests.get());
+		assertEquals(0, transactionDao.count());
+	}
+
+	@Test
+	void webhookEventAnswersConfirmationWithoutCallingStripe() throws Exception {
+		PaymentService.SongPurchase purchase = paymentService.purchaseSong(EMAIL, LAT, LON, "spotify:track:1", null);
+		String id = purchase.paymentIntentId();
+		stripe.succeed(id);
+		String payload = stripe.event(StripeWebhookService.PAYMENT_INTENT_SUCCEEDED, id);
+		webhookService.handle(payload, StripeStub.sign(payload, "whsec_test"));
+		// Stripe reenvía eventos: el segundo no cambia nada
+		webhookService.handle(payload, StripeStub.sign(payload, "whsec_test"));
+
+		int before = stripe.requests.get();
+		paymentService.confirmSongPayment(EMAIL, id, 1.5, purchase.transaction().getId(), "spotify:track:1");
+
+		assertEquals(before, stripe.requests.get());
+		assertTrue(transactionDao.findByPaymentIntentId(id).orElseThrow().isSucceeded());
+	}
+
+	@Test
+	void confirmationFallsBackToStripeWhenEventHasNotArrived() throws Exception {
+		PaymentService.SongPurchase purchase = paymentService.purchaseSong(EMAIL, LAT, LON, "spotify:track:1", null);
+		stripe.succeed(purchase.paymentIntentId());
+
+		int before = stripe.requests.get();
+		paymentService.confirmSongPayment(EMAIL, purchase.paymentIntentId(), 1.5, purchase.transaction().getId(), null);
+
+		assertEquals(before + 1, stripe.requests.get());
+		assertTrue(transactionDao.findById(purchase.transaction().getId()).orElseThrow().isSucceeded());
+	}
+
+	@Test
+	void webhookRejectsBadSignature() throws Exception {
+		PaymentService.SongPurchase purchase = paymentService.purchaseSong(EMAIL, LAT, LON, null, null);
+		stripe.succeed(purchase.paymentIntentId());
+		String payload = stripe.event(StripeWebhookService.PAYMENT_INTENT_SUCCEEDED, purchase.paymentIntentId());
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> webhookService.handle(payload, StripeStub.sign(payload, "whsec_otro")));
+		assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+		assertFalse(transactionDao.findById(purchase.transaction().getId()).orElseThrow().isSucceeded());
+	}
+
+	@Test
+	void idempotencyKeyReachesStripe() throws Exception {
+		PaymentService.SongPurchase first = paymentService.purchaseSong(EMAIL, LAT, LON, "spotify:track:1", "clave-1");
+		PaymentService.SongPurchase retry = paymentService.purchaseSong(EMAIL, LAT, LON, "spotify:track:1", "clave-1");
+
+		assertEquals(first.paymentIntentId(), retry.paymentIntentId());
+		assertEquals(1, stripe.intents.size());
+	}
+
+	@Test
+	void concurrentConfirmationsApplyOnce() throws Exception {
+		StripeTransaction prepay = paymentService.prepay(null);
+		String id = prepay.getPaymentIntentId();
+		stripe.succeed(id);
+		String payload = stripe.event(StripeWebhookService.PAYMENT_INTENT_SUCCEEDED, id);
+		webhookService.handle(payload, StripeStub.sign(payload, "whsec_test"));
+		long emailsBefore = outboxDao.count();
+		double amount = stripe.intents.get(id).get("amount").asLong() / 100.0;
+
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(pool.submit(() -> {
+				start.await();
+				paymentService.confirmSubscription(EMAIL, id, amount, prepay.getId());
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> f : futures) {
+			f.get(10, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+
+		// Un único recibo: las demás confirmaciones no aplicaron nada
+		assertEquals(emailsBefore + 1, outboxDao.count());
+		assertTrue(transactionDao.findById(prepay.getId()).orElseThrow().isConfirmed());
+		// ...y el pago se sumó una sola vez a los ingresos del bar
+		List<RevenueRollup> rollups = revenueRollupDao.findAll();
+		assertEquals(2, rollups.size());
+		rollups.forEach(r -> assertEquals(1, r.getSubscriptionCount()));
+	}
+
+	@Test
+	void songPriceHasStripeMinimum() {
+		assertEquals(50, PaymentService.getCosteCancionCentimos(null));
+		assertEquals(50, PaymentService.getCosteCancionCentimos(0.2));
+		assertEquals(199, PaymentService.getCosteCancionCentimos(1.99));
+		assertThrows(ResponseStatusException.class, () -> PaymentService.getCosteCancionCentimos(150.0));
+	}
+
+	@Test
+	void songPriceIsBounded() {
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> userService.setCosteCancion(EMAIL, 150.0));
+		assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+		assertThrows(ResponseStatusException.class, () -> userService.setCosteCancion(EMAIL, -1.0));
+		assertEquals(1.5, userService.getCosteCancion(EMAIL));
+	}
+
+	@Test
+	void pricesSavedInCentsAreMigratedAndOthersAreNeverCharged() {
+		// 1,50 € guardado en céntimos por el editor antiguo
+		userDao.updateCosteCancion(EMAIL, 150.0);
+		costeMigration.run(null);
+		userCache.invalidate(EMAIL);
+		assertEquals(1.5, userService.getCosteCancion(EMAIL));
+
+		// Ni en euros ni en céntimos cabe: se deja y no se cobra
+		userDao.updateCosteCancion(EMAIL, 5000.0);
+		costeMigration.run(null);
+		userCache.invalidate(EMAIL);
+		assertEquals(5000.0, userService.getCosteCancion(EMAIL));
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> paymentService.purchaseSong(EMAIL, LAT, LON, "spotify:track:1", null));
+		assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+		assertEquals(0, stripe.requests.get());
+	}
+}
@@ -0,0 +1,124 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import daniel.uclm.esi.gramola.dao.EmailOutboxDao;
+import daniel.uclm.esi.gramola.dao.JobCheckpointDao;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.User;
+import jakarta.mail.internet.MimeMessage;
+
+@SpringBootTest
+class RenewalReminderJobTest {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	@Autowired
+	private RenewalReminderJob job;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private JobCheckpointDao checkpointDao;
+
+	@Autowired
+	private EmailOutboxDao outboxDao;
+
+	private final LocalDateTime now = LocalDateTime.of(2026, 3, 1, 10, 0);
+
+	@BeforeEach
+	void setUp() {
+		userDao.deleteAll();
+		checkpointDao.deleteAll();
+		outboxDao.deleteAll();
+		ReflectionTestUtils.setField(job, "chunkSize", 3);
+
+		// Siete caducan dentro de la semana; el resto no deben recibir nada
+		for (int i = 0; i < 7; i++) {
+			save("bar" + i + "@gramola.test", now.plusHours(6 + i * 20), true);
+		}
+		save("lejos@gramola.test", now.plusDays(7).plusHours(12), true);
+		save("caducado@gramola.test", now.minusDays(1), true);
+		save("inactivo@gramola.test", now.plusDays(2), false);
+	}
+
+	private void save(String email, LocalDateTime expiry, boolean active) {
+		User user = new User();
+		user.setEmail(email);
+		user.setPwd("x");
+		user.setSubscriptionExpiry(expiry);
+		if (active) user.setActivate();
+		userDao.save(user);
+	}
+
+	private List<String> recipients() throws Exception {
+		return Arrays.stream(greenMail.getReceivedMessages()).map(m -> {
+			try {
+				return ((MimeMessage) m).getAllRecipients()[0].toString();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}).sorted().toList();
+	}
+
+	@Test
+	void remindsEachExpiryOnceAcrossRuns() throws Exception {
+		assertTrue(job.run(now));
+		List<String> first = recipients();
+		assertEquals(7, first.size());
+		assertTrue(first.stream().allMatch(r -> r.startsWith("bar")));
+		assertTrue(checkpointDao.findById(RenewalReminderJob.JOB_NAME).orElseThrow().isCompleted());
+
+		// Al día siguiente solo entra en la ventana el que caducaba más lejos
+		job.run(now.plusDays(1));
+		List<String> second = recipients();
+		assertEquals(8, second.size());
+		assertTrue(second.contains("lejos@gramola.test"));
+		assertEquals(0, outboxDao.count());
+	}
+
+	@Test
+	void resumesFromCheckpointWhenSmtpIsDown() throws Exception {
+		greenMail.stop();
+		job.run(now);
+		assertFalse(checkpointDao.findById(RenewalReminderJob.JOB_NAME).orElseThrow().isCompleted());
+
+		greenMail.start();
+		job.run(now.plusHours(1));
+		assertEquals(7, recipients().size());
+		assertTrue(checkpointDao.findById(RenewalReminderJob.JOB_NAME).orElseThrow().isCompleted());
+	}
+
+	@Test
+	void rejectedRecipientInLastChunkGoesToOutbox() throws Exception {
+		// Un único destinatario imposible en el último trozo no debe bloquear el proceso
+		ReflectionTestUtils.setField(job, "chunkSize", 7);
+		save("roto@@gramola.test", now.plusDays(6), true);
+
+		assertTrue(job.run(now));
+		assertEquals(7, recipients().size());
+		assertEquals(1, outboxDao.count());
+		assertTrue(checkpointDao.findById(RenewalReminderJob.JOB_NAME).orElseThrow().isCompleted());
+
+		job.run(now.plusDays(1));
+		assertTrue(recipients().contains("lejos@gramola.test"));
+	}
+}
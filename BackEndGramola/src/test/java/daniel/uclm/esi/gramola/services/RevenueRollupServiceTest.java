@@ -0,0 +1,118 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import daniel.uclm.esi.gramola.dao.RevenueRollupDao;
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.dao.TrackRollupDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.RevenueRollup;
+import daniel.uclm.esi.gramola.models.RollupGranularity;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.TrackRevenue;
+
+@SpringBootTest
+class RevenueRollupServiceTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+	private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+	@Autowired
+	private RevenueRollupService rollupService;
+
+	@Autowired
+	private StripeTransactionDao transactionDao;
+
+	@Autowired
+	private RevenueRollupDao revenueDao;
+
+	@Autowired
+	private TrackRollupDao trackDao;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		transactionDao.deleteAll();
+		revenueDao.deleteAll();
+		trackDao.deleteAll();
+
+		// Dos días: canciones a las 20h y 21h del primero, una suscripción al día siguiente
+		confirm(PaymentKind.SONG, "spotify:track:a", 150, DAY.atTime(20, 5));
+		confirm(PaymentKind.SONG, "spotify:track:a", 150, DAY.atTime(20, 40));
+		confirm(PaymentKind.SONG, "spotify:track:b", 200, DAY.atTime(21, 10));
+		confirm(PaymentKind.SUBSCRIPTION, null, 999, DAY.plusDays(1).atTime(9, 0));
+	}
+
+	private void confirm(PaymentKind kind, String trackUri, long amount, LocalDateTime at) throws Exception {
+		StripeTransaction t = new StripeTransaction();
+		t.setData(new JSONObject().put("id", "pi_" + at).put("amount", amount).put("status", "succeeded"));
+		t.setEmail(EMAIL);
+		t.setKind(kind);
+		t.setTrackUri(trackUri);
+		t = transactionDao.save(t);
+		jdbcTemplate.update("UPDATE stripe_transaction SET confirmed_at = ? WHERE id = ?", at, t.getId());
+		rollupService.record(transactionDao.findById(t.getId()).orElseThrow(), amount);
+	}
+
+	@Test
+	void confirmedPaymentsAreFoldedIntoBuckets() {
+		List<RevenueRollup> hours = rollupService.revenue(EMAIL, RollupGranularity.HOUR, DAY, DAY.plusDays(1));
+		assertEquals(3, hours.size());
+		assertEquals(DAY.atTime(20, 0), hours.get(0).getBucketStart());
+		assertEquals(2, hours.get(0).getSongCount());
+		assertEquals(300, hours.get(0).getSongAmount());
+		assertEquals(1, hours.get(2).getSubscriptionCount());
+
+		List<RevenueRollup> days = rollupService.revenue(EMAIL, RollupGranularity.DAY, DAY, DAY);
+		assertEquals(1, days.size());
+		assertEquals(3, days.get(0).getSongCount());
+		assertEquals(500, days.get(0).getSongAmount());
+		assertEquals(0, days.get(0).getSubscriptionCount());
+
+		List<TrackRevenue> top = rollupService.topTracks(EMAIL, DAY, DAY.plusDays(1), 10);
+		assertEquals(List.of(new TrackRevenue("spotify:track:a", 2, 300), new TrackRevenue("spotify:track:b", 1, 200)), top);
+	}
+
+	@Test
+	void rebuildMatchesIncrementalRollups() {
+		List<RevenueRollup> before = rollupService.revenue(EMAIL, RollupGranularity.HOUR, DAY, DAY.plusDays(1));
+		// Un acumulado estropeado se corrige al reconstruir
+		revenueDao.add(RevenueRollupService.revenueId(EMAIL, RollupGranularity.HOUR, DAY.atTime(20, 0)), EMAIL,
+				"HOUR", DAY.atTime(20, 0), 5, 5000, 0, 0);
+
+		rollupService.rebuild(EMAIL);
+
+		List<RevenueRollup> after = rollupService.revenue(EMAIL, RollupGranularity.HOUR, DAY, DAY.plusDays(1));
+		assertEquals(before.size(), after.size());
+		for (int i = 0; i < before.size(); i++) {
+			assertEquals(before.get(i).getBucketStart(), after.get(i).getBucketStart());
+			assertEquals(before.get(i).getSongCount(), after.get(i).getSongCount());
+			assertEquals(before.get(i).getSongAmount(), after.get(i).getSongAmount());
+			assertEquals(before.get(i).getSubscriptionAmount(), after.get(i).getSubscriptionAmount());
+		}
+		assertEquals(2, rollupService.topTracks(EMAIL, DAY, DAY, 10).size());
+	}
+
+	@Test
+	void rangeIsBounded() {
+		assertThrows(ResponseStatusException.class,
+				() -> rollupService.revenue(EMAIL, RollupGranularity.HOUR, DAY, DAY.plusDays(365)));
+		assertThrows(ResponseStatusException.class,
+				() -> rollupService.revenue(EMAIL, RollupGranularity.DAY, DAY.plusDays(1), DAY));
+	}
+}
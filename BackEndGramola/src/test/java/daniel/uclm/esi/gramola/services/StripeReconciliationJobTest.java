@@ -0,0 +1,154 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.dao.RevenueRollupDao;
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.User;
+import daniel.uclm.esi.gramola.services.StripeReconciliationJob.Mismatch;
+import daniel.uclm.esi.gramola.services.StripeReconciliationJob.Report;
+
+@SpringBootTest
+class StripeReconciliationJobTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+	private static final long START = 1_767_225_600L;
+	private static final long END = START + 3600;
+
+	@Autowired
+	private StripeReconciliationJob job;
+
+	@Autowired
+	private StripeTransactionDao transactionDao;
+
+	@Autowired
+	private RevenueRollupDao revenueRollupDao;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private UserCache userCache;
+
+	private StripeStub stripe;
+	private String drift;
+	private String importe;
+	private String sinEmail;
+	private String sinConfirmar;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		transactionDao.deleteAll();
+		revenueRollupDao.deleteAll();
+		userDao.deleteAll();
+		User user = new User();
+		user.setEmail(EMAIL);
+		user.setPwd("$2a$10$abcdefghijklmnopqrstuv");
+		user.setActivate();
+		userDao.save(user);
+		userCache.invalidate(EMAIL);
+		stripe = StripeStub.start();
+
+		// 600 intents repartidos en la hora: más de una página por tramo
+		List<StripeTransaction> rows = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			ObjectNode intent = stripe.create(150, "requires_payment_method", START + i * 6, EMAIL);
+			String id = intent.get("id").asText();
+			StripeTransaction row = row(intent, EMAIL);
+			if (i == 10) {
+				drift = id;
+				stripe.intents.get(id).put("status", "canceled");
+			} else if (i == 15) {
+				// Mismo estado, otro importe
+				importe = id;
+				stripe.intents.get(id).put("amount", 200);
+			} else if (i == 20) {
+				sinEmail = id;
+				row.setEmail(null);
+			}
+			rows.add(row);
+		}
+		// Cobrada en Stripe pero el cliente nunca llegó a confirmarla
+		ObjectNode cobrada = stripe.create(999, "succeeded", START + 7, EMAIL);
+		sinConfirmar = cobrada.get("id").asText();
+		StripeTransaction row = row(cobrada, EMAIL);
+		row.setKind(PaymentKind.SUBSCRIPTION);
+		rows.add(row);
+		transactionDao.saveAll(rows);
+
+		// Sin fila local, y uno fuera de la ventana que no se debe mirar
+		stripe.create(150, "succeeded", START + 100, EMAIL);
+		stripe.create(150, "succeeded", END, EMAIL);
+	}
+
+	@AfterEach
+	void tearDown() {
+		stripe.close();
+	}
+
+	private static StripeTransaction row(ObjectNode intent, String email) throws Exception {
+		StripeTransaction transaction = new StripeTransaction();
+		transaction.setData(new JSONObject(intent.toString()));
+		transaction.setEmail(email);
+		transaction.setKind(PaymentKind.SONG);
+		return transaction;
+	}
+
+	@Test
+	void reportsMismatchesWithoutTouchingRows() {
+		Report report = job.reconcile(Instant.ofEpochSecond(START), Instant.ofEpochSecond(END), false);
+
+		assertEquals(602, report.scanned());
+		assertEquals(597, report.matched());
+		assertEquals(1L, report.mismatches().get(Mismatch.MISSING_LOCAL));
+		assertEquals(2L, report.mismatches().get(Mismatch.STATUS_DRIFT));
+		assertEquals(1L, report.mismatches().get(Mismatch.MISSING_EMAIL));
+		assertEquals(1L, report.mismatches().get(Mismatch.UNCONFIRMED));
+		assertEquals(0, report.repaired());
+		assertEquals(0, report.errors());
+		assertEquals(5, report.samples().size());
+
+		assertEquals("requires_payment_method", transactionDao.findByPaymentIntentId(drift).orElseThrow().getStatus());
+		assertNull(transactionDao.findByPaymentIntentId(sinEmail).orElseThrow().getEmail());
+		assertNull(transactionDao.findByPaymentIntentId(sinConfirmar).orElseThrow().getConfirmedAt());
+	}
+
+	@Test
+	void repairsFromStripeAndConfirmsPendingPayments() {
+		Report report = job.reconcile(Instant.ofEpochSecond(START), Instant.ofEpochSecond(END), true);
+
+		assertEquals(4, report.repaired());
+		assertEquals("canceled", transactionDao.findByPaymentIntentId(drift).orElseThrow().getStatus());
+		assertEquals(200L, transactionDao.findByPaymentIntentId(importe).orElseThrow().getAmount());
+		assertEquals(EMAIL, transactionDao.findByPaymentIntentId(sinEmail).orElseThrow().getEmail());
+		assertNotNull(transactionDao.findByPaymentIntentId(sinConfirmar).orElseThrow().getConfirmedAt());
+		assertNotNull(userDao.findById(EMAIL).orElseThrow().getSubscriptionExpiry());
+
+		// La segunda pasada solo encuentra el intent que no tiene fila local
+		Report again = job.reconcile(Instant.ofEpochSecond(START), Instant.ofEpochSecond(END), true);
+		assertEquals(601, again.matched());
+		assertEquals(1L, again.mismatches().get(Mismatch.MISSING_LOCAL));
+		assertEquals(0, again.repaired());
+		assertTrue(job.stats().containsKey("scanned"));
+	}
+}
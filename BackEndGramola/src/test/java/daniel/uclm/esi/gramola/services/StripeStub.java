@@ -0,0 +1,204 @@
+package daniel.uclm.esi.gramola.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.stripe.Stripe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Sustituto local de la API de Stripe para los tests: crea, devuelve y lista PaymentIntents en
+ * memoria. {@link #start()} apunta el SDK a este servidor y {@link #close()} lo restaura.
+ */
+class StripeStub implements AutoCloseable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final HttpServer server;
+	private final String previousApiKey;
+	final Map<String, ObjectNode> intents = new ConcurrentHashMap<>();
+	// Orden del listado de Stripe: más recientes primero y, a igual fecha, por id descendente
+	private final NavigableMap<String, ObjectNode> byCreated = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+	private final AtomicLong sequence = new AtomicLong();
+	final AtomicInteger requests = new AtomicInteger();
+	private final Map<String, String> idempotencyKeys = new ConcurrentHashMap<>();
+
+	private StripeStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/v1/payment_intents", this::handle);
+		previousApiKey = Stripe.apiKey;
+	}
+
+	static StripeStub start() throws IOException {
+		StripeStub stub = new StripeStub();
+		stub.server.start();
+		Stripe.apiKey = "sk_test_stub";
+		Stripe.overrideApiBase("http://127.0.0.1:" + stub.server.getAddress().getPort());
+		return stub;
+	}
+
+	/** PaymentIntent creado en Stripe con fecha {@code created} (segundos), sin pasar por la aplicación. */
+	ObjectNode create(long amount, String status, long created, String email) {
+		ObjectNode intent = newIntent(amount, "eur", created);
+		intent.put("status", status);
+		if (email != null) intent.putObject("metadata").put("email", email);
+		return intent;
+	}
+
+	/** Marca un PaymentIntent como cobrado, como haría Stripe.js al confirmar la tarjeta. */
+	ObjectNode succeed(String id) {
+		return intents.get(id).put("status", "succeeded");
+	}
+
+	/** Evento {@code type} con el PaymentIntent {@code id} tal como está ahora en el stub. */
+	String event(String type, String id) {
+		ObjectNode event = MAPPER.createObjectNode()
+				.put("id", "evt_" + id)
+				.put("object", "event")
+				.put("type", type)
+				.put("created", System.currentTimeMillis() / 1000);
+		event.putObject("data").set("object", intents.get(id));
+		return event.toString();
+	}
+
+	/** Cabecera Stripe-Signature para {@code payload}, calculada como lo hace Stripe. */
+	static String sign(String payload, String secret) {
+		long timestamp = System.currentTimeMillis() / 1000;
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+			byte[] hmac = mac.doFinal((timestamp + "." + payload).getBytes(StandardCharsets.UTF_8));
+			return "t=" + timestamp + ",v1=" + HexFormat.of().formatHex(hmac);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		String path = exchange.getRequestURI().getPath();
+		ObjectNode body;
+		int status = 200;
+		if ("POST".equals(exchange.getRequestMethod()) && path.equals("/v1/payment_intents")) {
+			Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			// Como Stripe: la misma clave de idempotencia devuelve el mismo PaymentIntent
+			String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+			String previous = idempotencyKey == null ? null : idempotencyKeys.get(idempotencyKey);
+			if (previous != null) {
+				reply(exchange, 200, intents.get(previous));
+				return;
+			}
+			body = newIntent(Long.parseLong(form.get("amount")), form.get("currency"), System.currentTimeMillis() / 1000);
+			if (form.containsKey("metadata[email]")) {
+				body.putObject("metadata").put("email", form.get("metadata[email]"));
+			}
+			if (idempotencyKey != null) {
+				idempotencyKeys.put(idempotencyKey, body.get("id").asText());
+			}
+		} else if ("GET".equals(exchange.getRequestMethod()) && path.equals("/v1/payment_intents")) {
+			body = list(parseForm(exchange.getRequestURI().getRawQuery()));
+		} else {
+			body = intents.get(path.substring(path.lastIndexOf('/') + 1));
+			if (body == null) {
+				status = 404;
+				body = MAPPER.createObjectNode();
+				body.putObject("error").put("type", "invalid_request_error").put("message", "No such payment_intent");
+			}
+		}
+		reply(exchange, status, body);
+	}
+
+	private ObjectNode newIntent(long amount, String currency, long created) {
+		String id = "pi_stub_" + sequence.getAndIncrement();
+		ObjectNode intent = MAPPER.createObjectNode()
+				.put("id", id)
+				.put("object", "payment_intent")
+				.put("amount", amount)
+				.put("currency", currency)
+				.put("client_secret", id + "_secret_stub")
+				.put("status", "requires_payment_method")
+				.put("created", created);
+		intent.putObject("metadata");
+		intents.put(id, intent);
+		byCreated.put(listKey(created, id), intent);
+		return intent;
+	}
+
+	private static String listKey(long created, String id) {
+		return String.format("%019d|%s", created, id);
+	}
+
+	// GET /v1/payment_intents con created[gte], created[lt], limit y starting_after
+	private ObjectNode list(Map<String, String> query) {
+		long gte = Long.parseLong(query.getOrDefault("created[gte]", "0"));
+		long lt = Long.parseLong(query.getOrDefault("created[lt]", String.valueOf(Long.MAX_VALUE)));
+		int limit = Integer.parseInt(query.getOrDefault("limit", "10"));
+		String after = query.get("starting_after");
+		// El mapa está en orden inverso: de la clave más alta (lt) hacia la más baja (gte)
+		NavigableMap<String, ObjectNode> range = byCreated.subMap(listKey(lt, ""), false, listKey(gte, ""), true);
+		if (after != null) {
+			range = range.tailMap(listKey(intents.get(after).get("created").asLong(), after), false);
+		}
+		ObjectNode page = MAPPER.createObjectNode().put("object", "list").put("url", "/v1/payment_intents");
+		ArrayNode data = page.putArray("data");
+		boolean hasMore = false;
+		for (ObjectNode intent : range.values()) {
+			if (data.size() == limit) {
+				hasMore = true;
+				break;
+			}
+			data.add(intent);
+		}
+		page.put("has_more", hasMore);
+		return page;
+	}
+
+	private static void reply(HttpExchange exchange, int status, ObjectNode body) throws IOException {
+		byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String, String> parseForm(String body) {
+		Map<String, String> form = new LinkedHashMap<>();
+		if (body == null) return form;
+		for (String pair : body.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return form;
+	}
+
+	@Override
+	public void close() {
+		Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+		Stripe.apiKey = previousApiKey;
+		server.stop(0);
+	}
+}
@@ -0,0 +1,111 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import daniel.uclm.esi.gramola.crypto.TokenCipher;
+import daniel.uclm.esi.gramola.dao.JobCheckpointDao;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.JobCheckpoint;
+import daniel.uclm.esi.gramola.models.User;
+
+@SpringBootTest
+class TokenReencryptionJobTest {
+
+	private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+	@Autowired
+	private TokenReencryptionJob job;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private JobCheckpointDao checkpointDao;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeAll
+	static void setKey() {
+		System.setProperty("AES_256_SECRET", SECRET);
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		userDao.deleteAll();
+		checkpointDao.deleteAll();
+		ReflectionTestUtils.setField(job, "pauseMs", 0L);
+		ReflectionTestUtils.setField(job, "batchSize", 2);
+
+		for (int i = 0; i < 5; i++) {
+			User user = new User();
+			user.setEmail("bar" + i + "@gramola.test");
+			user.setPwd("x");
+			userDao.save(user);
+			// Se escriben los valores con el formato antiguo directamente en la tabla
+			jdbcTemplate.update("UPDATE user SET spotify_access_token = ?, spotify_private_token = ? WHERE email = ?",
+					legacy("access-" + i), legacy("private-" + i), user.getEmail());
+		}
+	}
+
+	private static String legacy(String value) throws Exception {
+		Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "AES"));
+		return Base64.getEncoder().encodeToString(cipher.doFinal(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void reencryptsEveryUserAndCompletesCheckpoint() throws Exception {
+		job.runJob();
+
+		for (int i = 0; i < 5; i++) {
+			String access = jdbcTemplate.queryForObject(
+					"SELECT spotify_access_token FROM user WHERE email = ?", String.class, "bar" + i + "@gramola.test");
+			assertTrue(TokenCipher.isCurrent(access));
+			assertEquals("access-" + i, TokenCipher.decrypt(access));
+		}
+		assertTrue(checkpointDao.findById(TokenReencryptionJob.JOB_NAME).orElseThrow().isCompleted());
+	}
+
+	@Test
+	void resumesFromAPartialCheckpoint() throws Exception {
+		// Una ejecución anterior con la misma clave se cayó tras el primer lote
+		JobCheckpoint partial = new JobCheckpoint(TokenReencryptionJob.JOB_NAME);
+		partial.restart(TokenCipher.currentKeyId());
+		partial.advance("bar1@gramola.test", 2);
+		checkpointDao.save(partial);
+
+		job.runJob();
+
+		for (int i = 0; i < 5; i++) {
+			String access = jdbcTemplate.queryForObject(
+					"SELECT spotify_access_token FROM user WHERE email = ?", String.class, "bar" + i + "@gramola.test");
+			// Los usuarios anteriores al checkpoint no se vuelven a leer
+			if (i < 2) {
+				assertFalse(TokenCipher.isCurrent(access));
+			} else {
+				assertTrue(TokenCipher.isCurrent(access));
+			}
+			assertEquals("access-" + i, TokenCipher.decrypt(access));
+		}
+		JobCheckpoint checkpoint = checkpointDao.findById(TokenReencryptionJob.JOB_NAME).orElseThrow();
+		assertTrue(checkpoint.isCompleted());
+		assertEquals(5, checkpoint.getProcessed());
+	}
+}
@@ -0,0 +1,112 @@
+package daniel.uclm.esi.gramola.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import daniel.uclm.esi.gramola.dao.StripeTransactionDao;
+import daniel.uclm.esi.gramola.models.PaymentKind;
+import daniel.uclm.esi.gramola.models.StripeTransaction;
+import daniel.uclm.esi.gramola.models.TransactionSummary;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class TransactionHistoryServiceTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+
+	@Autowired
+	private TransactionHistoryService historyService;
+
+	@Autowired
+	private StripeTransactionDao dao;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	private final List<StripeTransaction> saved = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		dao.deleteAll();
+		saved.clear();
+		LocalDateTime base = LocalDateTime.of(2025, 3, 1, 20, 0);
+		for (int i = 0; i < 30; i++) {
+			StripeTransaction t = new StripeTransaction();
+			t.setData(new JSONObject().put("id", "pi_" + i).put("amount", 100 + i).put("currency", "eur"));
+			t.setEmail(EMAIL);
+			t.setKind(i % 5 == 0 ? PaymentKind.SUBSCRIPTION : PaymentKind.SONG);
+			// Varias filas con la misma hora: el id desempata
+			t.setCreatedAt(base.plusMinutes(i / 3));
+			saved.add(dao.save(t));
+		}
+		StripeTransaction otherBar = new StripeTransaction();
+		otherBar.setData(new JSONObject().put("id", "pi_otro"));
+		otherBar.setEmail("otro@gramola.test");
+		otherBar.setKind(PaymentKind.SONG);
+		dao.save(otherBar);
+	}
+
+	private List<String> expected(PaymentKind kind) {
+		return saved.stream()
+				.filter(t -> kind == null || t.getKind() == kind)
+				.sorted(Comparator.comparing(StripeTransaction::getCreatedAt).thenComparing(StripeTransaction::getId).reversed())
+				.map(StripeTransaction::getId)
+				.toList();
+	}
+
+	private List<String> walk(PaymentKind kind, int limit) {
+		List<String> ids = new ArrayList<>();
+		String cursor = null;
+		do {
+			TransactionHistoryService.HistoryPage page = historyService.page(EMAIL, kind, cursor, limit);
+			page.items().forEach(row -> ids.add(row.id()));
+			cursor = page.nextCursor();
+		} while (cursor != null);
+		return ids;
+	}
+
+	@Test
+	void keysetPagesCoverHistoryInOrderWithoutGaps() {
+		assertEquals(expected(null), walk(null, 7));
+		assertEquals(expected(PaymentKind.SUBSCRIPTION), walk(PaymentKind.SUBSCRIPTION, 4));
+		assertEquals(expected(PaymentKind.SONG), walk(PaymentKind.SONG, 24));
+	}
+
+	@Test
+	void lastPageHasNoCursor() {
+		TransactionHistoryService.HistoryPage page = historyService.page(EMAIL, null, null, 30);
+		assertEquals(30, page.items().size());
+		assertNull(page.nextCursor());
+	}
+
+	@Test
+	void exportStreamsEveryRowAsNdjson() throws Exception {
+		List<TransactionSummary> rows = new ArrayList<>();
+		assertEquals(30, historyService.export(EMAIL, null, rows::add));
+
+		MvcResult started = mockMvc.perform(get("/payments/history/{email}/export", EMAIL).param("kind", "song"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsString();
+		String[] lines = body.split("\n");
+		assertEquals(expected(PaymentKind.SONG).size(), lines.length);
+		assertEquals(expected(PaymentKind.SONG).get(0), new JSONObject(lines[0]).getString("id"));
+	}
+}
@@ -0,0 +1,89 @@
+package daniel.uclm.esi.gramola.subscription;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import daniel.uclm.esi.gramola.cache.UserCache;
+import daniel.uclm.esi.gramola.dao.EmailOutboxDao;
+import daniel.uclm.esi.gramola.dao.UserDao;
+import daniel.uclm.esi.gramola.models.EmailOutbox;
+import daniel.uclm.esi.gramola.models.User;
+import daniel.uclm.esi.gramola.services.UserService;
+
+@SpringBootTest
+class SubscriptionIndexTest {
+
+	private static final String EMAIL = "bar@gramola.test";
+
+	@Autowired
+	private SubscriptionIndex index;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserDao userDao;
+
+	@Autowired
+	private UserCache userCache;
+
+	@Autowired
+	private EmailOutboxDao outboxDao;
+
+	@BeforeEach
+	void setUp() {
+		userDao.deleteAll();
+		outboxDao.deleteAll();
+		User user = new User();
+		user.setEmail(EMAIL);
+		user.setPwd("$2a$10$abcdefghijklmnopqrstuv");
+		user.setNombreBar("Bar Test");
+		user.setSubscriptionExpiry(LocalDateTime.now().plusMinutes(10));
+		userDao.save(user);
+		userCache.invalidate(EMAIL);
+		index.rebuild();
+	}
+
+	@Test
+	void answersFromMemoryAndNotifiesWhenSubscriptionLapses() {
+		assertTrue(userService.hasActiveSubscription(EMAIL));
+
+		// La BD caduca la suscripción; la rueda avisa cuando llega su momento
+		LocalDateTime expiry = LocalDateTime.now().plusSeconds(2);
+		userDao.updateSubscriptionExpiry(EMAIL, expiry);
+		index.put(EMAIL, expiry);
+		index.advance(System.currentTimeMillis());
+		assertTrue(outboxDao.findAll().isEmpty());
+
+		index.advance(System.currentTimeMillis() + 5000);
+		List<EmailOutbox> emails = outboxDao.findAll();
+		assertEquals(1, emails.size());
+		assertEquals(EMAIL, emails.get(0).getRecipient());
+
+		// El aviso no se repite en los siguientes ticks
+		index.advance(System.currentTimeMillis() + 10_000);
+		assertEquals(1, outboxDao.count());
+	}
+
+	@Test
+	void renewalReschedulesTheTimer() {
+		index.put(EMAIL, LocalDateTime.now().plusSeconds(1));
+		index.put(EMAIL, LocalDateTime.now().plusMonths(1));
+		index.advance(System.currentTimeMillis() + 5000);
+		assertEquals(0, outboxDao.count());
+		assertEquals(Boolean.TRUE, index.isActive(EMAIL));
+
+		index.remove(EMAIL);
+		assertEquals(null, index.isActive(EMAIL));
+		assertFalse(index.stats().isEmpty());
+	}
+}
@@ -0,0 +1,73 @@
+package daniel.uclm.esi.gramola.subscription;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+
+	private static final long START = 1_700_000_000_000L;
+
+	@Test
+	void firesEachTimerAtItsTickAcrossAllLevels() {
+		TimerWheel<Integer> wheel = new TimerWheel<>(1000, START);
+		Random random = new Random(7);
+		Map<Integer, Long> deadlines = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			// Hasta ~1 año: cubre los cuatro niveles y los plazos fuera de alcance
+			long deadline = START + 1 + (long) (random.nextDouble() * random.nextDouble() * 365L * 86_400_000L);
+			deadlines.put(i, deadline);
+			wheel.schedule(i, deadline);
+		}
+		// Algunos se cancelan y otros se reprograman
+		for (int i = 0; i < 500; i++) {
+			wheel.cancel(i);
+			deadlines.remove(i);
+		}
+		for (int i = 500; i < 1000; i++) {
+			long deadline = deadlines.get(i) + 3_600_000L;
+			deadlines.put(i, deadline);
+			wheel.schedule(i, deadline);
+		}
+
+		List<Integer> fired = new ArrayList<>();
+		long now = START;
+		while (wheel.size() > 0) {
+			// Pasos irregulares, como un @Scheduled que a veces se retrasa
+			now += 1000 + random.nextInt(600_000);
+			for (int key : wheel.advance(now)) {
+				long deadline = deadlines.get(key);
+				assertTrue(deadline <= now, "vencido antes de tiempo: " + key);
+				assertTrue(now - deadline < 600_000 + 2000, "vencido tarde: " + key);
+				fired.add(key);
+			}
+		}
+		assertEquals(deadlines.size(), fired.size());
+		assertEquals(deadlines.keySet(), new java.util.HashSet<>(fired));
+	}
+
+	@Test
+	void firesOnTheFirstTickAtOrAfterTheDeadline() {
+		TimerWheel<String> wheel = new TimerWheel<>(1000, START);
+		wheel.schedule("a", START + 70_500);
+		assertTrue(wheel.advance(START + 70_999).isEmpty());
+		assertEquals(List.of("a"), wheel.advance(START + 71_000));
+		assertFalse(wheel.contains("a"));
+	}
+
+	@Test
+	void pastDeadlinesFireOnNextTick() {
+		TimerWheel<String> wheel = new TimerWheel<>(1000, START);
+		wheel.advance(START + 5000);
+		wheel.schedule("a", START);
+		assertEquals(List.of("a"), wheel.advance(START + 6000));
+	}
+}
@@ -59,23 +59,16 @@ export class EditarPerfil implements OnInit {
 		if (!this.email) return;
 
 		// Cargar credenciales de Spotify
-		this.service.getSpotifyAccessToken(this.email).subscribe({
-			next: (clientId) => {
-				this.clientId = clientId;
+		this.service.getSpotifyCredentials(this.email).subscribe({
+			next: (credentials) => {
+				this.clientId = credentials.accessToken;
+				this.clientSecret = credentials.privateToken;
 			},
-			error: (err) => console.error('Error cargando Client ID:', err)
-		});
-
-		this.service.getSpotifyPrivateToken(this.email).subscribe({
-			next: (clientSecret) => {
-				this.clientSecret = clientSecret;
-			},
-			error: (err) => console.error('Error cargando Client Secret:', err)
+			error: (err) => console.error('Error cargando credenciales de Spotify:', err)
 		});
 
 		this.service.getCosteCancion(this.email).subscribe({
 			next: (coste) => {
-				// Convertir de céntimos a euros
 				this.costeCancion = coste;
 			},
 			error: (err) => console.error('Error cargando coste canción:', err)
@@ -160,9 +153,8 @@ export class EditarPerfil implements OnInit {
 
 		// Actualizar coste de canción
 		if (this.costeCancion !== undefined) {
-			// Convertir de euros a céntimos
-			const costeEnCentimos = Math.round(this.costeCancion * 100);
-			this.service.setCosteCancion(this.email!, costeEnCentimos).subscribe({
+			// El coste se guarda en euros, igual que se muestra
+			this.service.setCosteCancion(this.email!, this.costeCancion).subscribe({
 				next: (response) => {
 					console.log('Coste de canción actualizado', response);
 				},
@@ -177,6 +169,9 @@ export class EditarPerfil implements OnInit {
 			this.service.setBarData(this.email!, this.nombreBar, this.ubicacionBar).subscribe({
 				next: (response) => {
 					console.log('Datos del bar actualizados', response);
+					if (response.geocodingStatus === 'PENDING') {
+						console.log('Las coordenadas del bar se están calculando en segundo plano');
+					}
 				},
 				error: (error) => {
 					console.error('Error actualizando datos del bar:', error);
@@ -47,6 +47,7 @@ export class Gramola implements OnInit, OnDestroy {
   isNearBar: boolean = false;
   proximityError: string = '';
   locationError: string = '';
+  private lastPosition: { latitud: number, longitud: number } | null = null;
 
   // Sistema de pago por canción
   showPaymentModal: boolean = false;
@@ -77,7 +78,8 @@ export class Gramola implements OnInit, OnDestroy {
     if (userEmail) {
       this.userService.getCosteCancion(userEmail).subscribe({
         next: (coste) => {
-          this.costeCancion = Math.round(coste) / 100;
+          // Solo para mostrarlo: el importe que se cobra lo calcula el backend
+          this.costeCancion = Math.round(coste * 100) / 100;
           // Stripe requiere un mínimo de 0.50 EUR
           if (this.costeCancion < 0.50) {
             console.warn(`Coste ${this.costeCancion} es menor al mínimo de Stripe. Ajustando a 0.50€`);
@@ -455,17 +457,24 @@ export class Gramola implements OnInit, OnDestroy {
       return;
     }
 
+    if (!this.lastPosition) {
+      this.paymentError = 'No se pudo obtener tu ubicación';
+      return;
+    }
+
     this.paymentProcessing = true;
     this.paymentError = '';
     this.cardErrors = '';
 
-    // Preparar el pago con Stripe
-    this.paymentService.prepareSongPayment(userEmail, this.costeCancion).subscribe({
+    // Proximidad, precio y PaymentIntent en una sola petición
+    const { latitud, longitud } = this.lastPosition;
+    this.paymentService.purchaseSong(userEmail, latitud, longitud, this.selectedTrackToPay.uri).subscribe({
       next: (transactionDetails) => {
         
         const clientSecret = transactionDetails.clientSecret;
         const transactionId = transactionDetails.transactionId;
         let paymentIntentId = transactionDetails.paymentIntentId;
+        this.costeCancion = transactionDetails.amount;
 
         if (!clientSecret) {
           this.paymentError = 'Error al preparar el pago';
@@ -541,7 +550,13 @@ export class Gramola implements OnInit, OnDestroy {
       },
       error: (error) => {
         console.error('Error al preparar pago:', error);
-        this.paymentError = 'Error al preparar el pago';
+        if (error.status === 403) {
+          this.paymentError = 'Estás demasiado lejos del bar para pedir canciones';
+        } else if (error.status === 409) {
+          this.paymentError = 'Las coordenadas del bar todavía se están calculando, inténtalo en unos segundos';
+        } else {
+          this.paymentError = 'Error al preparar el pago';
+        }
         this.paymentProcessing = false;
       }
     });
@@ -585,6 +600,7 @@ export class Gramola implements OnInit, OnDestroy {
         const longitud = position.coords.longitude;
         
         console.log('Ubicación actual:', { latitud, longitud });
+        this.lastPosition = { latitud, longitud };
 
         // Verificar proximidad con el backend
         this.userService.checkProximity(userEmail, latitud, longitud).subscribe({
@@ -602,7 +618,9 @@ export class Gramola implements OnInit, OnDestroy {
             console.error('Error al verificar proximidad:', error);
             this.checkingProximity = false;
             
-            if (error.status === 404 && error.error?.message?.includes('coordenadas')) {
+            if (error.status === 409) {
+              this.proximityError = 'Las coordenadas del bar todavía se están calculando, inténtalo en unos segundos';
+            } else if (error.status === 404 && error.error?.message?.includes('coordenadas')) {
               this.proximityError = 'El bar no tiene coordenadas registradas';
             } else {
               this.proximityError = 'Error al verificar la ubicación';
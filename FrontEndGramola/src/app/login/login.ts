@@ -90,13 +90,14 @@ export class LoginForm implements OnInit {
 					
 					// Obtener las credenciales de Spotify del backend
 					forkJoin({
-						clientId: this.userService.getSpotifyAccessToken(email),
-						clientSecret: this.userService.getSpotifyPrivateToken(email),
+						spotify: this.userService.getSpotifyCredentials(email),
 						hasSubscription: this.userService.hasActiveSubscription(email),
 					isActive: this.userService.isActive(email),
 					firma: this.userService.getFirma(email)
 				}).subscribe({
-					next: ({ clientId, clientSecret, hasSubscription, isActive, firma }) => {
+					next: ({ spotify, hasSubscription, isActive, firma }) => {
+							const clientId = spotify.accessToken;
+							const clientSecret = spotify.privateToken;
 							const hasClientId = !!clientId && clientId.trim().length > 0;
 							const hasClientSecret = !!clientSecret && clientSecret.trim().length > 0;
 														
@@ -174,11 +175,12 @@ export class LoginForm implements OnInit {
 		
 		// Navegar después de cerrar la firma
 		forkJoin({
-			clientId: this.userService.getSpotifyAccessToken(this.userEmail),
-			clientSecret: this.userService.getSpotifyPrivateToken(this.userEmail),
+			spotify: this.userService.getSpotifyCredentials(this.userEmail),
 			hasSubscription: this.userService.hasActiveSubscription(this.userEmail)
 		}).subscribe({
-			next: ({ clientId, clientSecret, hasSubscription }) => {
+			next: ({ spotify, hasSubscription }) => {
+				const clientId = spotify.accessToken;
+				const clientSecret = spotify.privateToken;
 				const hasClientId = !!clientId && clientId.trim().length > 0;
 				const hasClientSecret = !!clientSecret && clientSecret.trim().length > 0;
 				
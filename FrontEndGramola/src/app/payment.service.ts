@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
-import { map } from 'rxjs/operators';
+import { HttpClient, HttpErrorResponse, HttpHeaders } from '@angular/common/http';
+import { Observable, throwError, timer } from 'rxjs';
+import { map, retry } from 'rxjs/operators';
 
 declare let Stripe: any;
 
@@ -20,6 +20,25 @@ export class PaymentService {
     }
   }
 
+  /**
+   * Cabecera Idempotency-Key nueva para cada operación de pago. Los reintentos de esa misma
+   * petición la repiten, así que el backend no crea un segundo cobro
+   */
+  private idempotencia(): { headers: HttpHeaders } {
+    return { headers: new HttpHeaders({ 'Idempotency-Key': crypto.randomUUID() }) };
+  }
+
+  /**
+   * Reintenta hasta dos veces si la petición no llegó a obtener respuesta (sin red o servidor caído)
+   */
+  private reintentarSinRespuesta<T>() {
+    return retry<T>({
+      count: 2,
+      delay: (error: HttpErrorResponse, intento: number) =>
+        error.status === 0 ? timer(500 * intento) : throwError(() => error)
+    });
+  }
+
   /**
    * Inicializa Stripe Elements y crea un Card Element
    */
@@ -68,7 +87,8 @@ export class PaymentService {
    * Prepara una transacción de pago en el backend
    */
   preparePayment(): Observable<any> {
-    return this.http.get<any>(`${this.apiUrl}/payments/prepay`).pipe(
+    return this.http.get<any>(`${this.apiUrl}/payments/prepay`, this.idempotencia()).pipe(
+      this.reintentarSinRespuesta(),
       map(transactionDetails => {
         // Parsear el campo data que contiene el PaymentIntent como JSON string
         if (transactionDetails.data) {
@@ -121,7 +141,8 @@ export class PaymentService {
       transactionId: transactionId
     };
 
-    return this.http.post<any>(`${this.apiUrl}/payments/confirm-subscription`, confirmationData);
+    return this.http.post<any>(`${this.apiUrl}/payments/confirm-subscription`, confirmationData, this.idempotencia())
+      .pipe(this.reintentarSinRespuesta());
   }
 
   /**
@@ -139,7 +160,8 @@ export class PaymentService {
       email: email,
       amount: amount
     };
-    return this.http.post<any>(`${this.apiUrl}/payments/prepay-song`, paymentData).pipe(
+    return this.http.post<any>(`${this.apiUrl}/payments/prepay-song`, paymentData, this.idempotencia()).pipe(
+      this.reintentarSinRespuesta(),
       map(transactionDetails => {
         // Parsear el campo data que contiene el PaymentIntent como JSON string
         if (transactionDetails.data) {
@@ -152,6 +174,43 @@ export class PaymentService {
     );
   }
 
+  /**
+   * Compra una canción en un solo viaje: el backend comprueba la proximidad, toma el precio
+   * del bar y crea el PaymentIntent
+   */
+  purchaseSong(email: string, latitud: number, longitud: number, trackUri: string) {
+    return this.http.post<{transactionId: string, paymentIntentId: string, clientSecret: string, amount: number}>(
+      `${this.apiUrl}/payments/purchase-song`, { email, latitud, longitud, trackUri }, this.idempotencia())
+      .pipe(this.reintentarSinRespuesta());
+  }
+
+  /**
+   * Una página del historial de pagos del bar; para la siguiente se pasa el nextCursor recibido
+   */
+  getTransactionHistory(email: string, kind?: 'SONG' | 'SUBSCRIPTION', cursor?: string, limit: number = 50) {
+    const params: any = { limit };
+    if (kind) params.kind = kind;
+    if (cursor) params.cursor = cursor;
+    return this.http.get<{items: any[], nextCursor: string | null}>(
+      `${this.apiUrl}/payments/history/${email}`, { params });
+  }
+
+  /**
+   * Ingresos del bar por hora o por día entre dos fechas (yyyy-MM-dd, incluidas), en céntimos
+   */
+  getRevenue(email: string, from: string, to: string, granularity: 'HOUR' | 'DAY' = 'DAY') {
+    return this.http.get<any[]>(`${this.apiUrl}/payments/revenue/${email}`,
+      { params: { granularity, from, to } });
+  }
+
+  /**
+   * Canciones más pagadas en el bar entre dos fechas (yyyy-MM-dd, incluidas)
+   */
+  getTopTracks(email: string, from: string, to: string, limit: number = 10) {
+    return this.http.get<{trackUri: string, plays: number, amount: number}[]>(
+      `${this.apiUrl}/payments/revenue/${email}/top-tracks`, { params: { from, to, limit } });
+  }
+
   /**
    * Confirma el pago de una canción en el backend
    */
@@ -171,7 +230,8 @@ export class PaymentService {
     };
 
     console.log('📤 Datos enviados a /payments/confirm-song:', JSON.stringify(confirmationData, null, 2));
-    return this.http.post<any>(`${this.apiUrl}/payments/confirm-song`, confirmationData);
+    return this.http.post<any>(`${this.apiUrl}/payments/confirm-song`, confirmationData, this.idempotencia())
+      .pipe(this.reintentarSinRespuesta());
   }
 
   /**
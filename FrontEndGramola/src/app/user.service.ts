@@ -1,6 +1,9 @@
 import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 
+/** Estado de las coordenadas del bar: PENDING mientras el servidor las calcula en segundo plano. */
+export type GeocodingStatus = 'NONE' | 'PENDING' | 'RESOLVED' | 'FAILED';
+
 @Injectable({
   providedIn: 'root'
 })
@@ -81,6 +84,12 @@ export class UserService {
   return this.http.get(url, { responseType: 'text' });
   }
 
+  // Ambos tokens en una sola petición
+  getSpotifyCredentials(email: string) {
+    const url = `${this.apiUrl}/users/${email}/spotify`;
+    return this.http.get<{ accessToken: string, privateToken: string }>(url);
+  }
+
   hasActiveSubscription(email: string) {
     const url = `${this.apiUrl}/users/${email}/subscription/active`;
     return this.http.get<boolean>(url);
@@ -93,9 +102,8 @@ export class UserService {
 
   setCosteCancion(email: string, costeCancion: number) {
     const url = `${this.apiUrl}/users/${email}/coste-cancion`;
-    // Convertir el número a string con coma decimal para compatibilidad con formato europeo
-    const costeString = costeCancion.toString().replace('.', ',');
-    return this.http.put<any>(url, { costeCancion: costeString });
+    // En euros y como número: el servidor no acepta la coma decimal
+    return this.http.put<any>(url, { costeCancion: Number(costeCancion) });
   }
 
   isActive(email: string) {
@@ -110,7 +118,7 @@ export class UserService {
 
   getBarData(email: string) {
     const url = `${this.apiUrl}/users/${email}/bar-data`;
-    return this.http.get<{nombreBar?: string, ubicacionBar?: string}>(url);
+    return this.http.get<{nombreBar?: string, ubicacionBar?: string, geocodingStatus?: GeocodingStatus}>(url);
   }
 
   setBarData(email: string, nombreBar: string, ubicacionBar: string) {
@@ -119,7 +127,7 @@ export class UserService {
       nombreBar: nombreBar,
       ubicacionBar: ubicacionBar
     };
-    return this.http.put<any>(url, barData);
+    return this.http.put<{message: string, geocodingStatus: GeocodingStatus}>(url, barData);
   }
 
   activateAccount(email: string, token: string) {
@@ -137,6 +145,22 @@ export class UserService {
     return this.http.post<any>(url, { latitud, longitud });
   }
 
+  checkProximityBatch(email: string, muestras: [number, number][]) {
+    const url = `${this.apiUrl}/users/${email}/check-proximity/batch`;
+    return this.http.post<{resultados: boolean[], dentro: number, total: number}>(url, { muestras });
+  }
+
+  setGeofence(email: string, radio: number | null, poligono: [number, number][] | null = null) {
+    const url = `${this.apiUrl}/users/${email}/geofence`;
+    return this.http.put<{message: string}>(url, { radio, poligono });
+  }
+
+  getNearbyBars(latitud: number, longitud: number, k: number = 10, radio: number = 25000) {
+    const url = `${this.apiUrl}/bars/nearby`;
+    return this.http.get<{email: string, nombreBar: string, latitud: number, longitud: number, distanciaMetros: number}[]>(
+      url, { params: { latitud, longitud, k, radio } });
+  }
+
   getFirma(email: string) {
     const url = `${this.apiUrl}/users/${email}/firma`;
     return this.http.get<{firma: string}>(url);